@@ -0,0 +1,129 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares finding tags a byte at a time with the portable and the Vector API scanners, on their own and as used
+ * by {@link WikipediaRevisionScanner} on a memory-mapped dump of synthetic pages. Run from the multi-release jar,
+ * so {@link ByteScanner} is the Java 17 version:
+ *
+ * <pre>
+ * mvn -P jmh package
+ * java --add-modules jdk.incubator.vector -jar target/benchmarks.jar TagScanBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class TagScanBenchmark {
+  private static final int DUMP_PAGES = 20000;
+  private static final int TEXT_LENGTH = 4000;
+
+  private File dump;
+  private ByteBuffer text;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Random random = new Random(42);
+    byte[] chars = new byte[TEXT_LENGTH];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (byte) (random.nextInt(8) == 0 ? ' ' : 'a' + random.nextInt(26));
+    }
+    text = ByteBuffer.allocateDirect(64 * 1024 * 1024);
+    while (text.remaining() >= chars.length + 1) {
+      text.put(chars).put((byte) '<');
+    }
+    text.flip();
+
+    dump = File.createTempFile("benchmark", ".xml");
+    try (OutputStream out = new FileOutputStream(dump)) {
+      out.write("<mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+      for (int page = 1; page <= DUMP_PAGES; page++) {
+        out.write(("<page>\n<title>Page " + page + "</title>\n<ns>0</ns>\n<id>" + page + "</id>\n<revision>\n<id>"
+            + page + "</id>\n<timestamp>2015-01-01T00:00:00Z</timestamp>\n<text xml:space=\"preserve\">")
+            .getBytes(StandardCharsets.UTF_8));
+        out.write(chars);
+        out.write("</text>\n</revision>\n</page>\n".getBytes(StandardCharsets.UTF_8));
+      }
+      out.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    dump.delete();
+  }
+
+  @Benchmark
+  public long bytewise() {
+    long sum = 0;
+    int limit = text.limit();
+    for (int i = 0; i < limit; i++) {
+      if (text.get(i) == '<') {
+        sum += i;
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long portable() {
+    long sum = 0;
+    int limit = text.limit();
+    for (int i = PortableByteScanner.indexOf(text, 0, limit, (byte) '<'); i < limit;
+         i = PortableByteScanner.indexOf(text, i + 1, limit, (byte) '<')) {
+      sum += i;
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long selected() {
+    long sum = 0;
+    int limit = text.limit();
+    for (int i = ByteScanner.indexOf(text, 0, limit, (byte) '<'); i < limit;
+         i = ByteScanner.indexOf(text, i + 1, limit, (byte) '<')) {
+      sum += i;
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int scanMappedDump() throws IOException {
+    Configuration conf = new Configuration(false);
+    WikipediaPageRevisionInputFormat.setIncludeText(conf, false);
+    int revisions = 0;
+    try (WikipediaRevisionScanner scanner = new WikipediaRevisionScanner(
+        new MappedDumpInput(dump, 0, dump.length(), MappedDumpInput.DEFAULT_WINDOW_SIZE), dump.getName(), conf,
+        null)) {
+      while (scanner.next()) {
+        revisions++;
+      }
+    }
+    return revisions;
+  }
+}
@@ -0,0 +1,37 @@
+package io.sunrisedata.wikipedia;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replaces equal strings with a single shared instance, keeping at most a fixed number of strings (the least
+ * recently used are dropped). Meant for values that repeat a lot within a task, such as contributor names in a
+ * history dump, without growing without bound the way {@link String#intern()} can.
+ */
+class BoundedStringInterner {
+  private final Map<String, String> table;
+
+  BoundedStringInterner(final int maxSize) {
+    this.table = new LinkedHashMap<String, String>(Math.min(maxSize, 1024), 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return the shared instance equal to {@code s}, or {@code null} if {@code s} is {@code null}
+   */
+  String intern(String s) {
+    if (s == null) {
+      return null;
+    }
+    String shared = table.get(s);
+    if (shared == null) {
+      table.put(s, s);
+      shared = s;
+    }
+    return shared;
+  }
+}
@@ -0,0 +1,38 @@
+package io.sunrisedata.wikipedia;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@code InputStream} reading the remaining bytes of a {@code ByteBuffer}.
+ */
+class ByteBufferInputStream extends InputStream {
+  private final ByteBuffer buffer;
+
+  ByteBufferInputStream(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    if (!buffer.hasRemaining()) {
+      return -1;
+    }
+    len = Math.min(len, buffer.remaining());
+    buffer.get(b, off, len);
+    return len;
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+}
@@ -0,0 +1,22 @@
+package io.sunrisedata.wikipedia;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the next occurrence of a byte, so {@link DumpInput} can skip text between tags in bulk. This is the version
+ * for Java 8 to 16; the jar has another one for Java 17 and later, in {@code META-INF/versions/17}, that uses the
+ * Vector API.
+ */
+final class ByteScanner {
+
+  private ByteScanner() {
+  }
+
+  /**
+   * @return the index of the first {@code b} in {@code buf} from {@code from} up to {@code to}, or {@code to} if
+   *         there is none
+   */
+  static int indexOf(ByteBuffer buf, int from, int to, byte b) {
+    return PortableByteScanner.indexOf(buf, from, to, b);
+  }
+}
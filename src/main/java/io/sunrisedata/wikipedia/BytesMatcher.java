@@ -0,0 +1,165 @@
+package io.sunrisedata.wikipedia;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Matches a fixed set of strings against UTF-8 bytes at once, ignoring the case of ASCII letters.
+ *
+ * The strings are compiled into an Aho-Corasick automaton whose transitions are a table over the bytes that occur
+ * in them, so a search looks at each byte of the input once whatever the number of strings. Callers that need
+ * other case variants of non-ASCII strings add them as strings of their own.
+ */
+final class BytesMatcher {
+  /**
+   * Class of each (ASCII-folded) byte; bytes that don't occur in any string share class 0.
+   */
+  private final int[] classes = new int[256];
+  /**
+   * Next state by state and byte class.
+   */
+  private final int[][] transitions;
+  private final int[] depths;
+  /**
+   * Whether a string ends at the state.
+   */
+  private final boolean[] terminal;
+  /**
+   * Whether a string ends at the state, or at one of its suffixes.
+   */
+  private final boolean[] accepting;
+
+  BytesMatcher(Collection<String> strings) {
+    List<byte[]> patterns = new ArrayList<byte[]>();
+    int classCount = 1;
+    for (String s : strings) {
+      byte[] p = s.getBytes(StandardCharsets.UTF_8);
+      if (p.length == 0) {
+        continue;
+      }
+      for (int i = 0; i < p.length; i++) {
+        p[i] = fold(p[i]);
+        if (classes[p[i] & 0xff] == 0) {
+          classes[p[i] & 0xff] = classCount++;
+        }
+      }
+      patterns.add(p);
+    }
+
+    // the trie, with -1 for missing transitions
+    List<int[]> trie = new ArrayList<int[]>();
+    List<Integer> depthList = new ArrayList<Integer>();
+    List<Boolean> acceptingList = new ArrayList<Boolean>();
+    trie.add(newState(classCount));
+    depthList.add(0);
+    acceptingList.add(false);
+    for (byte[] p : patterns) {
+      int state = 0;
+      for (byte b : p) {
+        int c = classes[b & 0xff];
+        if (trie.get(state)[c] < 0) {
+          trie.get(state)[c] = trie.size();
+          trie.add(newState(classCount));
+          depthList.add(depthList.get(state) + 1);
+          acceptingList.add(false);
+        }
+        state = trie.get(state)[c];
+      }
+      acceptingList.set(state, true);
+    }
+
+    // fill in the missing transitions with those of the longest proper suffix that is in the trie
+    int stateCount = trie.size();
+    transitions = trie.toArray(new int[stateCount][]);
+    depths = new int[stateCount];
+    terminal = new boolean[stateCount];
+    accepting = new boolean[stateCount];
+    for (int s = 0; s < stateCount; s++) {
+      depths[s] = depthList.get(s);
+      terminal[s] = acceptingList.get(s);
+      accepting[s] = terminal[s];
+    }
+    int[] failure = new int[stateCount];
+    Queue<Integer> queue = new ArrayDeque<Integer>();
+    for (int c = 0; c < classCount; c++) {
+      if (transitions[0][c] < 0) {
+        transitions[0][c] = 0;
+      } else {
+        failure[transitions[0][c]] = 0;
+        queue.add(transitions[0][c]);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int s = queue.remove();
+      accepting[s] |= accepting[failure[s]];
+      for (int c = 0; c < classCount; c++) {
+        int t = transitions[s][c];
+        if (t < 0) {
+          transitions[s][c] = transitions[failure[s]][c];
+        } else {
+          failure[t] = transitions[failure[s]][c];
+          queue.add(t);
+        }
+      }
+    }
+  }
+
+  private static int[] newState(int classCount) {
+    int[] state = new int[classCount];
+    for (int i = 0; i < classCount; i++) {
+      state[i] = -1;
+    }
+    return state;
+  }
+
+  private static byte fold(byte b) {
+    return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+  }
+
+  /**
+   * @return whether one of the strings occurs between {@code from} and {@code to}
+   */
+  boolean find(ByteBuffer buffer, int from, int to) {
+    int state = 0;
+    for (int i = from; i < to; i++) {
+      state = transitions[state][classes[fold(buffer.get(i)) & 0xff]];
+      if (accepting[state]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return whether the bytes between {@code from} and {@code to} start with one of the strings, after any
+   *         leading whitespace
+   */
+  boolean matchesPrefix(ByteBuffer buffer, int from, int to) {
+    int i = from;
+    while (i < to && isWhitespace(buffer.get(i))) {
+      i++;
+    }
+    int state = 0;
+    for (; i < to; i++) {
+      int next = transitions[state][classes[fold(buffer.get(i)) & 0xff]];
+      if (depths[next] != depths[state] + 1) {
+        // fell back to a suffix, so the match doesn't start at the start
+        return false;
+      }
+      state = next;
+      if (terminal[state]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+  }
+}
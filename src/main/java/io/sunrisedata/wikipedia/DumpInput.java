@@ -0,0 +1,194 @@
+package io.sunrisedata.wikipedia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A source of dump bytes for {@link WikipediaRevisionScanner}.
+ *
+ * The scanner consumes the input one byte at a time looking for tags, and asks the input to remember
+ * ("buffer") the bytes of the element it is currently reading so it can be parsed once its end tag is found.
+ * How the bytes are remembered is up to the implementation: a stream has to copy them, a memory-mapped file
+ * can simply hand back a slice.
+ */
+abstract class DumpInput implements Closeable {
+
+  /**
+   * @return the next byte, or -1 at the end of the input
+   */
+  protected abstract int read() throws IOException;
+
+  /**
+   * Called for every byte read while buffering.
+   */
+  protected abstract void save(int b) throws IOException;
+
+  /**
+   * Consumes the bytes up to, but not including, the next {@code b}, saving them if buffering. Inputs that can
+   * search their bytes in bulk override this so the scanner doesn't look at the text between tags one byte at a
+   * time; by default nothing is skipped.
+   *
+   * @param b the byte to stop at
+   * @param saveToBuffer whether the bytes skipped are buffered
+   * @param stopAtEnd whether to stop before the last byte of the split, so {@link #pastEnd()} is noticed as usual
+   */
+  protected void skipTo(byte b, boolean saveToBuffer, boolean stopAtEnd) throws IOException {
+  }
+
+  /**
+   * @return the number of bytes consumed, counted from the start of the (uncompressed) input
+   */
+  abstract long getPos();
+
+  /**
+   * Where the input is in the underlying file, for input decompressed from a split of a compressed file. Its
+   * uncompressed bytes are only counted from the start of the split, as no offset in the uncompressed file is
+   * known there.
+   *
+   * @return the position in the underlying file of the compressed block being read, or -1 if the input isn't a
+   *         split of a compressed file, and {@link #getPos()} is an offset in the uncompressed input
+   */
+  long getBlockPos() throws IOException {
+    return -1;
+  }
+
+  /**
+   * @return whether the input has moved past the end of its split
+   */
+  abstract boolean pastEnd() throws IOException;
+
+  /**
+   * @param elementPos position of the start of an element, as returned by {@link #getPos()}
+   * @return whether an element starting at {@code elementPos} starts within the split
+   */
+  abstract boolean isBeforeEnd(long elementPos) throws IOException;
+
+  /**
+   * @return a number between 0.0 and 1.0 that is the fraction of the split consumed
+   */
+  abstract float getProgress() throws IOException;
+
+  /**
+   * Forgets any buffered bytes.
+   */
+  abstract void clearBuffer();
+
+  /**
+   * Starts buffering with the tag that was just matched, so the buffer holds the whole element.
+   */
+  abstract void startBuffer(byte[] matchedTag) throws IOException;
+
+  /**
+   * Returns the bytes buffered since {@link #startBuffer(byte[])}. Unless {@link #isBufferShareable()}, the buffer
+   * is only valid until the next read.
+   *
+   * @param trimTail number of bytes to leave off the end, e.g. a tag that was matched past the element
+   */
+  abstract ByteBuffer getBuffer(int trimTail);
+
+  /**
+   * @return whether buffers returned by {@link #getBuffer(int)} stay valid after further reads, so parsed values
+   *         can keep slices of them instead of copies
+   */
+  abstract boolean isBufferShareable();
+
+  /**
+   * Reads until {@code match} has been consumed.
+   *
+   * @param match the bytes to look for
+   * @param saveToBuffer whether to save bytes read to the buffer for later use. If not, reading stops at the
+   *                     end of the split.
+   * @return whether the match was found
+   * @throws IOException
+   */
+  boolean readUntilMatch(byte[] match, boolean saveToBuffer) throws IOException {
+    byte[][] matches = {match};
+    return readUntilMatch(matches, saveToBuffer) == 0;
+  }
+
+  /**
+   * Reads until {@code match} has been consumed, without saving to the buffer or stopping at the end of the
+   * split. Used to skip the rest of an element that starts within the split.
+   *
+   * @param match the bytes to look for
+   * @return whether the match was found
+   * @throws IOException
+   */
+  boolean skipUntilMatch(byte[] match) throws IOException {
+    byte[][] matches = {match};
+    return skipUntilMatch(matches) == 0;
+  }
+
+  /**
+   * Reads until one of {@code matches} has been consumed, without saving to the buffer or stopping at the end of
+   * the split.
+   *
+   * @param matches the byte sequences to look for
+   * @return index of the match, otherwise -1
+   * @throws IOException
+   */
+  int skipUntilMatch(byte[][] matches) throws IOException {
+    return readUntilMatch(matches, false, false);
+  }
+
+  /**
+   * Reads until one of {@code matches} has been consumed.
+   *
+   * @param matches the byte sequences to look for
+   * @param saveToBuffer whether to save bytes read to the buffer for later use. If not, reading stops at the
+   *                     end of the split.
+   * @return index of the match, otherwise -1
+   * @throws IOException
+   */
+  int readUntilMatch(byte[][] matches, boolean saveToBuffer) throws IOException {
+    return readUntilMatch(matches, saveToBuffer, !saveToBuffer);
+  }
+
+  private int readUntilMatch(byte[][] matches, boolean saveToBuffer, boolean stopAtEnd) throws IOException {
+    int[] i = new int[matches.length]; // should be initialized to all zeroes
+    // while nothing is partly matched, bytes other than the first of the matches can be skipped
+    int first = matches[0][0] & 0xff;
+    for (byte[] match : matches) {
+      if ((match[0] & 0xff) != first) {
+        first = -1;
+        break;
+      }
+    }
+    boolean matching = false;
+    while (true) {
+      if (!matching && first >= 0) {
+        skipTo((byte) first, saveToBuffer, stopAtEnd);
+      }
+      int b = read();
+
+      // end of file:
+      if (b == -1)
+        return -1;
+      // save to buffer:
+      if (saveToBuffer)
+        save(b);
+
+      // check if we're matching:
+      matching = false;
+      for (int m = 0; m < matches.length; m++) {
+        byte[] match = matches[m];
+
+        if (b == match[i[m]]) {
+          i[m]++;
+          if (i[m] >= match.length) {
+            return m;
+          }
+        } else {
+          // the mismatched byte may itself start the next match
+          i[m] = b == match[0] ? 1 : 0;
+        }
+        matching |= i[m] > 0;
+      }
+      // see if we've passed the stop point:
+      if (stopAtEnd && !matching && pastEnd()) {
+        return -1;
+      }
+    }
+  }
+}
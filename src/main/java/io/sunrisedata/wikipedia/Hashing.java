@@ -0,0 +1,50 @@
+package io.sunrisedata.wikipedia;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hash functions whose values don't depend on the JVM or the run, so they can select the same records every time.
+ */
+final class Hashing {
+  /**
+   * Parameters of 64-bit FNV-1a.
+   */
+  static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  static final long FNV_PRIME = 0x100000001b3L;
+
+  private Hashing() {
+  }
+
+  /**
+   * The finalizer of MurmurHash3: spreads the bits of {@code value} over the whole result.
+   */
+  static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  /**
+   * @return whether {@code value} falls in a sample of the given fraction of all values; the same values are in
+   *         the sample for the same seed
+   */
+  static boolean sampled(long value, long seed, double fraction) {
+    // the top 53 bits of the hash as a double in [0, 1)
+    return (mix(value ^ mix(seed)) >>> 11) * 0x1.0p-53 < fraction;
+  }
+
+  /**
+   * 64-bit FNV-1a of the UTF-8 bytes of {@code s}, mixed.
+   */
+  static long hash(String s) {
+    long h = FNV_OFFSET_BASIS;
+    for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+      h ^= b & 0xff;
+      h *= FNV_PRIME;
+    }
+    return mix(h);
+  }
+}
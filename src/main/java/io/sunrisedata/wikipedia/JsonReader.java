@@ -0,0 +1,291 @@
+package io.sunrisedata.wikipedia;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads JSON a value at a time, straight from the bytes of a revision's text, without building a tree of it.
+ *
+ * The text of a revision in a dump is still XML-escaped, so quotes may be written as {@code &quot;}; the reader
+ * recognizes the references that can stand for the characters of the JSON structure, and only decodes the strings
+ * that are read. Values that aren't wanted are skipped by matching brackets, without decoding anything.
+ *
+ * Malformed JSON makes the reader throw {@link IllegalArgumentException}.
+ */
+final class JsonReader {
+  private static final byte[] QUOT = "&quot;".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] QUOT_NUMERIC = "&#34;".getBytes(StandardCharsets.UTF_8);
+
+  private final ByteBuffer buf;
+  private final int limit;
+  private final boolean escaped;
+  private int pos;
+  /**
+   * Width in bytes of the character last returned by {@link #charAt(int)}.
+   */
+  private int width;
+  /**
+   * Start of the contents of the last string skipped.
+   */
+  private int stringStart;
+
+  /**
+   * @param buf the JSON, as the remaining bytes of the buffer
+   * @param escaped whether the JSON is XML-escaped, as the text of a revision is until it is decoded
+   */
+  JsonReader(ByteBuffer buf, boolean escaped) {
+    this.buf = buf;
+    this.limit = buf.limit();
+    this.escaped = escaped;
+    this.pos = buf.position();
+  }
+
+  /**
+   * @return the next character that isn't whitespace, without consuming it, or -1 at the end of the input
+   */
+  int peek() {
+    while (pos < limit) {
+      int c = charAt(pos);
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+        return c;
+      }
+      pos += width;
+    }
+    return -1;
+  }
+
+  /**
+   * Reads the start of an object.
+   */
+  void beginObject() {
+    expect('{');
+  }
+
+  /**
+   * Reads the start of an array.
+   */
+  void beginArray() {
+    expect('[');
+  }
+
+  /**
+   * Reads the name of the next member of the current object, and the colon after it.
+   *
+   * @return the name, or {@code null} if the end of the object has been read instead
+   */
+  String nextName() {
+    if (!hasNext('}')) {
+      return null;
+    }
+    String name = readString();
+    expect(':');
+    return name;
+  }
+
+  /**
+   * Moves to the next element of the current array.
+   *
+   * @return {@code false} if the end of the array has been read instead
+   */
+  boolean nextElement() {
+    return hasNext(']');
+  }
+
+  private boolean hasNext(char end) {
+    int c = peek();
+    if (c == ',') {
+      pos += width;
+      c = peek();
+    }
+    if (c == end) {
+      pos += width;
+      return false;
+    }
+    if (c < 0) {
+      throw malformed("unexpected end");
+    }
+    return true;
+  }
+
+  /**
+   * Reads a string, number, boolean or null. Objects and arrays are skipped.
+   *
+   * @return the string, the text of the number or boolean, or {@code null} for null, objects and arrays
+   */
+  String nextScalar() {
+    int c = peek();
+    if (c == '"') {
+      return readString();
+    }
+    if (c == '{' || c == '[') {
+      skipValue();
+      return null;
+    }
+    int start = pos;
+    while (pos < limit) {
+      c = charAt(pos);
+      if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+        break;
+      }
+      pos += width;
+    }
+    if (pos == start) {
+      throw malformed("value expected");
+    }
+    String literal = XmlBytes.decode(buf, start, pos);
+    return literal.equals("null") ? null : literal;
+  }
+
+  /**
+   * Skips the next value, however deeply nested.
+   */
+  void skipValue() {
+    int c = peek();
+    if (c == '"') {
+      skipString();
+      return;
+    }
+    if (c != '{' && c != '[') {
+      nextScalar();
+      return;
+    }
+    int depth = 0;
+    do {
+      c = charAt(pos);
+      if (c == '"') {
+        skipString();
+        continue;
+      }
+      if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      }
+      pos += width;
+    } while (depth > 0 && pos < limit);
+    if (depth > 0) {
+      throw malformed("unexpected end");
+    }
+  }
+
+  private String readString() {
+    int end = skipString();
+    int start = stringStart;
+    String s = escaped ? XmlBytes.decode(buf, start, end)
+        : StandardCharsets.UTF_8.decode(slice(start, end)).toString();
+    return s.indexOf('\\') < 0 ? s : unescape(s);
+  }
+
+  /**
+   * Skips a string, recording where its contents start in {@link #stringStart}.
+   *
+   * @return where its contents end
+   */
+  private int skipString() {
+    if (peek() != '"') {
+      throw malformed("string expected");
+    }
+    pos += width;
+    stringStart = pos;
+    while (pos < limit) {
+      int c = charAt(pos);
+      if (c == '"') {
+        int end = pos;
+        pos += width;
+        return end;
+      }
+      pos += width;
+      if (c == '\\' && pos < limit) {
+        charAt(pos);
+        pos += width;
+      }
+    }
+    throw malformed("unterminated string");
+  }
+
+  private void expect(char expected) {
+    if (peek() != expected) {
+      throw malformed("'" + expected + "' expected");
+    }
+    pos += width;
+  }
+
+  /**
+   * @return the character at {@code i}, setting {@link #width}: structural characters may be XML references, and
+   *         other bytes are returned as they are
+   */
+  private int charAt(int i) {
+    byte b = buf.get(i);
+    width = 1;
+    if (b == '&' && escaped) {
+      if (XmlBytes.startsWith(buf, i, limit, QUOT)) {
+        width = QUOT.length;
+        return '"';
+      }
+      if (XmlBytes.startsWith(buf, i, limit, QUOT_NUMERIC)) {
+        width = QUOT_NUMERIC.length;
+        return '"';
+      }
+    }
+    return b;
+  }
+
+  private ByteBuffer slice(int from, int to) {
+    ByteBuffer b = buf.duplicate();
+    b.limit(to);
+    b.position(from);
+    return b;
+  }
+
+  /**
+   * Replaces the escape sequences of a JSON string.
+   */
+  private String unescape(String s) {
+    StringBuilder out = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c != '\\' || i + 1 == s.length()) {
+        out.append(c);
+        continue;
+      }
+      c = s.charAt(++i);
+      switch (c) {
+        case 'b':
+          out.append('\b');
+          break;
+        case 'f':
+          out.append('\f');
+          break;
+        case 'n':
+          out.append('\n');
+          break;
+        case 'r':
+          out.append('\r');
+          break;
+        case 't':
+          out.append('\t');
+          break;
+        case 'u':
+          if (i + 4 >= s.length()) {
+            throw malformed("bad escape");
+          }
+          try {
+            out.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+          } catch (NumberFormatException e) {
+            throw malformed("bad escape");
+          }
+          i += 4;
+          break;
+        default:
+          // \" \\ \/
+          out.append(c);
+          break;
+      }
+    }
+    return out.toString();
+  }
+
+  private IllegalArgumentException malformed(String reason) {
+    return new IllegalArgumentException("Malformed JSON at offset " + (pos - buf.position()) + ": " + reason);
+  }
+}
@@ -0,0 +1,83 @@
+package io.sunrisedata.wikipedia;
+
+/**
+ * A set of {@code long}s in a single array, with open addressing and linear probing. Holds millions of values
+ * in a fraction of the memory of a {@code HashSet<Long>}.
+ */
+final class LongHashSet {
+  private static final long EMPTY = 0L;
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private long[] slots;
+  private boolean containsEmpty;
+  private int size;
+
+  LongHashSet(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+    slots = new long[capacity];
+  }
+
+  /**
+   * @return {@code true} if the value wasn't in the set yet
+   */
+  boolean add(long value) {
+    if (value == EMPTY) {
+      boolean added = !containsEmpty;
+      containsEmpty = true;
+      size += added ? 1 : 0;
+      return added;
+    }
+    if (size + 1 > slots.length * LOAD_FACTOR) {
+      resize();
+    }
+    int mask = slots.length - 1;
+    for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+      if (slots[i] == value) {
+        return false;
+      }
+      if (slots[i] == EMPTY) {
+        slots[i] = value;
+        size++;
+        return true;
+      }
+    }
+  }
+
+  boolean contains(long value) {
+    if (value == EMPTY) {
+      return containsEmpty;
+    }
+    int mask = slots.length - 1;
+    for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+      if (slots[i] == value) {
+        return true;
+      }
+      if (slots[i] == EMPTY) {
+        return false;
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void resize() {
+    long[] old = slots;
+    slots = new long[old.length * 2];
+    int mask = slots.length - 1;
+    for (long value : old) {
+      if (value != EMPTY) {
+        int i = slot(value, mask);
+        while (slots[i] != EMPTY) {
+          i = (i + 1) & mask;
+        }
+        slots[i] = value;
+      }
+    }
+  }
+
+  private static int slot(long value, int mask) {
+    return (int) Hashing.mix(value) & mask;
+  }
+}
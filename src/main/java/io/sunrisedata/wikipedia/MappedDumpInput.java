@@ -0,0 +1,153 @@
+package io.sunrisedata.wikipedia;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link DumpInput} over a memory-mapped, uncompressed local file.
+ *
+ * The file is mapped one window at a time. Buffering doesn't copy anything: the buffer is a slice of the
+ * current window, and when an element runs past the end of the window the next window is mapped starting at
+ * the element, so the element is always in a single {@link MappedByteBuffer}.
+ */
+class MappedDumpInput extends DumpInput {
+  /**
+   * Default size of a mapped window.
+   */
+  static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+  /**
+   * Bytes kept mapped before the current position when not buffering, so a tag that straddles two windows
+   * can still be buffered.
+   */
+  private static final int LOOK_BEHIND = 64;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long fileLength;
+  private final long start;
+  private final long end;
+  private final int windowSize;
+  private MappedByteBuffer window;
+  private long windowStart;
+  private long pos;
+  /**
+   * Start of the buffered bytes, or -1 if not buffering.
+   */
+  private long mark = -1;
+
+  /**
+   * @param file the uncompressed dump
+   * @param start where the split starts
+   * @param end where the split ends
+   * @param windowSize how many bytes to map at a time
+   */
+  MappedDumpInput(File file, long start, long end, int windowSize) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+    this.fileLength = channel.size();
+    this.start = start;
+    this.end = Math.min(end, fileLength);
+    this.windowSize = windowSize;
+    this.pos = start;
+  }
+
+  @Override
+  protected int read() throws IOException {
+    if (pos >= fileLength) {
+      return -1;
+    }
+    if (window == null || pos >= windowStart + window.limit()) {
+      map();
+    }
+    return window.get((int) (pos++ - windowStart)) & 0xff;
+  }
+
+  @Override
+  protected void skipTo(byte b, boolean saveToBuffer, boolean stopAtEnd) throws IOException {
+    // saving costs nothing, the bytes are already in the window
+    long limit = stopAtEnd ? Math.min(fileLength, end - 1) : fileLength;
+    while (pos < limit) {
+      if (window == null || pos >= windowStart + window.limit()) {
+        map();
+      }
+      int to = (int) Math.min(window.limit(), limit - windowStart);
+      int found = ByteScanner.indexOf(window, (int) (pos - windowStart), to, b);
+      pos = windowStart + found;
+      if (found < to) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Maps the window containing {@code pos} and the buffered bytes, if any.
+   */
+  private void map() throws IOException {
+    long from = mark >= 0 ? mark : Math.max(start, pos - LOOK_BEHIND);
+    long size = Math.min(fileLength - from, pos - from + windowSize);
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("element starting at position " + mark + " is too large to map");
+    }
+    window = channel.map(FileChannel.MapMode.READ_ONLY, from, size);
+    windowStart = from;
+  }
+
+  @Override
+  protected void save(int b) {
+    // the bytes are already in the window
+  }
+
+  @Override
+  long getPos() {
+    return pos;
+  }
+
+  @Override
+  boolean pastEnd() {
+    return pos >= end;
+  }
+
+  @Override
+  boolean isBeforeEnd(long elementPos) {
+    return elementPos < end;
+  }
+
+  @Override
+  float getProgress() {
+    return end == start ? 1.0f : Math.min(1.0f, ((float) (pos - start)) / ((float) (end - start)));
+  }
+
+  @Override
+  void clearBuffer() {
+    mark = -1;
+  }
+
+  @Override
+  void startBuffer(byte[] matchedTag) {
+    mark = pos - matchedTag.length;
+  }
+
+  @Override
+  boolean isBufferShareable() {
+    return true;
+  }
+
+  @Override
+  ByteBuffer getBuffer(int trimTail) {
+    ByteBuffer b = window.duplicate();
+    b.limit((int) (pos - trimTail - windowStart));
+    b.position((int) (mark - windowStart));
+    return b.slice();
+  }
+
+  @Override
+  public void close() throws IOException {
+    // the mapped windows are released when they are garbage collected
+    window = null;
+    file.close();
+  }
+}
@@ -0,0 +1,224 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The pages to read, by id or title, from the allowlist files set with
+ * {@link WikipediaPageRevisionInputFormat#setPageIdAllowlist} and
+ * {@link WikipediaPageRevisionInputFormat#setTitleAllowlist}.
+ *
+ * Ids are held in a {@link LongHashSet} and titles as 64-bit hashes in another, or both in Bloom filters when a
+ * false positive rate is set. Titles are only told apart by their hashes, so a title whose hash collides with a
+ * listed one is let through. A list is loaded once per JVM and shared by the readers in it, and loaded again if
+ * its file changes.
+ */
+class PageAllowlist {
+  private static final Logger LOG = Logger.getLogger(PageAllowlist.class);
+  private static final int CACHE_SIZE = 4;
+  private static final Map<String, PageAllowlist> CACHE = Collections.synchronizedMap(
+      new LinkedHashMap<String, PageAllowlist>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PageAllowlist> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      });
+
+  private final LongHashSet ids;
+  private final LongHashSet titles;
+  private final BloomFilter idFilter;
+  private final BloomFilter titleFilter;
+
+  private PageAllowlist(List<Long> idList, List<Long> titleList, double falsePositiveRate) {
+    if (falsePositiveRate > 0) {
+      this.ids = null;
+      this.titles = null;
+      this.idFilter = idList == null ? null : bloomFilter(idList, falsePositiveRate);
+      this.titleFilter = titleList == null ? null : bloomFilter(titleList, falsePositiveRate);
+    } else {
+      this.ids = idList == null ? null : hashSet(idList);
+      this.titles = titleList == null ? null : hashSet(titleList);
+      this.idFilter = null;
+      this.titleFilter = null;
+    }
+  }
+
+  /**
+   * @return the allowlist set in {@code conf}, or {@code null} if there is none
+   */
+  static PageAllowlist get(Configuration conf) throws IOException {
+    String idFile = conf.get(WikipediaPageRevisionInputFormat.PAGE_ID_ALLOWLIST);
+    String titleFile = conf.get(WikipediaPageRevisionInputFormat.TITLE_ALLOWLIST);
+    if (idFile == null && titleFile == null) {
+      return null;
+    }
+    double falsePositiveRate = conf.getDouble(WikipediaPageRevisionInputFormat.ALLOWLIST_FALSE_POSITIVE_RATE, 0);
+    String cacheKey = (idFile == null ? null : idFile + getVersion(conf, idFile)) + "\t"
+        + (titleFile == null ? null : titleFile + getVersion(conf, titleFile)) + "\t" + falsePositiveRate;
+    synchronized (CACHE) {
+      PageAllowlist allowlist = CACHE.get(cacheKey);
+      if (allowlist == null) {
+        allowlist = new PageAllowlist(idFile == null ? null : readIds(conf, idFile),
+            titleFile == null ? null : readTitles(conf, titleFile), falsePositiveRate);
+        CACHE.put(cacheKey, allowlist);
+      }
+      return allowlist;
+    }
+  }
+
+  /**
+   * @return the length and modification time of a list, which tell whether it has been edited
+   */
+  static String getVersion(Configuration conf, String file) throws IOException {
+    Path path = new Path(file);
+    FileStatus status = path.getFileSystem(conf).getFileStatus(path);
+    return "@" + status.getLen() + "@" + status.getModificationTime();
+  }
+
+  private static List<Long> readIds(Configuration conf, String file) throws IOException {
+    List<Long> ids = new ArrayList<Long>();
+    for (String line : readLines(conf, file)) {
+      try {
+        ids.add(Long.parseLong(line));
+      } catch (NumberFormatException e) {
+        throw new IOException("Not a page id in " + file + ": " + line, e);
+      }
+    }
+    return ids;
+  }
+
+  private static List<Long> readTitles(Configuration conf, String file) throws IOException {
+    List<Long> titles = new ArrayList<Long>();
+    for (String line : readLines(conf, file)) {
+      titles.add(titleHash(line));
+    }
+    return titles;
+  }
+
+  /**
+   * Reads the non-empty lines of a list. A file in the job's distributed cache is read from the task's working
+   * directory, where it is linked; otherwise the file is read from its file system.
+   */
+  private static List<String> readLines(Configuration conf, String file) throws IOException {
+    Path path = new Path(file);
+    File local = getCachedCopy(conf, path);
+    InputStream in;
+    if (local != null) {
+      LOG.info("Reading allowlist " + file + " from " + local.getAbsolutePath());
+      in = new FileInputStream(local);
+    } else {
+      LOG.info("Reading allowlist " + file);
+      in = path.getFileSystem(conf).open(path);
+    }
+    List<String> lines = new ArrayList<String>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty()) {
+          lines.add(line);
+        }
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * @return the link to {@code path} in the task's working directory, or {@code null} if the file isn't in the
+   *         job's distributed cache
+   */
+  private static File getCachedCopy(Configuration conf, Path path) throws IOException {
+    String[] cacheFiles = conf.getStrings(MRJobConfig.CACHE_FILES);
+    if (cacheFiles == null) {
+      return null;
+    }
+    Path qualified = path.getFileSystem(conf).makeQualified(path);
+    for (String cacheFile : cacheFiles) {
+      URI uri;
+      try {
+        uri = new URI(cacheFile);
+      } catch (URISyntaxException e) {
+        continue;
+      }
+      Path cached = new Path(uri.getScheme(), uri.getAuthority(), uri.getPath());
+      if (cached.getFileSystem(conf).makeQualified(cached).equals(qualified)) {
+        // linked under the name after the '#', if any
+        File local = new File(uri.getFragment() != null ? uri.getFragment() : cached.getName());
+        return local.isFile() ? local : null;
+      }
+    }
+    return null;
+  }
+
+  private static long titleHash(String title) {
+    // titles treat spaces and underscores alike
+    return Hashing.hash(title.replace('_', ' '));
+  }
+
+  private static LongHashSet hashSet(List<Long> values) {
+    LongHashSet set = new LongHashSet(values.size());
+    for (long value : values) {
+      set.add(value);
+    }
+    return set;
+  }
+
+  private static BloomFilter bloomFilter(List<Long> values, double falsePositiveRate) {
+    int n = Math.max(1, values.size());
+    int bits = (int) Math.min(Integer.MAX_VALUE - 64,
+        Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+    int hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+    BloomFilter filter = new BloomFilter(bits, hashes, Hash.MURMUR_HASH);
+    for (long value : values) {
+      filter.add(key(value));
+    }
+    return filter;
+  }
+
+  private static Key key(long value) {
+    return new Key(ByteBuffer.allocate(8).putLong(value).array());
+  }
+
+  /**
+   * @return whether {@code page} is in one of the lists, or may be when they are held in Bloom filters
+   */
+  boolean acceptPage(WikipediaPage page) {
+    if (ids != null || idFilter != null) {
+      try {
+        long id = Long.parseLong(page.getPageId());
+        if (ids != null ? ids.contains(id) : idFilter.membershipTest(key(id))) {
+          return true;
+        }
+      } catch (NumberFormatException e) {
+        // not in the id list
+      }
+    }
+    if ((titles != null || titleFilter != null) && page.getTitle() != null) {
+      long title = titleHash(page.getTitle());
+      return titles != null ? titles.contains(title) : titleFilter.membershipTest(key(title));
+    }
+    return false;
+  }
+}
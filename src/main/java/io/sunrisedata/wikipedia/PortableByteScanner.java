@@ -0,0 +1,40 @@
+package io.sunrisedata.wikipedia;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds a byte eight bytes at a time, by testing each {@code long} of the buffer for a zero byte after xor-ing it
+ * with the byte repeated. Works on any JVM; {@link ByteScanner} uses it where the Vector API isn't available.
+ */
+final class PortableByteScanner {
+  private static final long ONES = 0x0101010101010101L;
+  private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+  private PortableByteScanner() {
+  }
+
+  /**
+   * @return the index of the first {@code b} in {@code buf} from {@code from} up to {@code to}, or {@code to} if
+   *         there is none
+   */
+  static int indexOf(ByteBuffer buf, int from, int to, byte b) {
+    long pattern = (b & 0xffL) * ONES;
+    boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+    int i = from;
+    for (; i + 8 <= to; i += 8) {
+      long x = buf.getLong(i) ^ pattern;
+      // the high bit of each byte that is zero, without the false positives of the shorter formula
+      long zeros = ~(((x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | x | LOW_SEVEN_BITS);
+      if (zeros != 0) {
+        return i + ((bigEndian ? Long.numberOfLeadingZeros(zeros) : Long.numberOfTrailingZeros(zeros)) >>> 3);
+      }
+    }
+    for (; i < to; i++) {
+      if (buf.get(i) == b) {
+        return i;
+      }
+    }
+    return to;
+  }
+}
@@ -0,0 +1,51 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Records the byte ranges of corrupt records skipped by a reader, one line per record: the input, the start and
+ * end positions, what the positions are and the reason, separated by tabs. Positions are either
+ * {@value #UNCOMPRESSED} offsets, in bytes of the (uncompressed) input, or for splits of a compressed file, whose
+ * uncompressed offsets aren't known, the {@value #COMPRESSED_BLOCK} positions in the file of the blocks the record
+ * starts and ends in, as the codec reports them: a few bytes past where the block starts, so a split starting just
+ * before the position reads the block first. The file is only created once there is something to record.
+ */
+class Quarantine implements Closeable {
+  static final String UNCOMPRESSED = "uncompressed";
+  static final String COMPRESSED_BLOCK = "compressed-block";
+
+  private final FileSystem fs;
+  private final Path file;
+  private Writer out;
+
+  Quarantine(FileSystem fs, Path file) {
+    this.fs = fs;
+    this.file = file;
+  }
+
+  /**
+   * @param compressedBlocks whether {@code start} and {@code end} are positions of compressed blocks rather than
+   *                         uncompressed offsets
+   */
+  void add(String input, long start, long end, boolean compressedBlocks, String reason) throws IOException {
+    if (out == null) {
+      out = new OutputStreamWriter(fs.create(file, true), StandardCharsets.UTF_8);
+    }
+    out.write(input + "\t" + start + "\t" + end + "\t" + (compressedBlocks ? COMPRESSED_BLOCK : UNCOMPRESSED) + "\t"
+        + reason.replace('\t', ' ').replace('\n', ' ') + "\n");
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (out != null) {
+      out.close();
+    }
+  }
+}
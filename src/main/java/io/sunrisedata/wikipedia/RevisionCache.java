@@ -0,0 +1,345 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Revisions parsed from a split, kept in a directory in a compact binary form for later jobs over the same dump,
+ * see {@link WikipediaPageRevisionInputFormat#setCacheDir}.
+ *
+ * A cached split is named after the checksum of its file (or, where the file system has no checksums, its path,
+ * length and modification time), the settings of the reader, including the length and modification time of its
+ * allowlists, and the split's range, so a file that changes or a job that reads differently just doesn't find it.
+ * The checksum of a file is computed once per JVM and modification time, as it takes reading the whole file.
+ *
+ * A cache file is written under a temporary name and renamed once the whole split has been read, and ends with
+ * the number of revisions in it, so partial files are never read. When the directory grows past its size limit,
+ * the least recently used files are deleted.
+ */
+class RevisionCache {
+  private static final Logger LOG = Logger.getLogger(RevisionCache.class);
+  private static final int MAGIC = 0x57505243; // WPRC
+  private static final int VERSION = 1;
+  private static final String SUFFIX = ".revisions";
+  /**
+   * Length of the trailer: the number of revisions and the magic number.
+   */
+  private static final int TRAILER_LENGTH = 12;
+  private static final String SETTINGS_PREFIX = "wikipedia.input.";
+  private static final int FILE_ID_CACHE_SIZE = 64;
+  /**
+   * Checksums (or other identities) of files by path and modification time, shared by the readers in a JVM.
+   */
+  private static final Map<String, String> FILE_ID_CACHE = Collections.synchronizedMap(
+      new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+          return size() > FILE_ID_CACHE_SIZE;
+        }
+      });
+
+  private final FileSystem fs;
+  private final Path dir;
+  private final long maxSize;
+  private final String settings;
+
+  private RevisionCache(FileSystem fs, Path dir, long maxSize, String settings) {
+    this.fs = fs;
+    this.dir = dir;
+    this.maxSize = maxSize;
+    this.settings = settings;
+  }
+
+  /**
+   * @return the cache set in the configuration, or {@code null} if there is none
+   */
+  static RevisionCache get(Configuration conf) throws IOException {
+    String dir = conf.get(WikipediaPageRevisionInputFormat.CACHE_DIR);
+    if (dir == null) {
+      return null;
+    }
+    Path path = new Path(dir);
+    // the settings that change which revisions are read, and how
+    StringBuilder settings = new StringBuilder();
+    for (Map.Entry<String, String> e : new TreeMap<String, String>(
+        conf.getValByRegex("^" + SETTINGS_PREFIX.replace(".", "\\."))).entrySet()) {
+      if (!e.getKey().startsWith(WikipediaPageRevisionInputFormat.CACHE_PREFIX)
+          && !e.getKey().equals(WikipediaPageRevisionInputFormat.QUARANTINE_DIR)) {
+        settings.append(e.getKey()).append('=').append(e.getValue());
+        if (e.getKey().equals(WikipediaPageRevisionInputFormat.PAGE_ID_ALLOWLIST)
+            || e.getKey().equals(WikipediaPageRevisionInputFormat.TITLE_ALLOWLIST)) {
+          // an allowlist edited in place reads differently
+          settings.append(PageAllowlist.getVersion(conf, e.getValue()));
+        }
+        settings.append('\n');
+      }
+    }
+    return new RevisionCache(path.getFileSystem(conf), path,
+        conf.getLong(WikipediaPageRevisionInputFormat.CACHE_MAX_SIZE,
+            WikipediaPageRevisionInputFormat.DEFAULT_CACHE_MAX_SIZE),
+        settings.toString());
+  }
+
+  /**
+   * @return where the revisions of a split of {@code file} are cached
+   */
+  Path getPath(FileSystem fileSystem, Path file, long start, long length) throws IOException {
+    FileStatus status = fileSystem.getFileStatus(file);
+    Path qualified = fileSystem.makeQualified(file);
+    String cacheKey = qualified + "@" + status.getModificationTime();
+    String id = FILE_ID_CACHE.get(cacheKey);
+    if (id == null) {
+      FileChecksum checksum = fileSystem.getFileChecksum(file);
+      if (checksum != null) {
+        id = checksum.getAlgorithmName() + ":" + MD5Hash.digest(checksum.getBytes());
+      } else {
+        id = qualified + "@" + status.getLen() + "@" + status.getModificationTime();
+      }
+      FILE_ID_CACHE.put(cacheKey, id);
+    }
+    return new Path(dir, MD5Hash.digest(id + "\n" + settings) + "-" + start + "-" + length + SUFFIX);
+  }
+
+  /**
+   * Opens the cached revisions of a split.
+   *
+   * @return the reader, or {@code null} if the split isn't cached
+   */
+  Reader openReader(Path path, String inputName, WikipediaSiteInfo siteInfo, WikipediaMagicWords magicWords)
+      throws IOException {
+    FileStatus status;
+    try {
+      status = fs.getFileStatus(path);
+    } catch (java.io.FileNotFoundException e) {
+      return null;
+    }
+    long length = status.getLen();
+    if (length < 8 + TRAILER_LENGTH) {
+      return null;
+    }
+    FSDataInputStream in = fs.open(path);
+    try {
+      in.seek(length - TRAILER_LENGTH);
+      long count = in.readLong();
+      boolean valid = in.readInt() == MAGIC;
+      in.seek(0);
+      valid &= in.readInt() == MAGIC && in.readInt() == VERSION;
+      if (!valid) {
+        LOG.warn("Ignoring invalid cache file " + path);
+        in.close();
+        return null;
+      }
+      try {
+        // mark it used, for eviction
+        fs.setTimes(path, System.currentTimeMillis(), -1);
+      } catch (IOException e) {
+        LOG.debug("Can't set the time of " + path, e);
+      }
+      return new Reader(in, length, count, inputName, siteInfo, magicWords);
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Starts caching the revisions of a split.
+   *
+   * @param path where the revisions are to be cached
+   * @param attempt the task attempt, to keep the temporary files of attempts apart
+   */
+  Writer createWriter(Path path, String attempt) throws IOException {
+    Path tmp = new Path(dir, "_" + path.getName() + "." + attempt + ".tmp");
+    return new Writer(path, tmp, fs.create(tmp, true));
+  }
+
+  /**
+   * Deletes the least recently used cache files until the cache fits its size limit.
+   */
+  private void evict() throws IOException {
+    FileStatus[] files = fs.listStatus(dir, new PathFilter() {
+      @Override
+      public boolean accept(Path path) {
+        return path.getName().endsWith(SUFFIX) && !path.getName().startsWith("_");
+      }
+    });
+    long size = 0;
+    for (FileStatus file : files) {
+      size += file.getLen();
+    }
+    if (size <= maxSize) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<FileStatus>() {
+      @Override
+      public int compare(FileStatus a, FileStatus b) {
+        return Long.compare(a.getModificationTime(), b.getModificationTime());
+      }
+    });
+    for (int i = 0; i < files.length - 1 && size > maxSize; i++) {
+      if (fs.delete(files[i].getPath(), false)) {
+        LOG.info("Evicted " + files[i].getPath() + " from the cache");
+        size -= files[i].getLen();
+      }
+    }
+  }
+
+  static void writeString(DataOutput out, String s) throws IOException {
+    if (s == null) {
+      WritableUtils.writeVInt(out, 0);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    WritableUtils.writeVInt(out, bytes.length + 1);
+    out.write(bytes);
+  }
+
+  static String readString(DataInput in) throws IOException {
+    int length = WritableUtils.readVInt(in) - 1;
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads the revisions of a cached split.
+   */
+  static class Reader implements Closeable {
+    private final FSDataInputStream file;
+    private final DataInputStream in;
+    private final long length;
+    private final String inputName;
+    private final WikipediaSiteInfo siteInfo;
+    private final WikipediaMagicWords magicWords;
+    private long remaining;
+    private WikipediaPage page;
+
+    private Reader(FSDataInputStream file, long length, long count, String inputName, WikipediaSiteInfo siteInfo,
+                   WikipediaMagicWords magicWords) {
+      this.file = file;
+      this.in = new DataInputStream(new BufferedInputStream(file, 64 * 1024));
+      this.length = length;
+      this.remaining = count;
+      this.inputName = inputName;
+      this.siteInfo = siteInfo;
+      this.magicWords = magicWords;
+    }
+
+    /**
+     * @return the next revision, or {@code null} if there are no more
+     */
+    WikipediaPageRevision next() throws IOException {
+      if (remaining == 0) {
+        return null;
+      }
+      remaining--;
+      if (in.readBoolean()) {
+        page = new WikipediaPage();
+        page.readCompact(in);
+        page.setSiteInfo(siteInfo);
+        page.setMagicWords(magicWords);
+        page.setInputName(inputName);
+      }
+      WikipediaPageRevision revision = new WikipediaPageRevision(page);
+      revision.readCompact(in);
+      return revision;
+    }
+
+    float getProgress() throws IOException {
+      return remaining == 0 ? 1.0f : Math.min(1.0f, (float) file.getPos() / length);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes the revisions of a split to a temporary file, which becomes the cache file once all of them are written.
+   */
+  class Writer implements Closeable {
+    private final Path path;
+    private final Path tmp;
+    private final DataOutputStream out;
+    private WikipediaPage page;
+    private long count;
+    private boolean closed;
+
+    private Writer(Path path, Path tmp, FSDataOutputStream file) throws IOException {
+      this.path = path;
+      this.tmp = tmp;
+      this.out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+    }
+
+    void write(WikipediaPageRevision revision) throws IOException {
+      boolean newPage = revision.getContainingPage() != page;
+      out.writeBoolean(newPage);
+      if (newPage) {
+        page = revision.getContainingPage();
+        page.writeCompact(out);
+      }
+      revision.writeCompact(out);
+      count++;
+    }
+
+    /**
+     * Finishes the cache file, and evicts others if the cache has grown too large.
+     */
+    void commit() throws IOException {
+      out.writeLong(count);
+      out.writeInt(MAGIC);
+      out.close();
+      closed = true;
+      // another task may have cached the same split meanwhile
+      if (!fs.rename(tmp, path)) {
+        fs.delete(tmp, false);
+      } else {
+        LOG.info("Cached " + count + " revisions in " + path);
+      }
+      evict();
+    }
+
+    /**
+     * Drops the revisions written so far, if the cache file wasn't finished.
+     */
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        out.close();
+        fs.delete(tmp, false);
+      }
+    }
+  }
+}
@@ -0,0 +1,234 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DumpInput} over an {@code InputStream}, buffering into a reusable {@link DataOutputBuffer}.
+ *
+ * Unless the end of the split is measured by the position of a decompressing stream, the input is read a chunk at
+ * a time, so text between tags can be skipped in bulk.
+ */
+class StreamDumpInput extends DumpInput {
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final InputStream in;
+  private final DataOutputBuffer buffer;
+  private final long start;
+  private final long end;
+  /**
+   * Position in the underlying file for compressed input, or {@code null} if {@code pos} is the file position.
+   */
+  private final Seekable filePosition;
+  /**
+   * Where progress reaches 1: the end of the split, or the end of the file for input read whole.
+   */
+  private final long progressEnd;
+  private long pos;
+  private float progress;
+  /**
+   * Bytes read ahead from {@code in}, or {@code null} if it is read a byte at a time.
+   */
+  private final byte[] chunk;
+  private final ByteBuffer chunkBuffer;
+  private int chunkPos;
+  private int chunkEnd;
+
+  /**
+   * @param in the input, positioned at {@code start}
+   * @param start where the split starts
+   * @param end where the split ends, or {@code Long.MAX_VALUE} to read the whole input
+   * @param filePosition position in the underlying file if {@code in} is decompressing a split, otherwise
+   *                     {@code null}
+   */
+  StreamDumpInput(InputStream in, long start, long end, Seekable filePosition) {
+    this(in, start, end, filePosition, end);
+  }
+
+  /**
+   * @param in the input, positioned at {@code start}
+   * @param start where the split starts
+   * @param end where the split ends, or {@code Long.MAX_VALUE} to read the whole input
+   * @param filePosition position in the underlying file if {@code in} is decompressing it, otherwise {@code null}
+   * @param fileLength length of the underlying file, for the progress of input that is read whole
+   */
+  StreamDumpInput(InputStream in, long start, long end, Seekable filePosition, long fileLength) {
+    this(in, start, end, filePosition, fileLength, new DataOutputBuffer());
+  }
+
+  /**
+   * @param in the input, positioned at {@code start}
+   * @param start where the split starts
+   * @param end where the split ends, or {@code Long.MAX_VALUE} to read the whole input
+   * @param filePosition position in the underlying file if {@code in} is decompressing it, otherwise {@code null}
+   * @param fileLength length of the underlying file, for the progress of input that is read whole
+   * @param buffer the buffer to read elements into, which may be reused from an input that is done with it
+   */
+  StreamDumpInput(InputStream in, long start, long end, Seekable filePosition, long fileLength,
+                  DataOutputBuffer buffer) {
+    this.in = in;
+    this.buffer = buffer;
+    this.start = start;
+    this.end = end;
+    this.filePosition = filePosition;
+    this.progressEnd = Math.min(end, fileLength);
+    // reading ahead would move a decompressing stream past block boundaries the split end is checked against
+    this.chunk = filePosition == null || end == Long.MAX_VALUE ? new byte[CHUNK_SIZE] : null;
+    this.chunkBuffer = chunk != null ? ByteBuffer.wrap(chunk) : null;
+    // Because input streams of gzipped files are not seekable, we need to keep track of bytes
+    // consumed ourselves. The uncompressed offset of a compressed split isn't known, so its bytes are counted from
+    // the start of the split.
+    this.pos = isCompressedSplit() ? 0 : start;
+  }
+
+  @Override
+  protected int read() throws IOException {
+    if (chunk == null) {
+      int b = in.read();
+      // increment position (bytes consumed)
+      pos++;
+      return b;
+    }
+    // increment position (bytes consumed)
+    pos++;
+    if (chunkPos == chunkEnd && !fillChunk()) {
+      return -1;
+    }
+    return chunk[chunkPos++] & 0xff;
+  }
+
+  @Override
+  protected void skipTo(byte b, boolean saveToBuffer, boolean stopAtEnd) throws IOException {
+    if (chunk == null) {
+      return;
+    }
+    long limit = stopAtEnd ? end - 1 : Long.MAX_VALUE;
+    while (pos < limit) {
+      if (chunkPos == chunkEnd && !fillChunk()) {
+        return;
+      }
+      int to = (int) Math.min(chunkEnd, chunkPos + (limit - pos));
+      int found = ByteScanner.indexOf(chunkBuffer, chunkPos, to, b);
+      if (saveToBuffer) {
+        buffer.write(chunk, chunkPos, found - chunkPos);
+      }
+      pos += found - chunkPos;
+      chunkPos = found;
+      if (found < to) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads the next chunk of the input.
+   *
+   * @return {@code false} at the end of the input
+   */
+  private boolean fillChunk() throws IOException {
+    int n;
+    do {
+      n = in.read(chunk, 0, chunk.length);
+    } while (n == 0);
+    if (n < 0) {
+      return false;
+    }
+    chunkPos = 0;
+    chunkEnd = n;
+    return true;
+  }
+
+  @Override
+  protected void save(int b) throws IOException {
+    buffer.write(b);
+  }
+
+  /**
+   * For a split of a compressed file, the uncompressed bytes consumed since the start of the split; see
+   * {@link #getBlockPos()}.
+   */
+  @Override
+  long getPos() {
+    return pos;
+  }
+
+  /**
+   * The position the codec reports for the compressed stream of a split, which only advances at block boundaries.
+   */
+  @Override
+  long getBlockPos() throws IOException {
+    return isCompressedSplit() ? filePosition.getPos() : -1;
+  }
+
+  private boolean isCompressedSplit() {
+    return filePosition != null && end != Long.MAX_VALUE;
+  }
+
+  /**
+   * Whether the reader has moved past the end of its split. Compressed positions only advance at block
+   * boundaries, so as in Hadoop's {@code LineRecordReader} a block that starts at {@code end} still belongs
+   * to this split.
+   */
+  @Override
+  boolean pastEnd() throws IOException {
+    return filePosition != null ? filePosition.getPos() > end : pos >= end;
+  }
+
+  @Override
+  boolean isBeforeEnd(long elementPos) throws IOException {
+    return filePosition != null ? filePosition.getPos() <= end : elementPos < end;
+  }
+
+  /**
+   * Progress is measured in bytes of the underlying file, so for compressed input it is the compressed bytes
+   * the codec has consumed. It never goes back, and stays at 1 while the reader finishes the last page past the
+   * end of the split.
+   */
+  @Override
+  float getProgress() throws IOException {
+    if (progressEnd <= start || progressEnd == Long.MAX_VALUE) {
+      return progressEnd <= start ? 1.0f : 0.0f;
+    }
+    float current = Math.min(1.0f, Math.max(0.0f,
+        ((float) (getFilePosition() - start)) / ((float) (progressEnd - start))));
+    progress = Math.max(progress, current);
+    return progress;
+  }
+
+  /**
+   * Position in the underlying file, as opposed to the number of (possibly decompressed) bytes consumed.
+   */
+  private long getFilePosition() throws IOException {
+    return filePosition != null ? filePosition.getPos() : pos;
+  }
+
+  @Override
+  void clearBuffer() {
+    buffer.reset();
+  }
+
+  @Override
+  void startBuffer(byte[] matchedTag) throws IOException {
+    buffer.reset();
+    buffer.write(matchedTag);
+  }
+
+  @Override
+  boolean isBufferShareable() {
+    return false;
+  }
+
+  @Override
+  ByteBuffer getBuffer(int trimTail) {
+    return ByteBuffer.wrap(buffer.getData(), 0, buffer.getLength() - trimTail);
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,117 @@
+package io.sunrisedata.wikipedia;
+
+import java.util.Arrays;
+
+/**
+ * The frequency of each term in a document, by term id, in primitive arrays that are reused from one document to
+ * the next. Filled by {@link WikipediaTokenizer#countTerms}.
+ *
+ * <pre>
+ * for (int i = 0; i &lt; tf.size(); i++) {
+ *   postings.add(tf.getTermId(i), docId, tf.getFrequency(i));
+ * }
+ * </pre>
+ */
+public class TermFrequencies {
+  private int[] termIds = new int[64];
+  private int[] frequencies = new int[64];
+  /**
+   * Open-addressed table of index + 1 into {@link #termIds}, 0 for empty slots.
+   */
+  private int[] table = new int[128];
+  private int size;
+  private int length;
+
+  /**
+   * Counts an occurrence of a term.
+   */
+  public void add(int termId) {
+    length++;
+    int mask = table.length - 1;
+    for (int i = (int) Hashing.mix(termId) & mask; ; i = (i + 1) & mask) {
+      int entry = table[i];
+      if (entry == 0) {
+        if (size == termIds.length) {
+          termIds = Arrays.copyOf(termIds, size * 2);
+          frequencies = Arrays.copyOf(frequencies, size * 2);
+        }
+        termIds[size] = termId;
+        frequencies[size] = 1;
+        table[i] = ++size;
+        if (size * 2 > table.length) {
+          rehash();
+        }
+        return;
+      }
+      if (termIds[entry - 1] == termId) {
+        frequencies[entry - 1]++;
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the frequency of a term, 0 if it doesn't occur
+   */
+  public int get(int termId) {
+    int mask = table.length - 1;
+    for (int i = (int) Hashing.mix(termId) & mask; ; i = (i + 1) & mask) {
+      int entry = table[i];
+      if (entry == 0) {
+        return 0;
+      }
+      if (termIds[entry - 1] == termId) {
+        return frequencies[entry - 1];
+      }
+    }
+  }
+
+  /**
+   * @return the number of distinct terms
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the id of the {@code i}th distinct term, in order of first occurrence
+   */
+  public int getTermId(int i) {
+    return termIds[i];
+  }
+
+  /**
+   * @return the frequency of the {@code i}th distinct term
+   */
+  public int getFrequency(int i) {
+    return frequencies[i];
+  }
+
+  /**
+   * @return the number of terms counted, i.e. the length of the document
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Empties the map for the next document, keeping its arrays.
+   */
+  public void clear() {
+    Arrays.fill(table, 0);
+    size = 0;
+    length = 0;
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    int mask = table.length - 1;
+    for (int j = 0; j < size; j++) {
+      int i = (int) Hashing.mix(termIds[j]) & mask;
+      while (table[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      table[i] = j + 1;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package io.sunrisedata.wikipedia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pulls selected fields out of the JSON of Wikibase entities, such as the items of Wikidata, with a
+ * {@link JsonReader}.
+ *
+ * Only the members that are asked for are read; everything else is skipped, and reading stops as soon as the
+ * member has been read, so getting the labels of an item doesn't look at its claims or sitelinks. A claim's value
+ * is that of its main snak, simplified to a string: the id of an entity, the time of a date, the amount of a
+ * quantity, the text of a monolingual text, "latitude,longitude" of a coordinate, or the string itself. Claims
+ * without a value ("novalue" and "somevalue" snaks) are left out.
+ */
+final class WikibaseContent {
+  private static final String LABELS = "labels";
+  private static final String CLAIMS = "claims";
+  // the name of the claims in MediaInfo entities, e.g. on Commons
+  private static final String STATEMENTS = "statements";
+  private static final String[] VALUE_FIELDS = {"id", "time", "amount", "text"};
+
+  private WikibaseContent() {
+  }
+
+  /**
+   * @param languages the languages to read labels in, or {@code null} for all of them
+   * @return the labels by language, in the order of the JSON
+   */
+  static Map<String, String> getLabels(JsonReader json, Set<String> languages) {
+    Map<String, String> labels = new LinkedHashMap<String, String>();
+    if (!findMember(json, LABELS, null)) {
+      return labels;
+    }
+    json.beginObject();
+    for (String language = json.nextName(); language != null; language = json.nextName()) {
+      if (languages != null && !languages.contains(language)) {
+        json.skipValue();
+        continue;
+      }
+      String value = readMember(json, "value");
+      if (value != null) {
+        labels.put(language, value);
+      }
+    }
+    return labels;
+  }
+
+  /**
+   * @param properties the properties to read claims of, e.g. "P31", or {@code null} for all of them
+   * @return the values of the claims by property, in the order of the JSON
+   */
+  static Map<String, List<String>> getClaims(JsonReader json, Set<String> properties) {
+    Map<String, List<String>> claims = new LinkedHashMap<String, List<String>>();
+    if (!findMember(json, CLAIMS, STATEMENTS)) {
+      return claims;
+    }
+    json.beginObject();
+    for (String property = json.nextName(); property != null; property = json.nextName()) {
+      if ((properties != null && !properties.contains(property)) || json.peek() != '[') {
+        json.skipValue();
+        continue;
+      }
+      List<String> values = new ArrayList<String>();
+      json.beginArray();
+      while (json.nextElement()) {
+        String value = readStatementValue(json);
+        if (value != null) {
+          values.add(value);
+        }
+      }
+      claims.put(property, values.isEmpty() ? Collections.<String>emptyList() : values);
+    }
+    return claims;
+  }
+
+  /**
+   * Moves into the top-level object up to the value of the member called {@code name} (or {@code otherName}).
+   *
+   * @return {@code false} if the entity has no such member
+   */
+  private static boolean findMember(JsonReader json, String name, String otherName) {
+    if (json.peek() != '{') {
+      return false;
+    }
+    json.beginObject();
+    for (String member = json.nextName(); member != null; member = json.nextName()) {
+      if ((member.equals(name) || member.equals(otherName)) && json.peek() == '{') {
+        return true;
+      }
+      json.skipValue();
+    }
+    return false;
+  }
+
+  /**
+   * Reads an object, returning the scalar value of its member called {@code name}.
+   */
+  private static String readMember(JsonReader json, String name) {
+    if (json.peek() != '{') {
+      json.skipValue();
+      return null;
+    }
+    String value = null;
+    json.beginObject();
+    for (String member = json.nextName(); member != null; member = json.nextName()) {
+      if (member.equals(name)) {
+        value = json.nextScalar();
+      } else {
+        json.skipValue();
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Reads a statement, returning the value of its main snak.
+   */
+  private static String readStatementValue(JsonReader json) {
+    if (json.peek() != '{') {
+      json.skipValue();
+      return null;
+    }
+    String value = null;
+    json.beginObject();
+    for (String member = json.nextName(); member != null; member = json.nextName()) {
+      if (!member.equals("mainsnak") || json.peek() != '{') {
+        json.skipValue();
+        continue;
+      }
+      json.beginObject();
+      for (String snakMember = json.nextName(); snakMember != null; snakMember = json.nextName()) {
+        if (!snakMember.equals("datavalue") || json.peek() != '{') {
+          json.skipValue();
+          continue;
+        }
+        json.beginObject();
+        for (String dataMember = json.nextName(); dataMember != null; dataMember = json.nextName()) {
+          if (dataMember.equals("value")) {
+            value = readDataValue(json);
+          } else {
+            json.skipValue();
+          }
+        }
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Reads the value of a data value, simplified to a string.
+   */
+  private static String readDataValue(JsonReader json) {
+    if (json.peek() != '{') {
+      return json.nextScalar();
+    }
+    Map<String, String> fields = new LinkedHashMap<String, String>();
+    json.beginObject();
+    for (String member = json.nextName(); member != null; member = json.nextName()) {
+      fields.put(member, json.nextScalar());
+    }
+    for (String field : VALUE_FIELDS) {
+      if (fields.get(field) != null) {
+        return fields.get(field);
+      }
+    }
+    if (fields.get("latitude") != null && fields.get("longitude") != null) {
+      return fields.get("latitude") + "," + fields.get("longitude");
+    }
+    return null;
+  }
+}
@@ -0,0 +1,133 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.IOException;
+
+/**
+ * {@code InputFormat} for many small dump files, such as the daily adds-changes dumps or the parts of a dump split
+ * by page range. Rather than one task per file, as with {@link WikipediaPageRevisionInputFormat}, files on the same
+ * nodes are packed into splits of up to {@code mapreduce.input.fileinputformat.split.maxsize} bytes (see
+ * {@link #setMaxInputSplitSize}), and one reader goes through them all, keeping its scanner, buffers and page
+ * allowlist from one file to the next.
+ *
+ * Keys and values are the same as those of {@link WikipediaPageRevisionInputFormat}, whose settings all apply. The
+ * file each revision came from is {@link WikipediaPage#getInputName()} of its page, and while the file is read it is
+ * also set as {@code mapreduce.map.input.file} in the task's configuration, as {@code CombineFileRecordReader} does.
+ */
+public class WikipediaCombinePageRevisionInputFormat extends CombineFileInputFormat<Text, WikipediaPageRevision> {
+
+  @Override
+  public RecordReader<Text, WikipediaPageRevision> createRecordReader(InputSplit split, TaskAttemptContext context)
+      throws IOException {
+    return new WikipediaCombinePageRevisionRecordReader();
+  }
+
+  @Override
+  protected boolean isSplitable(JobContext context, Path file) {
+    CompressionCodec codec = new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
+    return codec == null || codec instanceof SplittableCompressionCodec;
+  }
+
+  /**
+   * Reads the files of a {@link CombineFileSplit} one after another with a single
+   * {@link WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader}.
+   */
+  public static class WikipediaCombinePageRevisionRecordReader extends RecordReader<Text, WikipediaPageRevision> {
+    private final WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader =
+        new WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader();
+    private CombineFileSplit split;
+    private Configuration conf;
+    private int current = -1;
+    /**
+     * Length of the files of the split that have been read.
+     */
+    private long lengthDone;
+    private boolean done;
+
+    @Override
+    public void initialize(InputSplit input, TaskAttemptContext context) throws IOException, InterruptedException {
+      this.split = (CombineFileSplit) input;
+      this.conf = context.getConfiguration();
+      if (split.getNumPaths() == 0) {
+        done = true;
+        return;
+      }
+      current = 0;
+      setInputFile(0);
+      reader.initialize(new FileSplit(split.getPath(0), split.getOffset(0), split.getLength(0), null), context);
+    }
+
+    private void setInputFile(int i) {
+      conf.set(MRJobConfig.MAP_INPUT_FILE, split.getPath(i).toString());
+      conf.setLong(MRJobConfig.MAP_INPUT_START, split.getOffset(i));
+      conf.setLong(MRJobConfig.MAP_INPUT_PATH, split.getLength(i));
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+      if (done) {
+        return false;
+      }
+      while (!reader.nextKeyValue()) {
+        lengthDone += split.getLength(current);
+        if (++current == split.getNumPaths()) {
+          done = true;
+          return false;
+        }
+        setInputFile(current);
+        reader.open(split.getPath(current), split.getOffset(current), split.getLength(current));
+      }
+      return true;
+    }
+
+    @Override
+    public Text getCurrentKey() throws IOException, InterruptedException {
+      return reader.getCurrentKey();
+    }
+
+    @Override
+    public WikipediaPageRevision getCurrentValue() throws IOException, InterruptedException {
+      return reader.getCurrentValue();
+    }
+
+    /**
+     * @return the file being read
+     */
+    public Path getCurrentFile() {
+      return current < 0 ? null : split.getPath(Math.min(current, split.getNumPaths() - 1));
+    }
+
+    /**
+     * Progress is measured in bytes of the split, so each file counts by its length.
+     */
+    @Override
+    public float getProgress() throws IOException {
+      if (done || split.getLength() == 0) {
+        return 1.0f;
+      }
+      return Math.min(1.0f,
+          (lengthDone + reader.getProgress() * split.getLength(current)) / (float) split.getLength());
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (current >= 0) {
+        reader.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@code OutputFormat} that writes page revisions as MediaWiki XML dumps, one per task, which
+ * {@link WikipediaPageRevisionInputFormat} reads like the original dump. Keys are ignored.
+ *
+ * <pre>
+ * job.setInputFormatClass(WikipediaPageRevisionInputFormat.class);
+ * WikipediaPageRevisionInputFormat.setNamespaces(job.getConfiguration(), "0");
+ * job.setNumReduceTasks(0);
+ * job.setOutputFormatClass(WikipediaDumpOutputFormat.class);
+ * FileOutputFormat.setCompressOutput(job, true);
+ * FileOutputFormat.setOutputCompressorClass(job, BZip2Codec.class);
+ * </pre>
+ *
+ * See {@link WikipediaDumpWriter} for how revisions are written; those of a page have to come one after another,
+ * as they do in a map-only job over a dump, or sorted by the keys of {@link WikipediaPageRevisionInputFormat}.
+ * Output is compressed with the codec set with {@code FileOutputFormat.setOutputCompressorClass}; with bzip2 the dump
+ * can still be split.
+ *
+ * @param <K> the type of the ignored keys
+ */
+public class WikipediaDumpOutputFormat<K> extends FileOutputFormat<K, WikipediaPageRevision> {
+
+  @Override
+  public RecordWriter<K, WikipediaPageRevision> getRecordWriter(TaskAttemptContext job)
+      throws IOException, InterruptedException {
+    Configuration conf = job.getConfiguration();
+    CompressionCodec codec = null;
+    String extension = ".xml";
+    if (getCompressOutput(job)) {
+      codec = ReflectionUtils.newInstance(getOutputCompressorClass(job, BZip2Codec.class), conf);
+      extension += codec.getDefaultExtension();
+    }
+    Path file = getDefaultWorkFile(job, extension);
+    OutputStream out = file.getFileSystem(conf).create(file, false);
+    if (codec != null) {
+      out = codec.createOutputStream(out);
+    }
+    return new WikipediaDumpRecordWriter<K>(new WikipediaDumpWriter(out));
+  }
+
+  /**
+   * Writes the revisions with a {@link WikipediaDumpWriter}.
+   */
+  public static class WikipediaDumpRecordWriter<K> extends RecordWriter<K, WikipediaPageRevision> {
+    private final WikipediaDumpWriter writer;
+
+    public WikipediaDumpRecordWriter(WikipediaDumpWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void write(K key, WikipediaPageRevision value) throws IOException {
+      writer.write(value);
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      writer.close();
+    }
+  }
+}
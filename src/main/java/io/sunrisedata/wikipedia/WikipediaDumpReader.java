@@ -0,0 +1,282 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the page revisions of a Wikipedia XML dump without Hadoop's MapReduce runtime.
+ *
+ * Revisions are parsed by the same scanner as {@link WikipediaPageRevisionInputFormat}, so a reader over part of
+ * a dump returns the revisions of the pages that start within that part.
+ *
+ * <pre>
+ * try (WikipediaDumpReader reader = WikipediaDumpReader.openMapped(new File("enwiki-pages-articles.xml"))) {
+ *   while (reader.hasNext()) {
+ *     WikipediaPageRevision revision = reader.next();
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * Revisions can also be consumed as a {@code Stream}. A stream over an uncompressed file can be processed in
+ * parallel; it is split into byte ranges, each of which reads the pages that start within it:
+ *
+ * <pre>
+ * try (Stream&lt;WikipediaPageRevision&gt; revisions = WikipediaDumpReader.stream(path)) {
+ *   long redirects = revisions.parallel().filter(WikipediaPageRevision::isRedirect).count();
+ * }
+ * </pre>
+ *
+ * I/O errors while iterating are thrown as {@link UncheckedIOException}.
+ */
+public class WikipediaDumpReader implements Iterator<WikipediaPageRevision>, Closeable {
+  /**
+   * The input name of the pages of a stream that isn't given one.
+   */
+  public static final String STREAM_NAME = "<stream>";
+
+  private final WikipediaRevisionScanner scanner;
+  private WikipediaPageRevision next;
+
+  WikipediaDumpReader(WikipediaRevisionScanner scanner) {
+    this.scanner = scanner;
+  }
+
+  /**
+   * Reads a dump from a stream. The stream is closed when the reader is closed.
+   *
+   * @param in the uncompressed dump
+   */
+  public static WikipediaDumpReader open(InputStream in) throws IOException {
+    return open(in, STREAM_NAME);
+  }
+
+  /**
+   * Reads a dump from a stream. The stream is closed when the reader is closed.
+   *
+   * @param in the uncompressed dump
+   * @param name the name of the dump, given to its pages as {@link WikipediaPage#getInputName()}
+   */
+  public static WikipediaDumpReader open(InputStream in, String name) throws IOException {
+    return open(in, name, new Configuration(false));
+  }
+
+  /**
+   * Reads a dump from a stream. The stream is closed when the reader is closed.
+   *
+   * @param in the uncompressed dump
+   * @param conf settings made with {@link WikipediaPageRevisionInputFormat}'s setters, e.g. to select pages
+   */
+  public static WikipediaDumpReader open(InputStream in, Configuration conf) throws IOException {
+    return open(in, STREAM_NAME, conf);
+  }
+
+  /**
+   * Reads a dump from a stream. The stream is closed when the reader is closed.
+   *
+   * @param in the uncompressed dump
+   * @param name the name of the dump, given to its pages as {@link WikipediaPage#getInputName()}
+   * @param conf settings made with {@link WikipediaPageRevisionInputFormat}'s setters, e.g. to select pages
+   */
+  public static WikipediaDumpReader open(InputStream in, String name, Configuration conf) throws IOException {
+    DumpInput dumpInput = new StreamDumpInput(new BufferedInputStream(in), 0, Long.MAX_VALUE, null);
+    return openHeaded(new WikipediaRevisionScanner(dumpInput, name, conf, null));
+  }
+
+  /**
+   * Opens a dump on local disk. Compressed dumps are recognized by their extension and decompressed with the
+   * matching Hadoop codec; uncompressed dumps are memory-mapped.
+   *
+   * @param path the dump
+   * @see #openMapped(File)
+   */
+  public static WikipediaDumpReader open(Path path) throws IOException {
+    return open(path, new Configuration(false));
+  }
+
+  /**
+   * Opens a dump on local disk.
+   *
+   * @param path the dump
+   * @param conf settings made with {@link WikipediaPageRevisionInputFormat}'s setters, e.g. to select pages
+   * @see #open(Path)
+   */
+  public static WikipediaDumpReader open(Path path, Configuration conf) throws IOException {
+    CompressionCodec codec = getCodec(path);
+    if (codec == null) {
+      return openMapped(path.toFile(), 0, Long.MAX_VALUE, conf);
+    }
+    InputStream in = new BufferedInputStream(codec.createInputStream(Files.newInputStream(path)));
+    DumpInput dumpInput = new StreamDumpInput(in, 0, Long.MAX_VALUE, null);
+    return openHeaded(new WikipediaRevisionScanner(dumpInput, path.toString(), conf, null));
+  }
+
+  /**
+   * Returns a reader for a scanner at the start of its input, having read the site info.
+   */
+  private static WikipediaDumpReader openHeaded(WikipediaRevisionScanner scanner) throws IOException {
+    scanner.readHeader();
+    return new WikipediaDumpReader(scanner);
+  }
+
+  /**
+   * Returns the revisions of a dump on local disk. The stream should be closed after use.
+   *
+   * Streams over uncompressed dumps split by page ranges when run in parallel. Compressed dumps, even bzip2 ones
+   * that {@link WikipediaPageRevisionInputFormat} splits by block, are read from the start by a single reader here,
+   * so parallel streams over them only parallelize what comes after the reader.
+   *
+   * @param path the dump
+   */
+  public static Stream<WikipediaPageRevision> stream(Path path) throws IOException {
+    return stream(path, new Configuration(false));
+  }
+
+  /**
+   * Returns the revisions of a dump on local disk. The stream should be closed after use.
+   *
+   * @param path the dump
+   * @param conf settings made with {@link WikipediaPageRevisionInputFormat}'s setters, e.g. to select pages
+   * @see #stream(Path)
+   */
+  public static Stream<WikipediaPageRevision> stream(Path path, Configuration conf) throws IOException {
+    return stream(path, conf, WikipediaDumpSpliterator.DEFAULT_MIN_SPLIT_SIZE);
+  }
+
+  static Stream<WikipediaPageRevision> stream(Path path, Configuration conf, long minSplitSize) throws IOException {
+    if (getCodec(path) != null) {
+      return open(path, conf).stream();
+    }
+    Queue<WikipediaDumpReader> opened = new ConcurrentLinkedQueue<>();
+    Spliterator<WikipediaPageRevision> spliterator = new WikipediaDumpSpliterator(path.toFile(), 0,
+        Files.size(path), conf, minSplitSize, opened);
+    return StreamSupport.stream(spliterator, false).onClose(() -> closeAll(opened));
+  }
+
+  /**
+   * Returns the remaining revisions of this reader. Closing the stream closes the reader.
+   */
+  public Stream<WikipediaPageRevision> stream() {
+    Spliterator<WikipediaPageRevision> spliterator = Spliterators.spliteratorUnknownSize(this,
+        Spliterator.ORDERED | Spliterator.NONNULL);
+    return StreamSupport.stream(spliterator, false).onClose(() -> {
+      try {
+        close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  private static CompressionCodec getCodec(Path path) {
+    return new CompressionCodecFactory(new Configuration()).getCodec(new org.apache.hadoop.fs.Path(path.toString()));
+  }
+
+  private static void closeAll(Iterable<WikipediaDumpReader> readers) {
+    IOException failure = null;
+    for (WikipediaDumpReader reader : readers) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw new UncheckedIOException(failure);
+    }
+  }
+
+  /**
+   * Opens an uncompressed dump on local disk. The file is memory-mapped rather than read through a stream, and
+   * elements are parsed straight from the mapped bytes.
+   *
+   * @param file the uncompressed dump
+   */
+  public static WikipediaDumpReader openMapped(File file) throws IOException {
+    return openMapped(file, 0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Opens part of an uncompressed dump on local disk, returning the revisions of the pages that start between
+   * {@code start} and {@code end}.
+   *
+   * @param file the uncompressed dump
+   * @param start offset of the first byte of the part
+   * @param end offset just past the last byte of the part
+   * @see #openMapped(File)
+   */
+  public static WikipediaDumpReader openMapped(File file, long start, long end) throws IOException {
+    return openMapped(file, start, end, new Configuration(false));
+  }
+
+  /**
+   * Opens part of an uncompressed dump on local disk.
+   *
+   * @param file the uncompressed dump
+   * @param start offset of the first byte of the part
+   * @param end offset just past the last byte of the part
+   * @param conf settings made with {@link WikipediaPageRevisionInputFormat}'s setters, e.g. to select pages
+   * @see #openMapped(File, long, long)
+   */
+  public static WikipediaDumpReader openMapped(File file, long start, long end, Configuration conf)
+      throws IOException {
+    WikipediaSiteInfo siteInfo;
+    try (DumpInput header = new MappedDumpInput(file, 0, Long.MAX_VALUE, MappedDumpInput.DEFAULT_WINDOW_SIZE)) {
+      siteInfo = WikipediaRevisionScanner.readSiteInfo(header, file.toString());
+    }
+    DumpInput in = new MappedDumpInput(file, start, end, MappedDumpInput.DEFAULT_WINDOW_SIZE);
+    return new WikipediaDumpReader(new WikipediaRevisionScanner(in, file.toString(), conf, siteInfo));
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      try {
+        if (scanner.next()) {
+          next = scanner.getCurrentValue();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return next != null;
+  }
+
+  @Override
+  public WikipediaPageRevision next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    WikipediaPageRevision revision = next;
+    next = null;
+    return revision;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close() throws IOException {
+    scanner.close();
+  }
+}
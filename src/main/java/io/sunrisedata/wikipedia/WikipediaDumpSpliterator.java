@@ -0,0 +1,87 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * {@code Spliterator} over the revisions of the pages that start within a byte range of an uncompressed local
+ * dump. Splitting halves the byte range, which divides the pages between the two halves the same way
+ * {@link WikipediaPageRevisionInputFormat} divides them between splits.
+ */
+class WikipediaDumpSpliterator implements Spliterator<WikipediaPageRevision> {
+  /**
+   * Ranges aren't split below this size, so each part has many pages to amortize opening the file.
+   */
+  static final long DEFAULT_MIN_SPLIT_SIZE = 16L * 1024 * 1024;
+
+  private final File file;
+  private final Configuration conf;
+  private final long minSplitSize;
+  /**
+   * Readers opened by this spliterator and the ones split from it, closed when the stream is closed.
+   */
+  private final Collection<WikipediaDumpReader> opened;
+  private long start;
+  private long end;
+  private WikipediaDumpReader reader;
+
+  WikipediaDumpSpliterator(File file, long start, long end, Configuration conf, long minSplitSize,
+                           Collection<WikipediaDumpReader> opened) {
+    this.file = file;
+    this.conf = conf;
+    this.start = start;
+    this.end = end;
+    this.minSplitSize = minSplitSize;
+    this.opened = opened;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super WikipediaPageRevision> action) {
+    try {
+      if (reader == null) {
+        reader = WikipediaDumpReader.openMapped(file, start, end, conf);
+        opened.add(reader);
+      }
+      if (!reader.hasNext()) {
+        reader.close();
+        return false;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    action.accept(reader.next());
+    return true;
+  }
+
+  @Override
+  public Spliterator<WikipediaPageRevision> trySplit() {
+    // once reading has started the scanner may already be past any split point
+    if (reader != null || end - start < 2 * minSplitSize) {
+      return null;
+    }
+    long mid = start + (end - start) / 2;
+    WikipediaDumpSpliterator suffix = new WikipediaDumpSpliterator(file, mid, end, conf, minSplitSize,
+        opened);
+    end = mid;
+    return suffix;
+  }
+
+  /**
+   * @return the number of bytes in the range, as a stand-in for the number of revisions
+   */
+  @Override
+  public long estimateSize() {
+    return end - start;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+}
@@ -0,0 +1,287 @@
+package io.sunrisedata.wikipedia;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes page revisions back out as a MediaWiki XML dump, which {@link WikipediaDumpReader} and
+ * {@link WikipediaPageRevisionInputFormat} can read like the original, e.g. to keep a namespace or a set of pages
+ * of a dump to process again and again.
+ *
+ * <pre>
+ * try (WikipediaDumpReader reader = WikipediaDumpReader.open(dump, conf);
+ *      WikipediaDumpWriter writer = new WikipediaDumpWriter(Files.newOutputStream(subset))) {
+ *   while (reader.hasNext()) {
+ *     writer.write(reader.next());
+ *   }
+ * }
+ * </pre>
+ *
+ * The dump starts with the site info header of the dump the first revision was read from, as it was; revisions in a
+ * row from the same page are written in one &lt;page&gt; element. Text that hasn't been decoded yet is copied
+ * without decoding and escaping it again.
+ */
+public class WikipediaDumpWriter implements Closeable {
+  /**
+   * The root start tag of dumps without a header to copy.
+   */
+  static final String ROOT_START_TAG = "<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.10/\" "
+      + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+      + "xsi:schemaLocation=\"http://www.mediawiki.org/xml/export-0.10/ "
+      + "http://www.mediawiki.org/xml/export-0.10.xsd\" version=\"0.10\"";
+
+  private final OutputStream out;
+  private final StringBuilder xml = new StringBuilder();
+  private WikipediaSiteInfo siteInfo;
+  private boolean started;
+  private WikipediaPage page;
+  private long pages;
+  private long revisions;
+
+  /**
+   * Writes a dump whose header is the site info of the first revision written.
+   *
+   * @param out where to write the dump, which is closed with the writer
+   */
+  public WikipediaDumpWriter(OutputStream out) {
+    this(out, null);
+  }
+
+  /**
+   * @param out where to write the dump, which is closed with the writer
+   * @param siteInfo the site info to write in the header, or {@code null} for that of the first revision written
+   */
+  public WikipediaDumpWriter(OutputStream out, WikipediaSiteInfo siteInfo) {
+    this.out = out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out, 64 * 1024);
+    this.siteInfo = siteInfo;
+  }
+
+  /**
+   * Writes a revision, in the page of the previous revision if it is of the same page.
+   */
+  public void write(WikipediaPageRevision revision) throws IOException {
+    WikipediaPage revisionPage = revision.getContainingPage();
+    if (!started) {
+      writeHeader(siteInfo != null ? siteInfo : revisionPage.getSiteInfo());
+    }
+    if (!isSamePage(revisionPage)) {
+      if (page != null) {
+        append("  </page>\n");
+      }
+      writePage(revisionPage);
+      page = revisionPage;
+      pages++;
+    }
+    writeRevision(revision);
+    revisions++;
+  }
+
+  private boolean isSamePage(WikipediaPage other) {
+    if (page == null) {
+      return false;
+    }
+    if (page == other) {
+      return true;
+    }
+    return page.getPageId() != null ? page.getPageId().equals(other.getPageId())
+        : other.getPageId() == null && page.getTitle() != null && page.getTitle().equals(other.getTitle());
+  }
+
+  private void writeHeader(WikipediaSiteInfo siteInfo) throws IOException {
+    started = true;
+    if (siteInfo != null && siteInfo.getHeaderXml() != null) {
+      append(siteInfo.getHeaderXml()).append('\n');
+      return;
+    }
+    append(ROOT_START_TAG);
+    if (siteInfo != null && siteInfo.getLanguage() != null) {
+      append(" xml:lang=\"");
+      escape(siteInfo.getLanguage(), true);
+      append('"');
+    }
+    append(">\n");
+    if (siteInfo == null) {
+      return;
+    }
+    append("  <siteinfo>\n");
+    writeElement("    ", WikipediaSiteInfo.XML_TAG_SITENAME, siteInfo.getSiteName());
+    writeElement("    ", WikipediaSiteInfo.XML_TAG_DBNAME, siteInfo.getDbName());
+    writeElement("    ", WikipediaSiteInfo.XML_TAG_BASE, siteInfo.getBase());
+    writeElement("    ", WikipediaSiteInfo.XML_TAG_GENERATOR, siteInfo.getGenerator());
+    writeElement("    ", WikipediaSiteInfo.XML_TAG_CASE, siteInfo.getCase());
+    append("    <namespaces>\n");
+    for (Map.Entry<Integer, String> namespace : siteInfo.getNamespaces().entrySet()) {
+      append("      <namespace key=\"").append(namespace.getKey());
+      if (namespace.getValue().isEmpty()) {
+        append("\" />\n");
+      } else {
+        append("\">");
+        escape(namespace.getValue(), false);
+        append("</namespace>\n");
+      }
+    }
+    append("    </namespaces>\n");
+    append("  </siteinfo>\n");
+  }
+
+  private void writePage(WikipediaPage page) throws IOException {
+    append("  <page>\n");
+    writeElement("    ", WikipediaPage.XML_TAG_TITLE, page.getTitle());
+    writeElement("    ", WikipediaPage.XML_TAG_NAMESPACE, page.getNamespace());
+    writeElement("    ", WikipediaPage.XML_TAG_ID, page.getPageId());
+    if (page.getRedirectsTo() != null) {
+      append("    <redirect title=\"");
+      escape(page.getRedirectsTo(), true);
+      append("\" />\n");
+    }
+    writeElement("    ", WikipediaPage.XML_TAG_RESTRICTIONS, page.getRestrictions());
+  }
+
+  private void writeRevision(WikipediaPageRevision revision) throws IOException {
+    append("    <revision>\n");
+    writeElement("      ", WikipediaPageRevision.XML_TAG_ID, revision.getRevisionId());
+    writeElement("      ", WikipediaPageRevision.XML_TAG_PARENTID, revision.getParentRevisionId());
+    writeElement("      ", WikipediaPageRevision.XML_TAG_TIMESTAMP, revision.getTimestamp());
+    if (revision.getContributorUsername() == null && revision.getContributorId() == null
+        && revision.getContributorIp() == null) {
+      append("      <contributor deleted=\"deleted\" />\n");
+    } else {
+      append("      <contributor>\n");
+      writeElement("        ", WikipediaPageRevision.XML_TAG_CONTRIBUTOR_USERNAME,
+          revision.getContributorUsername());
+      writeElement("        ", WikipediaPageRevision.XML_TAG_CONTRIBUTOR_ID, revision.getContributorId());
+      writeElement("        ", WikipediaPageRevision.XML_TAG_CONTRIBUTOR_IP, revision.getContributorIp());
+      append("      </contributor>\n");
+    }
+    if (revision.isMinor()) {
+      append("      <minor />\n");
+    }
+    writeElement("      ", WikipediaPageRevision.XML_TAG_COMMENT, revision.getComment());
+    writeElement("      ", WikipediaPageRevision.XML_TAG_MODEL, revision.getModel());
+    writeElement("      ", WikipediaPageRevision.XML_TAG_FORMAT, revision.getFormat());
+
+    append("      <text xml:space=\"preserve\"");
+    if (revision.getDeclaredContentLength() >= 0) {
+      append(" bytes=\"").append(revision.getDeclaredContentLength()).append('"');
+    }
+    ByteBuffer escaped = revision.getEscapedContent();
+    if (escaped != null && escaped.hasRemaining()) {
+      append('>');
+      flushXml();
+      writeBytes(escaped);
+      append("</text>\n");
+    } else {
+      String text = escaped == null ? revision.getRawContent() : "";
+      if (text == null || text.isEmpty()) {
+        append(" />\n");
+      } else {
+        append('>');
+        escape(text, false);
+        append("</text>\n");
+      }
+    }
+    writeElement("      ", WikipediaPageRevision.XML_TAG_SHA1, revision.getSha1());
+    append("    </revision>\n");
+    if (xml.length() >= 64 * 1024) {
+      flushXml();
+    }
+  }
+
+  private void writeElement(String indent, String tag, String value) {
+    if (value == null) {
+      return;
+    }
+    append(indent).append('<').append(tag).append('>');
+    escape(value, false);
+    append("</").append(tag).append(">\n");
+  }
+
+  private StringBuilder append(String s) {
+    return xml.append(s);
+  }
+
+  private StringBuilder append(char c) {
+    return xml.append(c);
+  }
+
+  /**
+   * Appends text escaped for xml content, or for an attribute value in double quotes.
+   */
+  private void escape(String s, boolean attribute) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '&':
+          xml.append("&amp;");
+          break;
+        case '<':
+          xml.append("&lt;");
+          break;
+        case '>':
+          xml.append("&gt;");
+          break;
+        case '"':
+          xml.append(attribute ? "&quot;" : "\"");
+          break;
+        default:
+          xml.append(c);
+      }
+    }
+  }
+
+  private void flushXml() throws IOException {
+    if (xml.length() > 0) {
+      out.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+      xml.setLength(0);
+    }
+  }
+
+  private void writeBytes(ByteBuffer bytes) throws IOException {
+    if (bytes.hasArray()) {
+      out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+    } else {
+      byte[] copy = new byte[bytes.remaining()];
+      bytes.get(copy);
+      out.write(copy);
+    }
+  }
+
+  /**
+   * @return the number of pages written
+   */
+  public long getPageCount() {
+    return pages;
+  }
+
+  /**
+   * @return the number of revisions written
+   */
+  public long getRevisionCount() {
+    return revisions;
+  }
+
+  /**
+   * Ends the dump and closes the output.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (!started) {
+        writeHeader(siteInfo);
+      }
+      if (page != null) {
+        append("  </page>\n");
+        page = null;
+      }
+      append("</mediawiki>\n");
+      flushXml();
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,261 @@
+package io.sunrisedata.wikipedia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The language-dependent words that the reader looks for in revisions: the magic words that make a page a
+ * redirect, the marks of a stub, and the names of the category and file namespaces.
+ *
+ * They come from a table bundled with the library ({@code magic-words.properties}, which covers the larger
+ * language editions) and from the namespace names in a dump's site info. The English words apply to every
+ * language, as they do in MediaWiki. Words are matched ignoring case.
+ *
+ * @see WikipediaPage#getMagicWords()
+ */
+public class WikipediaMagicWords implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final String TABLE = "magic-words.properties";
+  private static final String DEFAULT_LANGUAGE = "en";
+  private static final int NAMESPACE_FILE = 6;
+  private static final int NAMESPACE_CATEGORY = 14;
+  private static final Properties BUNDLED = loadTable();
+  private static final Map<String, WikipediaMagicWords> BY_LANGUAGE =
+      new ConcurrentHashMap<String, WikipediaMagicWords>();
+
+  private final String language;
+  private final Set<String> redirectWords;
+  private final Set<String> stubMarks;
+  private final Set<String> categoryNames;
+  private final Set<String> fileNames;
+
+  // compiled on first use
+  private transient BytesMatcher redirectMatcher;
+  private transient BytesMatcher stubMatcher;
+  private transient Pattern linkPattern;
+
+  private WikipediaMagicWords(String language, WikipediaSiteInfo siteInfo) {
+    this.language = language;
+    this.redirectWords = words("redirect", language);
+    this.stubMarks = words("stub", language);
+    this.categoryNames = words("category", language);
+    this.fileNames = words("file", language);
+    if (siteInfo != null) {
+      addName(categoryNames, siteInfo.getNamespaceName(NAMESPACE_CATEGORY));
+      addName(fileNames, siteInfo.getNamespaceName(NAMESPACE_FILE));
+    }
+  }
+
+  /**
+   * Returns the magic words of a language from the bundled table.
+   *
+   * @param language a language code, e.g. "de", or {@code null} for English
+   */
+  public static WikipediaMagicWords forLanguage(String language) {
+    String key = normalize(language);
+    WikipediaMagicWords magicWords = BY_LANGUAGE.get(key);
+    if (magicWords == null) {
+      magicWords = new WikipediaMagicWords(key, null);
+      BY_LANGUAGE.put(key, magicWords);
+    }
+    return magicWords;
+  }
+
+  /**
+   * Returns the magic words of a wiki, from the bundled table for its language and its namespace names.
+   *
+   * @param siteInfo the site info of the wiki's dump
+   * @param language a language code that overrides the one in the site info, or {@code null}
+   */
+  public static WikipediaMagicWords forSiteInfo(WikipediaSiteInfo siteInfo, String language) {
+    return new WikipediaMagicWords(normalize(language != null ? language : siteInfo.getLanguage()), siteInfo);
+  }
+
+  private static String normalize(String language) {
+    return language == null || language.trim().isEmpty()
+        ? DEFAULT_LANGUAGE : language.trim().toLowerCase(Locale.ROOT);
+  }
+
+  private static Properties loadTable() {
+    Properties table = new Properties();
+    try (InputStream in = WikipediaMagicWords.class.getResourceAsStream(TABLE)) {
+      if (in != null) {
+        table.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return table;
+  }
+
+  private static Set<String> words(String kind, String language) {
+    Set<String> words = new LinkedHashSet<String>();
+    addNames(words, BUNDLED.getProperty(language + "." + kind));
+    addNames(words, BUNDLED.getProperty(DEFAULT_LANGUAGE + "." + kind));
+    return words;
+  }
+
+  private static void addNames(Set<String> words, String list) {
+    if (list != null) {
+      for (String word : list.split(",")) {
+        addName(words, word);
+      }
+    }
+  }
+
+  private static void addName(Set<String> words, String word) {
+    if (word != null && !word.trim().isEmpty()) {
+      words.add(word.trim());
+    }
+  }
+
+  /**
+   * @return the language code the words are for
+   */
+  public String getLanguage() {
+    return language;
+  }
+
+  /**
+   * @return the magic words that make a page a redirect when the text starts with them, e.g. "#WEITERLEITUNG"
+   */
+  public Set<String> getRedirectWords() {
+    return Collections.unmodifiableSet(redirectWords);
+  }
+
+  /**
+   * @return the text whose presence marks a stub
+   */
+  public Set<String> getStubMarks() {
+    return Collections.unmodifiableSet(stubMarks);
+  }
+
+  /**
+   * @return the names and aliases of the category namespace, e.g. "Kategorie" and "Category"
+   */
+  public Set<String> getCategoryNames() {
+    return Collections.unmodifiableSet(categoryNames);
+  }
+
+  /**
+   * @return the names and aliases of the file namespace, e.g. "Datei", "Bild", "File" and "Image"
+   */
+  public Set<String> getFileNames() {
+    return Collections.unmodifiableSet(fileNames);
+  }
+
+  /**
+   * @return whether wikitext starts with a redirect magic word, after any whitespace
+   */
+  public boolean isRedirect(String text) {
+    ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    return isRedirect(bytes, 0, bytes.limit());
+  }
+
+  boolean isRedirect(ByteBuffer text, int from, int to) {
+    if (redirectMatcher == null) {
+      redirectMatcher = new BytesMatcher(caseVariants(redirectWords));
+    }
+    return redirectMatcher.matchesPrefix(text, from, to);
+  }
+
+  /**
+   * @return whether wikitext contains a stub mark
+   */
+  public boolean isStub(String text) {
+    ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    return isStub(bytes, 0, bytes.limit());
+  }
+
+  boolean isStub(ByteBuffer text, int from, int to) {
+    if (stubMatcher == null) {
+      stubMatcher = new BytesMatcher(caseVariants(stubMarks));
+    }
+    return stubMatcher.find(text, from, to);
+  }
+
+  /**
+   * The matchers ignore the case of ASCII letters only, so other letters are matched in the usual cases.
+   */
+  private static Set<String> caseVariants(Set<String> words) {
+    Set<String> variants = new LinkedHashSet<String>();
+    for (String word : words) {
+      variants.add(word);
+      variants.add(word.toLowerCase(Locale.ROOT));
+      variants.add(word.toUpperCase(Locale.ROOT));
+      variants.add(capitalizeFirstLetter(word.toLowerCase(Locale.ROOT)));
+    }
+    return variants;
+  }
+
+  private static String capitalizeFirstLetter(String word) {
+    for (int i = 0; i < word.length(); i++) {
+      if (Character.isLetter(word.charAt(i))) {
+        return word.substring(0, i) + Character.toUpperCase(word.charAt(i)) + word.substring(i + 1);
+      }
+    }
+    return word;
+  }
+
+  /**
+   * @return the categories that wikitext puts its page in, without the namespace prefix
+   */
+  public List<String> getCategories(String text) {
+    return getLinks(text, 1);
+  }
+
+  /**
+   * @return the files that wikitext links to or embeds, without the namespace prefix
+   */
+  public List<String> getFiles(String text) {
+    return getLinks(text, 2);
+  }
+
+  private List<String> getLinks(String text, int group) {
+    if (linkPattern == null) {
+      linkPattern = Pattern.compile("\\[\\[\\s*(?:(" + alternatives(categoryNames) + ")|("
+              + alternatives(fileNames) + "))\\s*:\\s*([^\\]|\\n]+)",
+          Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+    List<String> links = new ArrayList<String>();
+    if (text == null) {
+      return links;
+    }
+    Matcher m = linkPattern.matcher(text);
+    while (m.find()) {
+      if (m.group(group) != null) {
+        links.add(m.group(3).trim());
+      }
+    }
+    return links;
+  }
+
+  private static String alternatives(Set<String> names) {
+    StringBuilder s = new StringBuilder();
+    for (String name : names) {
+      if (s.length() > 0) {
+        s.append('|');
+      }
+      // titles treat spaces and underscores alike
+      s.append(Pattern.quote(name).replace(" ", "\\E[ _]\\Q"));
+    }
+    return s.toString();
+  }
+}
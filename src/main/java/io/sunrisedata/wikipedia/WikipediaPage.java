@@ -1,21 +1,22 @@
 package io.sunrisedata.wikipedia;
 
-import com.amazonaws.util.StringInputStream;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.apache.commons.io.IOUtils;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Created by evamonsen on 9/10/15.
  */
-public class WikipediaPage {
+public class WikipediaPage implements Serializable {
+  private static final long serialVersionUID = 1L;
 
   protected static final String XML_TAG_TITLE = "title";
   protected static final String XML_TAG_ID = "id";
@@ -29,41 +30,74 @@ public class WikipediaPage {
   private String namespace;
   private String title;
   private String pageId;
+  private WikipediaSiteInfo siteInfo;
+  private WikipediaMagicWords magicWords;
+  private String inputName;
+  private int namespaceId = Integer.MIN_VALUE;
 
 
   public void readFromXml(String xml) throws ParserConfigurationException, IOException, SAXException {
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    DocumentBuilder db = dbf.newDocumentBuilder();
-    Document doc = db.parse(new StringInputStream(xml));
-
-    NodeList n = doc.getChildNodes().item(0).getChildNodes();
-    for(int i = 0; i < n.getLength(); i++) {
-      Node node = n.item(i);
-      if (node.getNodeType() == Node.ELEMENT_NODE) {
-        Element e = (Element) node;
-        switch (e.getTagName()) {
-          case XML_TAG_TITLE:
-            this.title = e.getTextContent();
-            break;
-          case XML_TAG_ID:
-            this.pageId = e.getTextContent();
-            break;
-          case XML_TAG_NAMESPACE:
-            this.namespace = e.getTextContent();
-            break;
-          case XML_TAG_RESTRICTIONS:
-            this.restrictions = e.getTextContent();
-            break;
-          case XML_TAG_REDIRECT:
-            this.redirectsTo = e.getAttribute(XML_ATTRIBUTE_REDIRECT_TITLE);
-            break;
-          default:
-            break;
-        }
+    readFromXml(ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Reads the page from its UTF-8 encoded xml.
+   */
+  public void readFromXml(InputStream xml) throws ParserConfigurationException, IOException, SAXException {
+    readFromXml(ByteBuffer.wrap(IOUtils.toByteArray(xml)));
+  }
+
+  /**
+   * Reads the page from its UTF-8 encoded xml, which is the remaining bytes of {@code xml}. The &lt;/page&gt;
+   * end tag may be left out, so the page header (everything before its first revision) can be read by itself.
+   */
+  public void readFromXml(ByteBuffer xml) throws SAXException {
+    XmlElementReader r = new XmlElementReader(xml);
+    while (r.next()) {
+      switch (r.getName()) {
+        case XML_TAG_TITLE:
+          this.title = r.getText();
+          break;
+        case XML_TAG_ID:
+          this.pageId = r.getText();
+          break;
+        case XML_TAG_NAMESPACE:
+          this.namespace = r.getText();
+          break;
+        case XML_TAG_RESTRICTIONS:
+          this.restrictions = r.getText();
+          break;
+        case XML_TAG_REDIRECT:
+          this.redirectsTo = r.getAttribute(XML_ATTRIBUTE_REDIRECT_TITLE);
+          break;
+        default:
+          break;
       }
     }
   }
 
+  /**
+   * Writes the fields read from the xml in the binary form of {@link RevisionCache}.
+   */
+  void writeCompact(DataOutput out) throws IOException {
+    RevisionCache.writeString(out, pageId);
+    RevisionCache.writeString(out, title);
+    RevisionCache.writeString(out, namespace);
+    RevisionCache.writeString(out, redirectsTo);
+    RevisionCache.writeString(out, restrictions);
+  }
+
+  /**
+   * Reads the fields written by {@link #writeCompact(DataOutput)}.
+   */
+  void readCompact(DataInput in) throws IOException {
+    pageId = RevisionCache.readString(in);
+    title = RevisionCache.readString(in);
+    namespace = RevisionCache.readString(in);
+    redirectsTo = RevisionCache.readString(in);
+    restrictions = RevisionCache.readString(in);
+  }
+
   public String getPageId() {
     return pageId;
   }
@@ -76,6 +110,83 @@ public class WikipediaPage {
     return namespace;
   }
 
+  /**
+   * @return the namespace key as a number, e.g. 0 for articles, or {@link Integer#MIN_VALUE} if it isn't one
+   */
+  public int getNamespaceId() {
+    if (namespaceId == Integer.MIN_VALUE && namespace != null) {
+      try {
+        namespaceId = Integer.parseInt(namespace.trim());
+      } catch (NumberFormatException e) {
+        // leave unset
+      }
+    }
+    return namespaceId;
+  }
+
+  /**
+   * @return the name of the namespace of the page (empty for articles), or {@code null} if there is no site info
+   *         or it doesn't list the namespace
+   */
+  public String getNamespaceName() {
+    return siteInfo == null ? null : siteInfo.getNamespaceName(getNamespaceId());
+  }
+
+  /**
+   * Returns the title without the namespace prefix, e.g. "Stub" for "Template:Stub".
+   *
+   * @return the title without the namespace prefix, or the full title if the namespace isn't known
+   */
+  public String getTitleWithoutNamespace() {
+    String name = getNamespaceName();
+    if (title == null || name == null || name.isEmpty()) {
+      return title;
+    }
+    if (title.length() > name.length() && title.charAt(name.length()) == ':'
+        && title.regionMatches(true, 0, name, 0, name.length())) {
+      return title.substring(name.length() + 1);
+    }
+    return title;
+  }
+
+  /**
+   * @return the site info of the dump the page was read from, or {@code null} if it wasn't available
+   */
+  public WikipediaSiteInfo getSiteInfo() {
+    return siteInfo;
+  }
+
+  /**
+   * @return the magic words of the wiki's language, which the revisions of the page are checked against; English
+   *         unless the reader knew the language
+   */
+  public WikipediaMagicWords getMagicWords() {
+    return magicWords != null ? magicWords : WikipediaMagicWords.forLanguage(null);
+  }
+
+  void setMagicWords(WikipediaMagicWords magicWords) {
+    this.magicWords = magicWords;
+  }
+
+  /**
+   * @return the name of the input the page was read from, usually the path of the dump file, or {@code null} if it
+   *         wasn't read from a dump
+   */
+  public String getInputName() {
+    return inputName;
+  }
+
+  void setInputName(String inputName) {
+    this.inputName = inputName;
+  }
+
+  void setSiteInfo(WikipediaSiteInfo siteInfo) {
+    this.siteInfo = siteInfo;
+    if (siteInfo != null && namespace != null) {
+      this.namespace = siteInfo.internNamespaceKey(namespace);
+    }
+  }
+
   public String getRestrictions() {
 
     return restrictions;
@@ -18,20 +18,26 @@
 
 package io.sunrisedata.wikipedia;
 
-import com.amazonaws.util.StringInputStream;
-import info.bliki.wiki.filter.PlainTextConverter;
-import info.bliki.wiki.model.WikiModel;
-import org.apache.commons.lang.StringEscapeUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.Element;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.io.WritableUtils;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -40,11 +46,9 @@ import java.util.regex.Pattern;
  * @author Jimmy Lin
  * @author Peter Exner
  */
-public class WikipediaPageRevision {
+public class WikipediaPageRevision implements Serializable {
+  private static final long serialVersionUID = 1L;
 
-  private static final String IDENTIFIER_REDIRECTION_UPPERCASE = "#REDIRECT";
-  private static final String IDENTIFIER_REDIRECTION_LOWERCASE = "#redirect";
-  private static final String IDENTIFIER_STUB_TEMPLATE = "stub}}";
   protected static final String XML_TAG_ID = "id";
   protected static final String XML_TAG_PARENTID = "parentid";
   protected static final String XML_TAG_TIMESTAMP = "timestamp";
@@ -62,6 +66,19 @@ public class WikipediaPageRevision {
   private static final String XML_ATTRIBUTE_TEXT_ID = "id";
   private static final String XML_ATTRIBUTE_DELETED = "deleted";
   private static final String XML_ATTRIBUTE_VALUE_DELETED = "deleted";
+
+  /**
+   * The content model of wiki markup, which is also what revisions without a model have.
+   */
+  public static final String MODEL_WIKITEXT = "wikitext";
+  public static final String MODEL_JSON = "json";
+  public static final String MODEL_CSS = "css";
+  public static final String MODEL_JAVASCRIPT = "javascript";
+  public static final String MODEL_SCRIBUNTO = "Scribunto";
+  public static final String MODEL_WIKIBASE_ITEM = "wikibase-item";
+  public static final String MODEL_WIKIBASE_PROPERTY = "wikibase-property";
+  public static final String FORMAT_JSON = "application/json";
+  private static final String MODEL_WIKIBASE_PREFIX = "wikibase-";
   private String parentRevisionId;
 
   public WikipediaPage getContainingPage() {
@@ -82,9 +99,11 @@ public class WikipediaPageRevision {
   protected boolean isRedirect; // Redirect marker appears in the article text
   protected boolean isStub; // Stub indicator appears in the article text
   protected String contentWikiMarkup;
+  /**
+   * The still escaped bytes of the text, until it is decoded by {@link #getRawContent()}.
+   */
+  private transient ByteBuffer content;
 
-  private WikiModel wikiModel;
-  private PlainTextConverter textConverter;
   protected String contributorUsername;
   protected String contributorId;
   protected String contributorIp;
@@ -99,13 +118,12 @@ public class WikipediaPageRevision {
   private String sha1;
   private String model;
   private String format;
+  private WikipediaSignature signature;
 
   /**
    * Creates an empty <code>WikipediaPage</code> object.
    */
   public WikipediaPageRevision(WikipediaPage containingPage) {
-    wikiModel = new WikiModel("", "");
-    textConverter = new PlainTextConverter();
     this.containingPage = containingPage;
   }
 
@@ -116,21 +134,6 @@ public class WikipediaPageRevision {
     return revisionId;
   }
 
-  // Explictly remove <ref>...</ref>, because there are screwy things like this:
-  // <ref>[http://www.interieur.org/<!-- Bot generated title -->]</ref>
-  // where "http://www.interieur.org/<!--" gets interpreted as the URL by
-  // Bliki in conversion to text
-  private static final Pattern REF = Pattern.compile("<ref>.*?</ref>");
-
-  private static final Pattern LANG_LINKS = Pattern.compile("\\[\\[[a-z\\-]+:[^\\]]+\\]\\]");
-  private static final Pattern DOUBLE_CURLY = Pattern.compile("\\{\\{.*?\\}\\}");
-
-  private static final Pattern URL = Pattern.compile("http://[^ <]+"); // Note, don't capture
-  // possible HTML tag
-
-  private static final Pattern HTML_TAG = Pattern.compile("<[^!][^>]*>"); // Note, don't capture
-  // comments
-  private static final Pattern HTML_COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
   protected static final Pattern PATTERN_CONTRIBUTOR_ID = Pattern.compile("TODO");
 
   public String getDocid() {
@@ -138,51 +141,71 @@ public class WikipediaPageRevision {
   }
 
   /**
-   * Returns the contents of this revision (page title + text).
+   * Returns the contents of this revision (page title + text), rendered to plain text by the
+   * {@linkplain WikipediaRenderer#getDefault() renderer of the thread}.
    */
   public String getRenderedContent() {
-    String s = getRawContent();
-
-    // Bliki doesn't seem to properly handle inter-language links, so remove manually.
-    s = LANG_LINKS.matcher(s).replaceAll(" ");
-
-    wikiModel.setUp();
-    s = containingPage.getTitle() + "\n" + wikiModel.render(textConverter, s);
-    wikiModel.tearDown();
-
-    // The way the some entities are encoded, we have to unescape twice.
-    s = StringEscapeUtils.unescapeHtml(StringEscapeUtils.unescapeHtml(s));
-
-    s = REF.matcher(s).replaceAll(" ");
-    s = HTML_COMMENT.matcher(s).replaceAll(" ");
-
-    // Sometimes, URL bumps up against comments e.g., <!-- http://foo.com/-->
-    // Therefore, we want to remove the comment first; otherwise the URL pattern might eat up
-    // the comment terminator.
-    s = URL.matcher(s).replaceAll(" ");
-    s = DOUBLE_CURLY.matcher(s).replaceAll(" ");
-    s = HTML_TAG.matcher(s).replaceAll(" ");
+    return getRenderedContent(WikipediaRenderer.getDefault());
+  }
 
-    return s;
+  /**
+   * Returns the contents of this revision (page title + text), rendered to plain text.
+   */
+  public String getRenderedContent(WikipediaRenderer renderer) {
+    return renderer.renderText(this);
   }
 
+  /**
+   * Returns the contents of this revision (page title + text), rendered to HTML by the
+   * {@linkplain WikipediaRenderer#getDefault() renderer of the thread}.
+   */
   public String getDisplayContent() {
-    wikiModel.setUp();
-    String s = "<h1>" + containingPage.getTitle() + "</h1>\n" + wikiModel.render(getRawContent());
-    wikiModel.tearDown();
-
-    s = DOUBLE_CURLY.matcher(s).replaceAll(" ");
+    return getDisplayContent(WikipediaRenderer.getDefault());
+  }
 
-    return s;
+  /**
+   * Returns the contents of this revision (page title + text), rendered to HTML.
+   */
+  public String getDisplayContent(WikipediaRenderer renderer) {
+    return renderer.renderHtml(this);
   }
 
   /**
    * Returns the text of this revision.
    */
   public String getRawContent() {
+    if (content != null) {
+      contentWikiMarkup = XmlBytes.decode(content, content.position(), content.limit());
+      content = null;
+    }
     return contentWikiMarkup;
   }
 
+  /**
+   * @return the text as it was in the xml, still escaped, or {@code null} if it has been decoded or dropped
+   */
+  ByteBuffer getEscapedContent() {
+    return content != null ? content.duplicate() : null;
+  }
+
+  /**
+   * Replaces the fields that repeat a lot between revisions with shared instances.
+   */
+  void internStrings(BoundedStringInterner interner) {
+    contributorUsername = interner.intern(contributorUsername);
+    contributorIp = interner.intern(contributorIp);
+    model = interner.intern(model);
+    format = interner.intern(format);
+  }
+
+  /**
+   * Drops the text once the flags derived from it have been set.
+   */
+  void discardContent() {
+    content = null;
+    contentWikiMarkup = null;
+  }
+
   /**
    * Checks to see if the most recent revision is a redirect page. A <code>WikipediaPage</code> is either an
    * article, a disambiguation page, a redirect page, or an empty page.
@@ -200,7 +223,10 @@ public class WikipediaPageRevision {
    * @return <code>true</code> if this page is an empty page
    */
   public boolean isEmpty() {
-    return contentWikiMarkup == null || contentWikiMarkup == "";
+    if (content != null) {
+      return !content.hasRemaining();
+    }
+    return contentWikiMarkup == null || contentWikiMarkup.isEmpty();
   }
 
   /**
@@ -213,6 +239,36 @@ public class WikipediaPageRevision {
     return isStub;
   }
 
+  /**
+   * Returns the categories the revision puts its page in, recognized by the category namespace names of the
+   * wiki's language.
+   *
+   * @return category names without the namespace prefix
+   */
+  public List<String> getCategories() {
+    if (!isWikitext()) {
+      return Collections.emptyList();
+    }
+    return getMagicWords().getCategories(getRawContent());
+  }
+
+  /**
+   * Returns the files the revision links to or embeds, recognized by the file namespace names of the wiki's
+   * language.
+   *
+   * @return file names without the namespace prefix
+   */
+  public List<String> getFiles() {
+    if (!isWikitext()) {
+      return Collections.emptyList();
+    }
+    return getMagicWords().getFiles(getRawContent());
+  }
+
+  private WikipediaMagicWords getMagicWords() {
+    return containingPage != null ? containingPage.getMagicWords() : WikipediaMagicWords.forLanguage(null);
+  }
+
 //  /**
 //   * Returns the inter-language link to a specific language (if any).
 //   *
@@ -265,6 +321,71 @@ public class WikipediaPageRevision {
     return timestamp;
   }
 
+  /**
+   * Returns the timestamp in milliseconds since the epoch. Dump timestamps (e.g. "2001-01-21T02:12:21Z") are
+   * parsed by hand; other ISO-8601 instants go through {@link Instant#parse}.
+   *
+   * @return the timestamp in milliseconds since the epoch, or {@link Long#MIN_VALUE} if there is none or it
+   *         doesn't parse
+   */
+  public long getTimestampMillis() {
+    return parseTimestamp(timestamp);
+  }
+
+  static long parseTimestamp(String timestamp) {
+    if (timestamp == null) {
+      return Long.MIN_VALUE;
+    }
+    String t = timestamp.trim();
+    if (t.length() == 20 && t.charAt(4) == '-' && t.charAt(7) == '-' && t.charAt(10) == 'T'
+        && t.charAt(13) == ':' && t.charAt(16) == ':' && t.charAt(19) == 'Z') {
+      int year = digits(t, 0, 4);
+      int month = digits(t, 5, 2);
+      int day = digits(t, 8, 2);
+      int hour = digits(t, 11, 2);
+      int minute = digits(t, 14, 2);
+      int second = digits(t, 17, 2);
+      if (year >= 1 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)
+          && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60) {
+        // days from the civil date, after Howard Hinnant's days_from_civil
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+      }
+    }
+    try {
+      return Instant.parse(t).toEpochMilli();
+    } catch (DateTimeParseException e) {
+      return Long.MIN_VALUE;
+    }
+  }
+
+  private static int lengthOfMonth(int year, int month) {
+    if (month == 2) {
+      return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+  /**
+   * @return the number written with {@code length} digits from {@code start}, or -1 if they aren't all digits
+   */
+  private static int digits(String s, int start, int length) {
+    int n = 0;
+    for (int i = start; i < start + length; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      n = n * 10 + (c - '0');
+    }
+    return n;
+  }
+
   public boolean isMetadata() {
     return isMetadata;
   }
@@ -289,6 +410,90 @@ public class WikipediaPageRevision {
     return format;
   }
 
+  /**
+   * @return whether the text is wiki markup, as opposed to e.g. JSON, CSS, JavaScript or Lua. Redirects, stubs,
+   *         categories and files are only recognized in wiki markup, and only wiki markup is rendered.
+   */
+  public boolean isWikitext() {
+    return model == null || MODEL_WIKITEXT.equals(model);
+  }
+
+  /**
+   * @return whether the text is JSON, such as a Wikibase entity
+   */
+  public boolean isJson() {
+    return MODEL_JSON.equals(model) || FORMAT_JSON.equals(format)
+        || (model != null && model.startsWith(MODEL_WIKIBASE_PREFIX));
+  }
+
+  /**
+   * Returns the labels of a Wikibase entity, such as a Wikidata item, read from the JSON text without parsing the
+   * rest of it. The text isn't decoded if it hasn't been yet.
+   *
+   * @param languages the languages to return labels in; all of them if none are given
+   * @return the labels by language, or an empty map if the text isn't JSON or has no labels
+   */
+  public Map<String, String> getLabels(String... languages) {
+    JsonReader json = getJsonReader();
+    if (json == null) {
+      return Collections.emptyMap();
+    }
+    try {
+      return WikibaseContent.getLabels(json, languages.length == 0 ? null
+          : new HashSet<String>(Arrays.asList(languages)));
+    } catch (IllegalArgumentException e) {
+      return Collections.emptyMap();
+    }
+  }
+
+  /**
+   * Returns the claims of a Wikibase entity by property, read from the JSON text without parsing the rest of it.
+   * Each value is that of the claim's main snak as a string, e.g. "Q5" for an item.
+   *
+   * @param properties the properties to return the claims of, e.g. "P31"; all of them if none are given
+   * @return the values of the claims by property, or an empty map if the text isn't JSON or has no claims
+   */
+  public Map<String, List<String>> getClaims(String... properties) {
+    JsonReader json = getJsonReader();
+    if (json == null) {
+      return Collections.emptyMap();
+    }
+    try {
+      return WikibaseContent.getClaims(json, properties.length == 0 ? null
+          : new HashSet<String>(Arrays.asList(properties)));
+    } catch (IllegalArgumentException e) {
+      return Collections.emptyMap();
+    }
+  }
+
+  /**
+   * @return a reader over the text, escaped or not, or {@code null} if it isn't JSON or there is none
+   */
+  private JsonReader getJsonReader() {
+    if (!isJson()) {
+      return null;
+    }
+    if (content != null) {
+      return new JsonReader(content.duplicate(), true);
+    }
+    if (contentWikiMarkup != null) {
+      return new JsonReader(ByteBuffer.wrap(contentWikiMarkup.getBytes(StandardCharsets.UTF_8)), false);
+    }
+    return null;
+  }
+
+  /**
+   * @return the near-duplicate signature of the text, if the reader computed it (see
+   *         {@link WikipediaPageRevisionInputFormat#setSignatures}), otherwise {@code null}
+   */
+  public WikipediaSignature getSignature() {
+    return signature;
+  }
+
+  void setSignature(WikipediaSignature signature) {
+    this.signature = signature;
+  }
+
   public long getDeclaredContentLength() {
     return declaredContentLength;
   }
@@ -394,93 +599,218 @@ public class WikipediaPageRevision {
 //  }
 
   public void readFromXml(String xml) throws ParserConfigurationException, IOException, SAXException {
-    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-    DocumentBuilder db = dbf.newDocumentBuilder();
-    Document doc = db.parse(new StringInputStream(xml));
-
-    // and now the fun part
-
-
-    NodeList n = doc.getChildNodes().item(0).getChildNodes();
-    for(int i = 0; i < n.getLength(); i++) {
-      Node node = n.item(i);
-      if(node.getNodeType() == Node.ELEMENT_NODE) {
-        Element e = (Element)node;
-        switch(e.getTagName()) {
-          case XML_TAG_CONTRIBUTOR:
-            NodeList contribNodes = e.getChildNodes();
-            for(int j = 0; j < contribNodes.getLength();j++) {
-              Node contribNode = contribNodes.item(j);
-              if(contribNode.getNodeType() == Node.ELEMENT_NODE) {
-                Element contribEl = (Element)contribNode;
-                switch(contribEl.getTagName()) {
-                  case XML_TAG_CONTRIBUTOR_ID:
-                    this.contributorId = contribEl.getTextContent();
-                    break;
-                  case XML_TAG_CONTRIBUTOR_IP:
-                    this.contributorIp = contribEl.getTextContent();
-                    break;
-                  case XML_TAG_CONTRIBUTOR_USERNAME:
-                    this.contributorUsername = contribEl.getTextContent();
-                    break;
-                }
-              }
+    readFromXml(ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Reads the revision from its UTF-8 encoded xml.
+   */
+  public void readFromXml(InputStream xml) throws ParserConfigurationException, IOException, SAXException {
+    readFromXml(ByteBuffer.wrap(IOUtils.toByteArray(xml)));
+  }
+
+  /**
+   * Reads the revision from its UTF-8 encoded xml, which is the remaining bytes of {@code xml}.
+   */
+  public void readFromXml(ByteBuffer xml) throws SAXException {
+    readFromXml(xml, false);
+  }
+
+  /**
+   * Reads the revision from its UTF-8 encoded xml. The text isn't decoded until {@link #getRawContent()} is
+   * called; until then the revision holds on to its bytes.
+   *
+   * @param xml the xml, as the remaining bytes of the buffer
+   * @param shareContent whether the revision may keep a slice of {@code xml} for the text, rather than a copy.
+   *                     Only if the buffer isn't reused.
+   */
+  void readFromXml(ByteBuffer xml, boolean shareContent) throws SAXException {
+    XmlElementReader r = new XmlElementReader(xml);
+    while (r.next()) {
+      switch (r.getName()) {
+        case XML_TAG_CONTRIBUTOR:
+          XmlElementReader contributor = r.getChildren();
+          while (contributor.next()) {
+            switch (contributor.getName()) {
+              case XML_TAG_CONTRIBUTOR_ID:
+                this.contributorId = contributor.getText();
+                break;
+              case XML_TAG_CONTRIBUTOR_IP:
+                this.contributorIp = contributor.getText();
+                break;
+              case XML_TAG_CONTRIBUTOR_USERNAME:
+                this.contributorUsername = contributor.getText();
+                break;
             }
-            break;
-
-          case XML_TAG_TEXT:
-            contentWikiMarkup = e.getTextContent();
-            if (e.hasAttribute(XML_ATTRIBUTE_TEXT_BYTES)) {
-              this.declaredContentLength = Integer.parseInt(e.getAttribute(XML_ATTRIBUTE_TEXT_BYTES));
-              if(this.declaredContentLength > 0 && isEmpty()) {
-                this.isMetadata = true;
-              }
+          }
+          break;
+
+        case XML_TAG_TEXT:
+          ByteBuffer text = r.getContent();
+          if (!shareContent) {
+            text = ByteBuffer.wrap(copy(text));
+          }
+          this.content = text;
+          this.contentWikiMarkup = null;
+          String bytes = r.getAttribute(XML_ATTRIBUTE_TEXT_BYTES);
+          if (bytes != null) {
+            this.declaredContentLength = Integer.parseInt(bytes.trim());
+            if (this.declaredContentLength > 0 && isEmpty()) {
+              this.isMetadata = true;
             }
-            // determine if article is a disambiguation, redirection, and/or stub page.
-            // the first characters of the text must be equal to IDENTIFIER_REDIRECTION_UPPERCASE or IDENTIFIER_REDIRECTION_LOWERCASE
-            this.isRedirect = contentWikiMarkup.startsWith(IDENTIFIER_REDIRECTION_LOWERCASE) || contentWikiMarkup.startsWith(IDENTIFIER_REDIRECTION_UPPERCASE);
+          }
+          break;
+
+        case XML_TAG_ID:
+          this.revisionId = r.getText();
+          break;
+
+        case XML_TAG_TIMESTAMP:
+          this.timestamp = r.getText();
+          break;
 
-            // to be a stub, the article must contain the IDENTIFIER_STUB_WIKIPEDIA_NAMESPACE or IDENTIFIER_STUB_TEMPLATE
-            this.isStub = contentWikiMarkup.contains(IDENTIFIER_STUB_TEMPLATE);
+        case XML_TAG_MINOR:
+          // presence of the empty <minor/> tag indicates it is a minor revision
+          this.isMinor = true;
+          break;
 
-            break;
+        case XML_TAG_COMMENT:
+          this.comment = r.getText();
+          break;
 
-          case XML_TAG_ID:
-            this.revisionId = e.getTextContent();
-            break;
+        case XML_TAG_SHA1:
+          this.sha1 = r.getText();
+          break;
 
-          case XML_TAG_TIMESTAMP:
-            this.timestamp = e.getTextContent();
-            break;
+        case XML_TAG_MODEL:
+          this.model = r.getText();
+          break;
 
-          case XML_TAG_MINOR:
-            // presence of the empty <minor/> tag indicates it is a minor revision
-            this.isMinor = true;
-            break;
+        case XML_TAG_FORMAT:
+          this.format = r.getText();
+          break;
 
-          case XML_TAG_COMMENT:
-            this.comment = e.getTextContent();
-            break;
+        case XML_TAG_PARENTID:
+          this.parentRevisionId = r.getText();
+          break;
+      }
+    }
 
-          case XML_TAG_SHA1:
-            this.sha1 = e.getTextContent();
-            break;
+    // determine if article is a redirection and/or stub page, by the magic words of the wiki's language.
+    // they are matched against the bytes before the text is decoded. other content models, such as JSON, CSS and
+    // Lua, aren't wiki markup, so the magic words mean nothing in them
+    if (content != null && isWikitext()) {
+      WikipediaMagicWords magicWords = getMagicWords();
+      this.isRedirect = magicWords.isRedirect(content, 0, content.limit());
+      this.isStub = magicWords.isStub(content, 0, content.limit());
+    }
 
-          case XML_TAG_MODEL:
-            this.model = e.getTextContent();
-            break;
+  }
 
-          case XML_TAG_FORMAT:
-            this.format = e.getTextContent();
-            break;
+  private static final int FLAG_REDIRECT = 1;
+  private static final int FLAG_STUB = 2;
+  private static final int FLAG_METADATA = 4;
+  private static final int FLAG_MINOR = 8;
+  private static final int TEXT_NONE = 0;
+  private static final int TEXT_ESCAPED = 1;
+  private static final int TEXT_DECODED = 2;
 
-          case XML_TAG_PARENTID:
-            this.parentRevisionId = e.getTextContent();
-            break;
-        }
+  /**
+   * Writes the revision, but not its page, in the binary form of {@link RevisionCache}. Text that hasn't been
+   * decoded yet is written as it was in the xml, so reading it back doesn't decode it either.
+   */
+  void writeCompact(DataOutput out) throws IOException {
+    RevisionCache.writeString(out, revisionId);
+    RevisionCache.writeString(out, parentRevisionId);
+    RevisionCache.writeString(out, timestamp);
+    RevisionCache.writeString(out, contributorUsername);
+    RevisionCache.writeString(out, contributorId);
+    RevisionCache.writeString(out, contributorIp);
+    RevisionCache.writeString(out, comment);
+    RevisionCache.writeString(out, sha1);
+    RevisionCache.writeString(out, model);
+    RevisionCache.writeString(out, format);
+    WritableUtils.writeVInt(out, declaredContentLength);
+    out.writeByte((isRedirect ? FLAG_REDIRECT : 0) | (isStub ? FLAG_STUB : 0) | (isMetadata ? FLAG_METADATA : 0)
+        | (isMinor ? FLAG_MINOR : 0));
+    if (content != null) {
+      out.writeByte(TEXT_ESCAPED);
+      WritableUtils.writeVInt(out, content.remaining());
+      out.write(copy(content));
+    } else if (contentWikiMarkup != null) {
+      out.writeByte(TEXT_DECODED);
+      RevisionCache.writeString(out, contentWikiMarkup);
+    } else {
+      out.writeByte(TEXT_NONE);
+    }
+    if (signature != null) {
+      long[] minHash = signature.getMinHash();
+      WritableUtils.writeVInt(out, minHash.length + 1);
+      for (long h : minHash) {
+        out.writeLong(h);
       }
+      out.writeLong(signature.getSimHash());
+    } else {
+      WritableUtils.writeVInt(out, 0);
     }
+  }
+
+  /**
+   * Reads the fields written by {@link #writeCompact(DataOutput)}.
+   */
+  void readCompact(DataInput in) throws IOException {
+    revisionId = RevisionCache.readString(in);
+    parentRevisionId = RevisionCache.readString(in);
+    timestamp = RevisionCache.readString(in);
+    contributorUsername = RevisionCache.readString(in);
+    contributorId = RevisionCache.readString(in);
+    contributorIp = RevisionCache.readString(in);
+    comment = RevisionCache.readString(in);
+    sha1 = RevisionCache.readString(in);
+    model = RevisionCache.readString(in);
+    format = RevisionCache.readString(in);
+    declaredContentLength = WritableUtils.readVInt(in);
+    int flags = in.readByte();
+    isRedirect = (flags & FLAG_REDIRECT) != 0;
+    isStub = (flags & FLAG_STUB) != 0;
+    isMetadata = (flags & FLAG_METADATA) != 0;
+    isMinor = (flags & FLAG_MINOR) != 0;
+    content = null;
+    contentWikiMarkup = null;
+    switch (in.readByte()) {
+      case TEXT_ESCAPED:
+        byte[] bytes = new byte[WritableUtils.readVInt(in)];
+        in.readFully(bytes);
+        content = ByteBuffer.wrap(bytes);
+        break;
+      case TEXT_DECODED:
+        contentWikiMarkup = RevisionCache.readString(in);
+        break;
+      default:
+        break;
+    }
+    int minHashes = WritableUtils.readVInt(in) - 1;
+    if (minHashes >= 0) {
+      long[] minHash = new long[minHashes];
+      for (int i = 0; i < minHashes; i++) {
+        minHash[i] = in.readLong();
+      }
+      signature = new WikipediaSignature(minHash, in.readLong());
+    } else {
+      signature = null;
+    }
+  }
+
+  private static byte[] copy(ByteBuffer b) {
+    byte[] bytes = new byte[b.remaining()];
+    b.duplicate().get(bytes);
+    return bytes;
+  }
 
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    // the bytes of the text aren't serializable, so decode it first
+    getRawContent();
+    out.defaultWriteObject();
   }
 
 }
@@ -25,20 +25,24 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
 import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.log4j.Logger;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Hadoop {@code InputFormat} for processing Wikipedia page REVISIONS from the XML dumps.
@@ -57,11 +61,327 @@ import java.util.Arrays;
  *
  * The value is the raw xml of the revision, including the &lt;revision&gt; start and end tags.
  *
+ * Uncompressed files, and files compressed with a {@link SplittableCompressionCodec} (e.g. bzip2,
+ * which is how the dumps are published), are split. For splittable codecs the split boundaries
+ * are moved to the codec's block boundaries, and each reader starts decompressing at the first
+ * block of its split. Files compressed with any other codec are read whole by a single reader.
+ *
+ * The pages and revisions that are read can be narrowed down with {@link #setNamespaces},
+ * {@link #setPageIdRange}, {@link #setPageIdAllowlist}, {@link #setTitleAllowlist}, {@link #setTimestampRange},
+ * {@link #setModels} and {@link #setIncludeText}, and sampled with {@link #setPageSample}, {@link #setRevisionSample} and
+ * {@link #setFirstRevisions}. Pages are selected as soon as their header is read, and the rest of a page that
+ * isn't selected is skipped without being parsed. The settings are plain configuration properties, so they can
+ * also be passed to e.g. Spark's {@code newAPIHadoopFile}, and {@link WikipediaPageRevision} is
+ * {@code Serializable} so revisions can be shipped between Spark stages.
+ *
+ * Each file's &lt;siteinfo&gt; header is read once per task JVM (readers of splits other than the first read
+ * it from the start of the file) and attached to the pages, so that namespaces can be resolved by key and name;
+ * see {@link WikipediaPage#getSiteInfo()}.
+ *
+ * Damaged dumps can be read with {@link #setRobust}, which skips corrupt records and resumes at the next page.
+ *
  * @author Eva Monsen
  * @author Jimmy Lin
  * @author Peter Exner
  */
 public class WikipediaPageRevisionInputFormat extends FileInputFormat<Text, WikipediaPageRevision> {
+  public static final String NAMESPACES = "wikipedia.input.namespaces";
+  public static final String PAGE_ID_MIN = "wikipedia.input.page.id.min";
+  public static final String PAGE_ID_MAX = "wikipedia.input.page.id.max";
+  public static final String TIMESTAMP_FROM = "wikipedia.input.timestamp.from";
+  public static final String TIMESTAMP_TO = "wikipedia.input.timestamp.to";
+  public static final String SAMPLE_PAGES = "wikipedia.input.sample.pages";
+  public static final String SAMPLE_REVISIONS = "wikipedia.input.sample.revisions";
+  public static final String SAMPLE_FIRST_REVISIONS = "wikipedia.input.sample.revisions.first";
+  public static final String SAMPLE_SEED = "wikipedia.input.sample.seed";
+  public static final String LATEST_REVISION_ONLY = "wikipedia.input.revisions.latest";
+  public static final String INCLUDE_TEXT = "wikipedia.input.text.include";
+  public static final String INTERN_STRINGS = "wikipedia.input.intern";
+  public static final String INTERN_TABLE_SIZE = "wikipedia.input.intern.size";
+  public static final int DEFAULT_INTERN_TABLE_SIZE = 100000;
+  public static final String PAGE_ID_ALLOWLIST = "wikipedia.input.allowlist.ids";
+  public static final String TITLE_ALLOWLIST = "wikipedia.input.allowlist.titles";
+  public static final String ALLOWLIST_FALSE_POSITIVE_RATE = "wikipedia.input.allowlist.fpp";
+  public static final String SIGNATURE_HASHES = "wikipedia.input.signature.hashes";
+  public static final String SIGNATURE_SHINGLE_SIZE = "wikipedia.input.signature.shingle";
+  public static final String SIGNATURE_SEED = "wikipedia.input.signature.seed";
+  public static final String LANGUAGE = "wikipedia.input.language";
+  public static final String ROBUST = "wikipedia.input.robust";
+  public static final String QUARANTINE_DIR = "wikipedia.input.quarantine.dir";
+  public static final String MODELS = "wikipedia.input.models";
+  static final String CACHE_PREFIX = "wikipedia.input.cache.";
+  public static final String CACHE_DIR = CACHE_PREFIX + "dir";
+  public static final String CACHE_MAX_SIZE = CACHE_PREFIX + "size";
+  public static final long DEFAULT_CACHE_MAX_SIZE = 100L * 1024 * 1024 * 1024;
+
+  /**
+   * Counters updated by the record reader.
+   */
+  public enum ReaderCounter {
+    /**
+     * Pages and revisions skipped in robust mode because they were cut off or didn't parse.
+     */
+    CORRUPT_RECORDS,
+    /**
+     * Splits read from the cache set with {@link #setCacheDir}.
+     */
+    CACHE_HITS,
+    /**
+     * Splits parsed from the dump because they weren't in the cache set with {@link #setCacheDir}.
+     */
+    CACHE_MISSES
+  }
+
+  /**
+   * Only read pages in the given namespaces.
+   *
+   * @param conf the job configuration
+   * @param namespaces namespace keys, as in the &lt;ns&gt; element of the page (e.g. "0" for articles)
+   */
+  public static void setNamespaces(Configuration conf, String... namespaces) {
+    conf.setStrings(NAMESPACES, namespaces);
+  }
+
+  /**
+   * Only read pages whose id is between {@code min} and {@code max}, inclusive.
+   *
+   * @param conf the job configuration
+   * @param min the smallest page id to read
+   * @param max the largest page id to read
+   */
+  public static void setPageIdRange(Configuration conf, long min, long max) {
+    conf.setLong(PAGE_ID_MIN, min);
+    conf.setLong(PAGE_ID_MAX, max);
+  }
+
+  /**
+   * Only read revisions made at or after {@code from} and before {@code to}.
+   *
+   * @param conf the job configuration
+   * @param from timestamp in the dump's format, e.g. "2002-02-25T00:00:00Z", or {@code null} for no lower bound
+   * @param to timestamp in the dump's format, or {@code null} for no upper bound
+   */
+  public static void setTimestampRange(Configuration conf, String from, String to) {
+    if (from != null) {
+      conf.set(TIMESTAMP_FROM, from);
+    } else {
+      conf.unset(TIMESTAMP_FROM);
+    }
+    if (to != null) {
+      conf.set(TIMESTAMP_TO, to);
+    } else {
+      conf.unset(TIMESTAMP_TO);
+    }
+  }
+
+  /**
+   * Only read a sample of the pages, of about {@code fraction} of them. Pages are sampled by a hash of their id,
+   * so the same pages are sampled in every run and every dump, and the rest of a page that isn't sampled is
+   * skipped without being parsed.
+   *
+   * @param conf the job configuration
+   * @param fraction the fraction of pages to read, e.g. 0.01
+   * @see #setSampleSeed
+   */
+  public static void setPageSample(Configuration conf, double fraction) {
+    conf.setDouble(SAMPLE_PAGES, fraction);
+  }
+
+  /**
+   * Only read a sample of the revisions, of about {@code fraction} of them. Revisions are sampled by a hash of
+   * their id before they are parsed.
+   *
+   * @param conf the job configuration
+   * @param fraction the fraction of revisions to read, e.g. 0.01
+   * @see #setSampleSeed
+   */
+  public static void setRevisionSample(Configuration conf, double fraction) {
+    conf.setDouble(SAMPLE_REVISIONS, fraction);
+  }
+
+  /**
+   * Only read the first {@code count} revisions of each page, in dump order. The rest of the page is skipped
+   * without being parsed.
+   *
+   * @param conf the job configuration
+   * @param count the number of revisions to read per page
+   */
+  public static void setFirstRevisions(Configuration conf, int count) {
+    conf.setInt(SAMPLE_FIRST_REVISIONS, count);
+  }
+
+  /**
+   * Selects another sample of pages and revisions than the default one. Defaults to 0.
+   *
+   * @param conf the job configuration
+   * @param seed the seed of the hash that samples are decided by
+   */
+  public static void setSampleSeed(Configuration conf, long seed) {
+    conf.setLong(SAMPLE_SEED, seed);
+  }
+
+  /**
+   * Only read the latest revision of each page, e.g. to take the current text of pages from a history dump. With
+   * {@link #setTimestampRange}, the latest revision within the range is read, which gives a snapshot of the wiki
+   * at the end of the range. The revisions that aren't the latest are only scanned for their timestamp, not
+   * parsed. Defaults to {@code false}.
+   *
+   * @param conf the job configuration
+   * @param latestOnly whether to only read the latest revision of each page
+   */
+  public static void setLatestRevisionOnly(Configuration conf, boolean latestOnly) {
+    conf.setBoolean(LATEST_REVISION_ONLY, latestOnly);
+  }
+
+  /**
+   * Whether to keep the text of revisions. If not, {@link WikipediaPageRevision#getRawContent()} returns
+   * {@code null}, and the revisions are much smaller to hold or ship. Defaults to {@code true}.
+   *
+   * @param conf the job configuration
+   * @param includeText whether to keep the text
+   */
+  public static void setIncludeText(Configuration conf, boolean includeText) {
+    conf.setBoolean(INCLUDE_TEXT, includeText);
+  }
+
+  /**
+   * Share a single instance of repeated contributor names and ips, content models and formats between the
+   * revisions read by a task, which saves a lot of heap when holding revisions from history dumps. At most
+   * {@code tableSize} distinct values are shared at a time, the most recently seen ones.
+   *
+   * @param conf the job configuration
+   * @param tableSize the number of distinct values to share, or 0 to turn sharing off
+   */
+  public static void setInternStrings(Configuration conf, int tableSize) {
+    conf.setBoolean(INTERN_STRINGS, tableSize > 0);
+    conf.setInt(INTERN_TABLE_SIZE, tableSize);
+  }
+
+  /**
+   * Only read the pages whose ids are listed in {@code file}, one per line. Each task loads the list once; to
+   * load it from the local disk, add the file to the job's distributed cache, and the task reads the copy linked in
+   * its working directory. With {@link #setTitleAllowlist} as well, pages in either list are read.
+   *
+   * @param conf the job configuration
+   * @param file the list of page ids
+   */
+  public static void setPageIdAllowlist(Configuration conf, Path file) {
+    conf.set(PAGE_ID_ALLOWLIST, file.toString());
+  }
+
+  /**
+   * Only read the pages whose titles are listed in {@code file}, one per line, with their namespace prefix as in
+   * the dump. Spaces and underscores in titles are treated alike. Titles are held as 64-bit hashes, so a page
+   * that isn't listed may still be read, in the unlikely case that its title's hash is that of a listed one.
+   *
+   * @param conf the job configuration
+   * @param file the list of page titles
+   * @see #setPageIdAllowlist
+   */
+  public static void setTitleAllowlist(Configuration conf, Path file) {
+    conf.set(TITLE_ALLOWLIST, file.toString());
+  }
+
+  /**
+   * Hold the allowlists in Bloom filters with the given false positive rate, rather than in hash sets. This
+   * takes about 10 bits per entry at 1%, rather than 128, but lets through some pages that aren't listed.
+   *
+   * @param conf the job configuration
+   * @param falsePositiveRate e.g. 0.01, or 0 for hash sets
+   */
+  public static void setAllowlistFalsePositiveRate(Configuration conf, double falsePositiveRate) {
+    conf.setDouble(ALLOWLIST_FALSE_POSITIVE_RATE, falsePositiveRate);
+  }
+
+  /**
+   * Compute the near-duplicate signature of each revision's text as it is read, see
+   * {@link WikipediaPageRevision#getSignature()}. The signature is kept even if the text isn't.
+   *
+   * @param conf the job configuration
+   * @param numHashes the number of MinHash functions, e.g. {@link WikipediaSignatureHasher#DEFAULT_NUM_HASHES},
+   *                  or 0 to not compute signatures
+   * @param shingleSize the number of words per shingle, e.g. {@link WikipediaSignatureHasher#DEFAULT_SHINGLE_SIZE}
+   */
+  public static void setSignatures(Configuration conf, int numHashes, int shingleSize) {
+    conf.setInt(SIGNATURE_HASHES, numHashes);
+    conf.setInt(SIGNATURE_SHINGLE_SIZE, shingleSize);
+  }
+
+  /**
+   * The language of the dumps, which selects the magic words that redirects, stubs, categories and files are
+   * recognized by (see {@link WikipediaMagicWords}). By default it is taken from each dump's site info.
+   *
+   * @param conf the job configuration
+   * @param language a language code, e.g. "de"
+   */
+  public static void setLanguage(Configuration conf, String language) {
+    conf.set(LANGUAGE, language);
+  }
+
+  /**
+   * Whether to skip corrupt pages and revisions rather than stop at them. In robust mode a page or revision that
+   * is cut off by the start of another page, or whose xml doesn't parse, is skipped, reading resumes at the next
+   * &lt;page&gt;, and {@link ReaderCounter#CORRUPT_RECORDS} is incremented. Nothing parsed from a skipped record
+   * is returned. Defaults to {@code false}, where a cut-off record ends the split.
+   *
+   * @param conf the job configuration
+   * @param robust whether to skip corrupt records
+   */
+  public static void setRobust(Configuration conf, boolean robust) {
+    conf.setBoolean(ROBUST, robust);
+  }
+
+  /**
+   * Record the corrupt records skipped in robust mode in a file per task attempt under {@code dir}, one line per
+   * record with the input file, the start and end positions, what they are and the reason, separated by tabs.
+   * Positions are "uncompressed" byte offsets, except in splits of compressed files, where they are the
+   * positions in the file of the "compressed-block"s the record starts and ends in.
+   *
+   * @param conf the job configuration
+   * @param dir the directory for the quarantine files
+   */
+  public static void setQuarantineDir(Configuration conf, Path dir) {
+    conf.set(QUARANTINE_DIR, dir.toString());
+  }
+
+  /**
+   * Only read revisions with the given content models, e.g. "wikibase-item" for the items of a Wikidata dump, or
+   * "wikitext" for articles without the CSS, JavaScript and Lua pages. Revisions without a model are wikitext. The
+   * model of a revision is looked up in its xml, and a revision with another model is skipped without being
+   * parsed.
+   *
+   * @param conf the job configuration
+   * @param models the content models, as in the &lt;model&gt; element of the revision
+   */
+  public static void setModels(Configuration conf, String... models) {
+    conf.setStrings(MODELS, models);
+  }
+
+  /**
+   * Keep the revisions parsed from each split in {@code dir}, in a compact binary form, and read them from there
+   * instead of parsing the dump again when a later job reads the same split of the same file with the same
+   * settings. A split that isn't cached, or whose file has changed, is parsed from the dump and cached once it has
+   * been read to the end. {@link ReaderCounter#CACHE_HITS} and {@link ReaderCounter#CACHE_MISSES} count the splits
+   * read each way. Off by default.
+   *
+   * @param conf the job configuration
+   * @param dir the directory for the cache files, shared by the jobs that use the cache
+   */
+  public static void setCacheDir(Configuration conf, Path dir) {
+    conf.set(CACHE_DIR, dir.toString());
+  }
+
+  /**
+   * Limit the size of the cache set with {@link #setCacheDir}. When the cache grows past it, the least recently
+   * used splits are deleted. Defaults to {@value #DEFAULT_CACHE_MAX_SIZE} bytes.
+   *
+   * @param conf the job configuration
+   * @param bytes the maximum size of the cache directory in bytes
+   */
+  public static void setCacheMaxSize(Configuration conf, long bytes) {
+    conf.setLong(CACHE_MAX_SIZE, bytes);
+  }
+
   @Override
   public RecordReader<Text, WikipediaPageRevision> createRecordReader(
       InputSplit split, TaskAttemptContext context) throws IOException,
@@ -69,36 +389,50 @@ public class WikipediaPageRevisionInputFormat extends FileInputFormat<Text, Wiki
     return new WikipediaPageRevisionRecordReader();
   }
 
+  @Override
+  protected boolean isSplitable(JobContext context, Path file) {
+    CompressionCodec codec = new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
+    return codec == null || codec instanceof SplittableCompressionCodec;
+  }
+
   public static class WikipediaPageRevisionRecordReader extends RecordReader<Text, WikipediaPageRevision> {
     private static final Logger LOG = Logger.getLogger(WikipediaPageRevisionRecordReader.class);
+    private static final int SITE_INFO_CACHE_SIZE = 64;
+    /**
+     * Site info by file path and modification time, shared by the readers in a JVM.
+     */
+    private static final Map<String, WikipediaSiteInfo> SITE_INFO_CACHE = Collections.synchronizedMap(
+        new LinkedHashMap<String, WikipediaSiteInfo>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, WikipediaSiteInfo> eldest) {
+            return size() > SITE_INFO_CACHE_SIZE;
+          }
+        });
 
-    private WikipediaPageRevision revision;
-    private WikipediaPage page;
-    private String language;
-    private byte[] revisionStartTag;
-    private byte[] revisionEndTag;
-
-    private byte[] pageStartTagBytes;
-    private byte[] pageEndTag;
-    byte[][] revisionSearchTags ;
     private long start;
     private long end;
-    private long pos;
-    private DataInputStream fsin = null;
-    private DataOutputBuffer buffer = new DataOutputBuffer();
-
-    private long recordStartPos;
-
-    // keep track of state
-    private boolean inPage = false;
+    private WikipediaRevisionScanner scanner;
+    private Decompressor decompressor = null;
+    /**
+     * Buffer for the xml of elements, kept across the files of a reader that reads several.
+     */
+    private final DataOutputBuffer buffer = new DataOutputBuffer();
 
     private final Text key = new Text();
     private WikipediaPageRevision value;
-    private long pageStartPos;
     private Path file;
-    private long revisionStartPos;
-    private static final String PAGE_START_TAG = "<page>";
-    private static final String REVISION_START_TAG = "<revision>";
+    private TaskAttemptContext context;
+    private long corruptRecords;
+    private boolean done;
+    /**
+     * The cached revisions being read instead of the dump, or {@code null}.
+     */
+    private RevisionCache.Reader cacheReader;
+    /**
+     * Where the revisions read from the dump are being cached, or {@code null}.
+     */
+    private RevisionCache.Writer cacheWriter;
+
     /**
      * Called once at initialization.
      *
@@ -110,45 +444,142 @@ public class WikipediaPageRevisionInputFormat extends FileInputFormat<Text, Wiki
     @Override
     public void initialize(InputSplit input, TaskAttemptContext context)
         throws IOException, InterruptedException {
-      Configuration conf = context.getConfiguration();
-
-      this.pageStartTagBytes = PAGE_START_TAG.getBytes("utf-8");
-      this.pageEndTag = "</page>".getBytes("utf-8");
-      this.revisionStartTag = REVISION_START_TAG.getBytes("utf-8");
-      this.revisionEndTag = "</revision>".getBytes("utf-8");
-
-      byte[][] b = {revisionStartTag, pageEndTag};
-      revisionSearchTags = b;
-
+      this.context = context;
       FileSplit split = (FileSplit) input;
-      start = split.getStart();
-      file = split.getPath();
+      open(split.getPath(), split.getStart(), split.getLength());
+    }
+
+    /**
+     * Starts reading a range of a file. A reader that is already reading is moved on to the new range, keeping its
+     * scanner and buffers.
+     *
+     * @param file the file
+     * @param start where the range starts
+     * @param length the length of the range
+     * @throws IOException
+     */
+    void open(Path file, long start, long length) throws IOException {
+      Configuration conf = context.getConfiguration();
+      this.file = file;
+      this.start = start;
+      this.done = false;
 
       CompressionCodecFactory compressionCodecs = new CompressionCodecFactory(conf);
       CompressionCodec codec = compressionCodecs.getCodec(file);
 
       FileSystem fs = file.getFileSystem(conf);
 
-      if (codec != null) {
-        LOG.info("Reading compressed file " + file + "...");
-        fsin = new DataInputStream(codec.createInputStream(fs.open(file)));
+      closeCache();
+      RevisionCache cache = RevisionCache.get(conf);
+      Path cachePath = null;
+      if (cache != null) {
+        cachePath = cache.getPath(fs, file, start, length);
+        WikipediaSiteInfo siteInfo = getSiteInfo(fs, codec);
+        String language = conf.get(LANGUAGE);
+        cacheReader = cache.openReader(cachePath, file.toString(), siteInfo, siteInfo != null
+            ? WikipediaMagicWords.forSiteInfo(siteInfo, language) : WikipediaMagicWords.forLanguage(language));
+        if (cacheReader != null) {
+          LOG.info("Reading split " + start + "+" + length + " of " + file + " from cache " + cachePath);
+          increment(ReaderCounter.CACHE_HITS, 1);
+          releaseInput();
+          return;
+        }
+        increment(ReaderCounter.CACHE_MISSES, 1);
+      }
 
+      Decompressor previousDecompressor = decompressor;
+      decompressor = null;
+      DumpInput in;
+      if (codec instanceof SplittableCompressionCodec) {
+        LOG.info("Reading split " + start + "+" + length + " of compressed file " + file + "...");
+        decompressor = CodecPool.getDecompressor(codec);
+        SplitCompressionInputStream cIn = ((SplittableCompressionCodec) codec).createInputStream(
+            fs.open(file), decompressor, start, start + length,
+            SplittableCompressionCodec.READ_MODE.BYBLOCK);
+
+        // the codec moves the split boundaries to its own block boundaries
+        this.start = cIn.getAdjustedStart();
+        end = cIn.getAdjustedEnd();
+        in = new StreamDumpInput(cIn, this.start, end, cIn, end, buffer);
+      } else if (codec != null) {
+        LOG.info("Reading compressed file " + file + "...");
+        decompressor = CodecPool.getDecompressor(codec);
         end = Long.MAX_VALUE;
+        // the position of the compressed stream measures progress through the file
+        FSDataInputStream fileIn = fs.open(file);
+        in = new StreamDumpInput(codec.createInputStream(fileIn, decompressor), start, end, fileIn,
+            fs.getFileStatus(file).getLen(), buffer);
       } else {
         LOG.info("Reading uncompressed file " + file + "...");
         FSDataInputStream fileIn = fs.open(file);
 
         fileIn.seek(start);
-        fsin = fileIn;
 
-        end = start + split.getLength();
+        end = start + length;
+        in = new StreamDumpInput(fileIn, start, end, null, end, buffer);
+      }
+
+      try {
+        if (scanner == null) {
+          scanner = new WikipediaRevisionScanner(in, file.toString(), conf, getSiteInfo(fs, codec));
+          String quarantineDir = conf.get(QUARANTINE_DIR);
+          if (quarantineDir != null) {
+            Path quarantineFile = new Path(quarantineDir, "quarantine-" + context.getTaskAttemptID());
+            scanner.setQuarantine(new Quarantine(quarantineFile.getFileSystem(conf), quarantineFile));
+          }
+        } else {
+          scanner.reset(in, file.toString(), getSiteInfo(fs, codec));
+        }
+        if (cache != null) {
+          cacheWriter = cache.createWriter(cachePath, String.valueOf(context.getTaskAttemptID()));
+        }
+      } finally {
+        if (previousDecompressor != null) {
+          CodecPool.returnDecompressor(previousDecompressor);
+        }
       }
+    }
 
-      recordStartPos = start;
+    /**
+     * @return the file being read
+     */
+    Path getFile() {
+      return file;
+    }
+
+    /**
+     * Returns the site info at the start of the file, reading it if it isn't cached yet.
+     */
+    private WikipediaSiteInfo getSiteInfo(FileSystem fs, CompressionCodec codec) throws IOException {
+      String cacheKey = file + "@" + fs.getFileStatus(file).getModificationTime();
+      WikipediaSiteInfo siteInfo = SITE_INFO_CACHE.get(cacheKey);
+      if (siteInfo != null) {
+        return siteInfo;
+      }
 
-      // Because input streams of gzipped files are not seekable, we need to keep track of bytes
-      // consumed ourselves.
-      pos = start;
+      Decompressor headerDecompressor = null;
+      StreamDumpInput header = null;
+      try {
+        if (codec != null) {
+          headerDecompressor = CodecPool.getDecompressor(codec);
+          header = new StreamDumpInput(codec.createInputStream(fs.open(file), headerDecompressor), 0,
+              Long.MAX_VALUE, null);
+        } else {
+          header = new StreamDumpInput(fs.open(file), 0, Long.MAX_VALUE, null);
+        }
+        siteInfo = WikipediaRevisionScanner.readSiteInfo(header, file.toString());
+      } finally {
+        if (header != null) {
+          header.close();
+        }
+        if (headerDecompressor != null) {
+          CodecPool.returnDecompressor(headerDecompressor);
+        }
+      }
+      if (siteInfo != null) {
+        SITE_INFO_CACHE.put(cacheKey, siteInfo);
+      }
+      return siteInfo;
     }
 
     /**
@@ -160,70 +591,79 @@ public class WikipediaPageRevisionInputFormat extends FileInputFormat<Text, Wiki
      */
     @Override
     public boolean nextKeyValue() throws IOException, InterruptedException {
-      while(true) {
-        // find page start if we're not in one
-        if (!inPage) {
-          LOG.debug("Searchign for start page");
-          buffer.reset();
-          if (readUntilMatch(pageStartTagBytes, false)) {
-            pageStartPos = pos - pageStartTagBytes.length;
-            inPage = true;
-            LOG.debug("Page start is at "+pageStartPos);
-          } else {
-            LOG.debug("No page start tag found within block");
-            return false;
+      if (cacheReader != null) {
+        value = cacheReader.next();
+        if (value == null) {
+          done = true;
+          return false;
+        }
+      } else {
+        boolean found = scanner.next();
+        countCorruptRecords();
+        if (!found) {
+          done = true;
+          if (cacheWriter != null) {
+            cacheWriter.commit();
+            cacheWriter = null;
           }
+          return false;
+        }
+        value = scanner.getCurrentValue();
+        if (cacheWriter != null) {
+          cacheWriter.write(value);
+        }
+      }
+      key.set(value.getContainingPage().getPageId() + "_" + value.getRevisionId());
+      return true;
+    }
+
+    private void countCorruptRecords() {
+      long count = scanner.getCorruptRecordCount();
+      if (count > corruptRecords) {
+        increment(ReaderCounter.CORRUPT_RECORDS, count - corruptRecords);
+        corruptRecords = count;
+      }
+    }
+
+    private void increment(ReaderCounter name, long amount) {
+      org.apache.hadoop.mapreduce.Counter counter = context.getCounter(name);
+      // contexts without a reporter, e.g. outside a task, have no counters
+      if (counter != null) {
+        counter.increment(amount);
+      }
+    }
+
+    /**
+     * Closes the cached revisions being read, and drops the ones being cached if the split wasn't read to the end.
+     */
+    /**
+     * Closes the input of the previous file or split, and returns its decompressor, when the next one is read from
+     * the cache instead.
+     */
+    private void releaseInput() throws IOException {
+      try {
+        if (scanner != null) {
+          scanner.closeInput();
+        }
+      } finally {
+        if (decompressor != null) {
+          CodecPool.returnDecompressor(decompressor);
+          decompressor = null;
         }
+      }
+    }
 
-        // look for either a revision start tag, or a page end tag
-        switch (readUntilMatch(revisionSearchTags, true)) {
-          case 0: // revision
-            if(page == null) {
-              LOG.debug("reading page");
-              page = new WikipediaPage();
-              try {
-                String xml  = PAGE_START_TAG+new String(buffer.getData(), 0, buffer.getLength()-revisionStartTag.length, "utf-8")+"</page>";
-                LOG.debug("Page Xml = "+xml);
-                page.readFromXml(xml);
-              } catch (ParserConfigurationException e) {
-                LOG.error("Error reading WikipediaPage", e);
-              } catch (SAXException e) {
-                LOG.error("Error reading WikipediaPage", e);
-              }
-            }
-            // find the whole xml of the revision
-            revisionStartPos = pos - revisionStartTag.length;
-            buffer.reset();
-            buffer.write(revisionStartTag);
-            if (readUntilMatch(revisionEndTag, true)) {
-              //key.set(file + Long.toString(recordStartPos));
-              value = new WikipediaPageRevision(page);
-              try {
-                String xml = new String(buffer.getData(), 0, buffer.getLength(), "utf-8");
-                LOG.debug("revision xml = " + xml);
-                value.readFromXml(xml);
-                key.set(value.getContainingPage().getPageId() + "_" + value.getRevisionId());
-              } catch (ParserConfigurationException e) {
-                LOG.error("Error reading WikipediaPageRevision in page " + value.getContainingPage().getPageId(), e);
-              } catch (SAXException e) {
-                LOG.error("Error reading WikipediaPageRevision in page " + value.getContainingPage().getPageId(), e);
-              }
-              return true;
-            }
-            // didn't find revision end. that's weird. log it and run away
-            LOG.error("no end tag for revision starting at position " + revisionStartPos + " in file " + file);
-            return false;
-          case 1: // end page
-            // no more revisions for this page so go find start of next page.
-            // note: this is the only case where we go through the while loop again
-            inPage = false;
-            page = null;
-            break;
-          default:
-            // didn't find revision start OR page end. that's weird. log it and run away
-            LOG.error("no end tag for page starting at position " + pageStartPos + " in file " + file + "");
-            return false;
+    private void closeCache() throws IOException {
+      try {
+        if (cacheReader != null) {
+          cacheReader.close();
         }
+        if (cacheWriter != null) {
+          cacheWriter.close();
+        }
+      } finally {
+        cacheReader = null;
+        cacheWriter = null;
       }
     }
 
@@ -256,7 +696,17 @@ public class WikipediaPageRevisionInputFormat extends FileInputFormat<Text, Wiki
      */
     @Override
     public void close() throws IOException {
-      fsin.close();
+      try {
+        closeCache();
+        if (scanner != null) {
+          scanner.close();
+        }
+      } finally {
+        if (decompressor != null) {
+          CodecPool.returnDecompressor(decompressor);
+          decompressor = null;
+        }
+      }
     }
 
     /**
@@ -267,66 +717,11 @@ public class WikipediaPageRevisionInputFormat extends FileInputFormat<Text, Wiki
      */
     @Override
     public float getProgress() throws IOException {
-      return ((float) (pos - start)) / ((float) (end - start));
-    }
-
-    /**
-     *
-     * @param match
-     * @param saveToBuffer
-     * @return
-     * @throws IOException
-     */
-    private boolean readUntilMatch(byte[] match, boolean saveToBuffer)
-        throws IOException {
-      byte[][] matches = {match};
-      return (readUntilMatch(matches, saveToBuffer) == 0);
-    }
-
-    /**
-     *
-     * @param matches
-     * @param saveToBuffer whether to save bytes readFromXml to a buffer for later use.
-     * @return index of the match, otherwise -1
-     * @throws IOException
-     */
-    private int readUntilMatch(byte[][] matches, boolean saveToBuffer)
-        throws IOException {
-      int[] i = new int[matches.length]; // should be initialized to all zeroes
-      while (true) {
-        int b = fsin.read();
-        // increment position (bytes consumed)
-        pos++;
-
-        // end of file:
-        if (b == -1)
-          return -1;
-        // save to buffer:
-        if (saveToBuffer)
-          buffer.write(b);
-
-        // check if we're matching:
-        for(int m = 0; m < matches.length; m++) {
-          byte[] match = matches[m];
-
-          if (b == match[i[m]]) {
-            i[m]++;
-            if (i[m] >= match.length) {
-              LOG.debug("Match "+m+" found at pos " + pos);
-              return m;
-            }
-          } else {
-            i[m] = 0;
-          }
-          // see if we've passed the stop point:
-          if (!saveToBuffer && Arrays.stream(i).sum() == 0 && pos >= end) {
-            LOG.debug("readUntilMatch returning -1");
-            return -1;
-          }
-        }
+      if (done) {
+        return 1.0f;
       }
+      return cacheReader != null ? cacheReader.getProgress() : scanner.getProgress();
     }
   }
 
 }
-
@@ -0,0 +1,310 @@
+package io.sunrisedata.wikipedia;
+
+import info.bliki.wiki.filter.PlainTextConverter;
+import info.bliki.wiki.model.Configuration;
+import info.bliki.wiki.model.WikiModel;
+import org.apache.commons.lang.StringEscapeUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Renders revisions to HTML or plain text with one Bliki model, which is shared by all the revisions a task renders
+ * instead of being created for each of them.
+ *
+ * Templates are looked up in a bounded LRU cache of their definitions, which is filled with {@link #addTemplate} or
+ * {@link #addTemplates}, e.g. from a pass over the Template namespace of the dump; templates that aren't in it
+ * render as nothing, as they did before. Expansions of template calls with the same arguments are cached too, so
+ * a template used on many pages is only parsed once, unless it uses magic words such as {@code {{PAGENAME}}}.
+ *
+ * <pre>
+ * Configuration conf = new Configuration();
+ * WikipediaPageRevisionInputFormat.setNamespaces(conf, "10");
+ * WikipediaPageRevisionInputFormat.setLatestRevisionOnly(conf, true);
+ * WikipediaRenderer.getDefault().addTemplates(WikipediaDumpReader.open(dump, conf));
+ * // then for each revision
+ * String text = revision.getRenderedContent();
+ * </pre>
+ *
+ * Not thread-safe. {@link WikipediaPageRevision#getRenderedContent()} and
+ * {@link WikipediaPageRevision#getDisplayContent()} use the {@linkplain #getDefault() renderer of the thread}.
+ */
+public class WikipediaRenderer {
+  public static final int DEFAULT_TEMPLATE_CACHE_SIZE = 10000;
+  public static final int DEFAULT_EXPANSION_CACHE_SIZE = 10000;
+  /**
+   * The namespace key of templates.
+   */
+  private static final int TEMPLATE_NAMESPACE = 10;
+
+  private static final ThreadLocal<WikipediaRenderer> DEFAULT = new ThreadLocal<WikipediaRenderer>() {
+    @Override
+    protected WikipediaRenderer initialValue() {
+      return new WikipediaRenderer();
+    }
+  };
+
+  // Explictly remove <ref>...</ref>, because there are screwy things like this:
+  // <ref>[http://www.interieur.org/<!-- Bot generated title -->]</ref>
+  // where "http://www.interieur.org/<!--" gets interpreted as the URL by
+  // Bliki in conversion to text
+  private static final Pattern REF = Pattern.compile("<ref>.*?</ref>");
+
+  private static final Pattern LANG_LINKS = Pattern.compile("\\[\\[[a-z\\-]+:[^\\]]+\\]\\]");
+  private static final Pattern DOUBLE_CURLY = Pattern.compile("\\{\\{.*?\\}\\}");
+
+  private static final Pattern URL = Pattern.compile("http://[^ <]+"); // Note, don't capture
+  // possible HTML tag
+
+  private static final Pattern HTML_TAG = Pattern.compile("<[^!][^>]*>"); // Note, don't capture
+  // comments
+  private static final Pattern HTML_COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+
+  private final LruCache<String, String> definitions;
+  private final ExpansionCache expansions;
+  private final CachingWikiModel wikiModel;
+  private final PlainTextConverter textConverter = new PlainTextConverter();
+  /**
+   * Whether the page being rendered has looked up a magic word, such as {{PAGENAME}}, since which expansions may
+   * depend on the page.
+   */
+  private boolean usedMagicWords;
+  private long templateHits;
+  private long templateMisses;
+
+  public WikipediaRenderer() {
+    this(DEFAULT_TEMPLATE_CACHE_SIZE, DEFAULT_EXPANSION_CACHE_SIZE);
+  }
+
+  /**
+   * @param templateCacheSize the most template definitions kept
+   * @param expansionCacheSize the most expanded template calls kept
+   */
+  public WikipediaRenderer(int templateCacheSize, int expansionCacheSize) {
+    this.definitions = new LruCache<String, String>(templateCacheSize);
+    this.expansions = new ExpansionCache(expansionCacheSize);
+    Configuration configuration = new Configuration();
+    configuration.setTemplateCallsCache(expansions);
+    this.wikiModel = new CachingWikiModel(configuration);
+  }
+
+  /**
+   * @return the renderer of the current thread
+   */
+  public static WikipediaRenderer getDefault() {
+    return DEFAULT.get();
+  }
+
+  /**
+   * Adds the definition of a template.
+   *
+   * @param name the name of the template, without the namespace
+   * @param wikitext the markup of the template page
+   */
+  public void addTemplate(String name, String wikitext) {
+    definitions.put(normalizeTitle(name), wikitext);
+    clearExpansions();
+  }
+
+  /**
+   * Adds the definition of a template from its revision. Revisions of pages outside the Template namespace are
+   * ignored.
+   *
+   * @return whether the revision was of a template
+   */
+  public boolean addTemplate(WikipediaPageRevision revision) {
+    WikipediaPage page = revision.getContainingPage();
+    // TemplateStyles pages in the template namespace are CSS, not templates
+    if (page.getNamespaceId() != TEMPLATE_NAMESPACE || page.getTitle() == null || !revision.isWikitext()) {
+      return false;
+    }
+    String title = page.getTitleWithoutNamespace();
+    if (title.equals(page.getTitle())) {
+      // without site info, strip the prefix
+      int colon = title.indexOf(':');
+      title = colon < 0 ? title : title.substring(colon + 1);
+    }
+    definitions.put(normalizeTitle(title), revision.getRawContent());
+    clearExpansions();
+    return true;
+  }
+
+  /**
+   * Adds the templates among revisions, the later revision of a template replacing the earlier.
+   *
+   * @return the number of template revisions added
+   */
+  public int addTemplates(Iterator<WikipediaPageRevision> revisions) {
+    int count = 0;
+    while (revisions.hasNext()) {
+      if (addTemplate(revisions.next())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Drops the expansions, which may have used an old definition of a template.
+   */
+  private void clearExpansions() {
+    if (!expansions.isEmpty()) {
+      expansions.clear();
+    }
+  }
+
+  /**
+   * @return the number of template definitions cached
+   */
+  public int getTemplateCount() {
+    return definitions.size();
+  }
+
+  /**
+   * @return how many template lookups were answered from the cache
+   */
+  public long getTemplateHits() {
+    return templateHits;
+  }
+
+  /**
+   * @return how many template lookups found no definition
+   */
+  public long getTemplateMisses() {
+    return templateMisses;
+  }
+
+  /**
+   * Renders the title and the text of a revision to plain text. Text that isn't wiki markup, such as JSON, CSS or
+   * Lua, is returned as it is after the title.
+   */
+  public String renderText(WikipediaPageRevision revision) {
+    String s = revision.getRawContent();
+    if (!revision.isWikitext()) {
+      return revision.getContainingPage().getTitle() + "\n" + (s == null ? "" : s);
+    }
+
+    // Bliki doesn't seem to properly handle inter-language links, so remove manually.
+    s = LANG_LINKS.matcher(s).replaceAll(" ");
+
+    String title = revision.getContainingPage().getTitle();
+    usedMagicWords = false;
+    wikiModel.setUp();
+    try {
+      wikiModel.setPageName(title);
+      s = title + "\n" + wikiModel.render(textConverter, s);
+    } finally {
+      wikiModel.tearDown();
+    }
+
+    // The way the some entities are encoded, we have to unescape twice.
+    s = StringEscapeUtils.unescapeHtml(StringEscapeUtils.unescapeHtml(s));
+
+    s = REF.matcher(s).replaceAll(" ");
+    s = HTML_COMMENT.matcher(s).replaceAll(" ");
+
+    // Sometimes, URL bumps up against comments e.g., <!-- http://foo.com/-->
+    // Therefore, we want to remove the comment first; otherwise the URL pattern might eat up
+    // the comment terminator.
+    s = URL.matcher(s).replaceAll(" ");
+    s = DOUBLE_CURLY.matcher(s).replaceAll(" ");
+    s = HTML_TAG.matcher(s).replaceAll(" ");
+
+    return s;
+  }
+
+  /**
+   * Renders the title and the text of a revision to HTML. Text that isn't wiki markup, such as JSON, CSS or Lua,
+   * is shown escaped in a {@code <pre>} element.
+   */
+  public String renderHtml(WikipediaPageRevision revision) {
+    String title = revision.getContainingPage().getTitle();
+    if (!revision.isWikitext()) {
+      String text = revision.getRawContent();
+      return "<h1>" + title + "</h1>\n<pre>" + StringEscapeUtils.escapeHtml(text == null ? "" : text) + "</pre>";
+    }
+    String s;
+    usedMagicWords = false;
+    wikiModel.setUp();
+    try {
+      wikiModel.setPageName(title);
+      s = "<h1>" + title + "</h1>\n" + wikiModel.render(revision.getRawContent());
+    } finally {
+      wikiModel.tearDown();
+    }
+
+    s = DOUBLE_CURLY.matcher(s).replaceAll(" ");
+
+    return s;
+  }
+
+  /**
+   * Normalizes a title the way MediaWiki does: underscores are spaces, and the first letter is upper case.
+   */
+  private static String normalizeTitle(String title) {
+    String s = title.replace('_', ' ').trim();
+    if (s.isEmpty() || Character.isUpperCase(s.charAt(0))) {
+      return s;
+    }
+    return s.substring(0, 1).toUpperCase() + s.substring(1);
+  }
+
+  /**
+   * Answers template lookups from the cached definitions.
+   */
+  private class CachingWikiModel extends WikiModel {
+    CachingWikiModel(Configuration configuration) {
+      super(configuration, "", "");
+    }
+
+    @Override
+    public String getRawWikiContent(String namespace, String articleName, Map<String, String> templateParameters) {
+      String content = super.getRawWikiContent(namespace, articleName, templateParameters);
+      if (!isTemplateNamespace(namespace)) {
+        return content;
+      }
+      if (content != null) {
+        usedMagicWords = true;
+        return content;
+      }
+      content = definitions.get(normalizeTitle(articleName));
+      if (content != null) {
+        templateHits++;
+      } else {
+        templateMisses++;
+      }
+      return content;
+    }
+  }
+
+  /**
+   * Expanded template calls, by template name and arguments. Expansions that may have used a magic word aren't
+   * kept, as they can differ from page to page.
+   */
+  private class ExpansionCache extends LruCache<String, String> {
+    ExpansionCache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    public String put(String key, String value) {
+      return usedMagicWords ? null : super.put(key, value);
+    }
+  }
+
+  private static class LruCache<K, V> extends LinkedHashMap<K, V> {
+    private final int maxSize;
+
+    LruCache(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+      return size() > maxSize;
+    }
+  }
+}
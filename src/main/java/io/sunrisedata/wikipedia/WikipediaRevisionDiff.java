@@ -0,0 +1,75 @@
+package io.sunrisedata.wikipedia;
+
+import java.util.List;
+
+/**
+ * What changed between a revision and the revision before it, as computed by {@link WikipediaRevisionDiffer}.
+ */
+public class WikipediaRevisionDiff {
+  private final WikipediaPageRevision revision;
+  private final String baseRevisionId;
+  private final List<String> addedTokens;
+  private final List<String> removedTokens;
+  private final long byteDelta;
+  private final String revertedToRevisionId;
+
+  WikipediaRevisionDiff(WikipediaPageRevision revision, String baseRevisionId, List<String> addedTokens,
+                        List<String> removedTokens, long byteDelta, String revertedToRevisionId) {
+    this.revision = revision;
+    this.baseRevisionId = baseRevisionId;
+    this.addedTokens = addedTokens;
+    this.removedTokens = removedTokens;
+    this.byteDelta = byteDelta;
+    this.revertedToRevisionId = revertedToRevisionId;
+  }
+
+  /**
+   * @return the revision this diff is for
+   */
+  public WikipediaPageRevision getRevision() {
+    return revision;
+  }
+
+  /**
+   * @return the id of the revision this one was compared to, or {@code null} if it was compared to an empty page
+   *         because it is the first revision of its page, or its parent wasn't read just before it
+   */
+  public String getBaseRevisionId() {
+    return baseRevisionId;
+  }
+
+  /**
+   * @return the tokens (or lines) in this revision that weren't in the base revision, in order
+   */
+  public List<String> getAddedTokens() {
+    return addedTokens;
+  }
+
+  /**
+   * @return the tokens (or lines) in the base revision that aren't in this revision, in order
+   */
+  public List<String> getRemovedTokens() {
+    return removedTokens;
+  }
+
+  /**
+   * @return the change in the size of the text, in bytes
+   */
+  public long getByteDelta() {
+    return byteDelta;
+  }
+
+  /**
+   * @return whether this revision restores the text of an earlier revision of the page, other than its base
+   */
+  public boolean isRevert() {
+    return revertedToRevisionId != null;
+  }
+
+  /**
+   * @return the id of the earlier revision whose text this revision restores, or {@code null}
+   */
+  public String getRevertedToRevisionId() {
+    return revertedToRevisionId;
+  }
+}
@@ -0,0 +1,182 @@
+package io.sunrisedata.wikipedia;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the diff between each revision and its parent, for revisions read in dump order (all the revisions of
+ * a page together, oldest first), e.g. by a mapper over {@link WikipediaPageRevisionInputFormat} or a
+ * {@link WikipediaDumpReader}.
+ *
+ * Only the tokens of the previous revision are kept, plus the sha1 of each revision of the current page for
+ * revert detection; both are dropped when a new page starts.
+ *
+ * The diff trims the tokens the two revisions have in common at the start and at the end, and compares what is
+ * left as multisets. This is exact for the common case of a single contiguous edit; when a revision makes
+ * several edits, tokens that moved between them count as unchanged rather than as removed and added. It takes
+ * time linear in the size of the text.
+ */
+public class WikipediaRevisionDiffer {
+
+  /**
+   * What the text is split into before diffing.
+   */
+  public enum Granularity {
+    /**
+     * Lines of wiki markup.
+     */
+    LINE,
+    /**
+     * Runs of letters and digits, and single other non-whitespace characters.
+     */
+    TOKEN
+  }
+
+  private static final String[] NO_TOKENS = new String[0];
+
+  private final Granularity granularity;
+  private String pageId;
+  private String previousRevisionId;
+  private String[] previousTokens = NO_TOKENS;
+  private long previousLength;
+  private final Map<String, String> revisionIdsBySha1 = new HashMap<String, String>();
+
+  public WikipediaRevisionDiffer(Granularity granularity) {
+    this.granularity = granularity;
+  }
+
+  /**
+   * Diffs {@code revision} against the previous revision passed to this method, if that is its parent.
+   *
+   * @param revision the next revision
+   * @return the diff
+   */
+  public WikipediaRevisionDiff diff(WikipediaPageRevision revision) {
+    String revisionPageId = revision.getContainingPage().getPageId();
+    if (pageId == null || !pageId.equals(revisionPageId)) {
+      pageId = revisionPageId;
+      previousRevisionId = null;
+      previousTokens = NO_TOKENS;
+      previousLength = 0;
+      revisionIdsBySha1.clear();
+    }
+
+    String parentId = revision.getParentRevisionId();
+    String baseRevisionId = null;
+    String[] baseTokens = NO_TOKENS;
+    long baseLength = 0;
+    if (parentId != null && parentId.equals(previousRevisionId)) {
+      baseRevisionId = previousRevisionId;
+      baseTokens = previousTokens;
+      baseLength = previousLength;
+    }
+
+    String text = revision.getRawContent();
+    String[] tokens = tokenize(text == null ? "" : text);
+    long length = getLength(revision);
+
+    String revertedTo = null;
+    if (revision.getSha1() != null) {
+      String earlier = revisionIdsBySha1.get(revision.getSha1());
+      if (earlier != null && !earlier.equals(baseRevisionId)) {
+        revertedTo = earlier;
+      }
+      revisionIdsBySha1.put(revision.getSha1(), revision.getRevisionId());
+    }
+
+    WikipediaRevisionDiff diff = diff(revision, baseRevisionId, baseTokens, tokens, length - baseLength,
+        revertedTo);
+
+    previousRevisionId = revision.getRevisionId();
+    previousTokens = tokens;
+    previousLength = length;
+    return diff;
+  }
+
+  private static WikipediaRevisionDiff diff(WikipediaPageRevision revision, String baseRevisionId,
+                                            String[] before, String[] after, long byteDelta, String revertedTo) {
+    int prefix = 0;
+    int max = Math.min(before.length, after.length);
+    while (prefix < max && before[prefix].equals(after[prefix])) {
+      prefix++;
+    }
+    int suffix = 0;
+    max -= prefix;
+    while (suffix < max && before[before.length - 1 - suffix].equals(after[after.length - 1 - suffix])) {
+      suffix++;
+    }
+
+    // count what's left of the base revision, then take away what's left of this one
+    Map<String, int[]> counts = new HashMap<String, int[]>();
+    for (int i = prefix; i < before.length - suffix; i++) {
+      int[] count = counts.get(before[i]);
+      if (count == null) {
+        counts.put(before[i], new int[]{1});
+      } else {
+        count[0]++;
+      }
+    }
+    List<String> added = new ArrayList<String>();
+    for (int i = prefix; i < after.length - suffix; i++) {
+      int[] count = counts.get(after[i]);
+      if (count != null && count[0] > 0) {
+        count[0]--;
+      } else {
+        added.add(after[i]);
+      }
+    }
+    List<String> removed = new ArrayList<String>();
+    for (int i = prefix; i < before.length - suffix; i++) {
+      int[] count = counts.get(before[i]);
+      if (count[0] > 0) {
+        count[0]--;
+        removed.add(before[i]);
+      }
+    }
+
+    return new WikipediaRevisionDiff(revision, baseRevisionId, added, removed, byteDelta, revertedTo);
+  }
+
+  /**
+   * @return the declared length of the text, or its UTF-8 length if none was declared
+   */
+  private static long getLength(WikipediaPageRevision revision) {
+    if (revision.getDeclaredContentLength() >= 0) {
+      return revision.getDeclaredContentLength();
+    }
+    String text = revision.getRawContent();
+    return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private String[] tokenize(String text) {
+    if (text.isEmpty()) {
+      return NO_TOKENS;
+    }
+    if (granularity == Granularity.LINE) {
+      return text.split("\n", -1);
+    }
+    List<String> tokens = new ArrayList<String>();
+    int i = 0;
+    int n = text.length();
+    while (i < n) {
+      int c = text.codePointAt(i);
+      if (Character.isWhitespace(c)) {
+        i += Character.charCount(c);
+      } else if (Character.isLetterOrDigit(c)) {
+        int start = i;
+        do {
+          i += Character.charCount(c);
+        } while (i < n && Character.isLetterOrDigit(c = text.codePointAt(i)));
+        tokens.add(text.substring(start, i));
+      } else {
+        int start = i;
+        i += Character.charCount(c);
+        tokens.add(text.substring(start, i));
+      }
+    }
+    return tokens.toArray(new String[tokens.size()]);
+  }
+}
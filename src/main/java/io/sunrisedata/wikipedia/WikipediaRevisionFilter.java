@@ -0,0 +1,141 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Selects the pages and revisions returned by {@link WikipediaRevisionScanner}, and which of their fields are
+ * kept, from the settings made with {@link WikipediaPageRevisionInputFormat}'s setters.
+ *
+ * Pages are selected as soon as their header is parsed, and the rest of a page that isn't selected is skipped
+ * without parsing its revisions. Samples are decided by a hash of the page or revision id, so the same pages and
+ * revisions are sampled in every run and in every dump they are in.
+ */
+class WikipediaRevisionFilter {
+  private final Set<String> namespaces;
+  private final long minPageId;
+  private final long maxPageId;
+  private final String fromTimestamp;
+  private final String toTimestamp;
+  private final boolean includeText;
+  private final PageAllowlist allowlist;
+  private final double pageSample;
+  private final double revisionSample;
+  private final long sampleSeed;
+  private final int firstRevisions;
+  private final Set<String> models;
+
+  WikipediaRevisionFilter(Configuration conf) throws IOException {
+    String[] ns = conf.getTrimmedStrings(WikipediaPageRevisionInputFormat.NAMESPACES);
+    this.namespaces = ns.length == 0 ? null : new HashSet<String>(Arrays.asList(ns));
+    this.minPageId = conf.getLong(WikipediaPageRevisionInputFormat.PAGE_ID_MIN, Long.MIN_VALUE);
+    this.maxPageId = conf.getLong(WikipediaPageRevisionInputFormat.PAGE_ID_MAX, Long.MAX_VALUE);
+    this.fromTimestamp = conf.get(WikipediaPageRevisionInputFormat.TIMESTAMP_FROM);
+    this.toTimestamp = conf.get(WikipediaPageRevisionInputFormat.TIMESTAMP_TO);
+    this.includeText = conf.getBoolean(WikipediaPageRevisionInputFormat.INCLUDE_TEXT, true);
+    this.allowlist = PageAllowlist.get(conf);
+    this.pageSample = conf.getDouble(WikipediaPageRevisionInputFormat.SAMPLE_PAGES, 1.0);
+    this.revisionSample = conf.getDouble(WikipediaPageRevisionInputFormat.SAMPLE_REVISIONS, 1.0);
+    this.sampleSeed = conf.getLong(WikipediaPageRevisionInputFormat.SAMPLE_SEED, 0L);
+    this.firstRevisions = conf.getInt(WikipediaPageRevisionInputFormat.SAMPLE_FIRST_REVISIONS, Integer.MAX_VALUE);
+    String[] m = conf.getTrimmedStrings(WikipediaPageRevisionInputFormat.MODELS);
+    this.models = m.length == 0 ? null : new HashSet<String>(Arrays.asList(m));
+  }
+
+  /**
+   * @return whether the revisions of {@code page} should be read
+   */
+  boolean acceptPage(WikipediaPage page) {
+    if (namespaces != null && !namespaces.contains(page.getNamespace())) {
+      return false;
+    }
+    if (allowlist != null && !allowlist.acceptPage(page)) {
+      return false;
+    }
+    if (pageSample < 1.0 && !sampled(page.getPageId(), pageSample)) {
+      return false;
+    }
+    if (minPageId != Long.MIN_VALUE || maxPageId != Long.MAX_VALUE) {
+      long id;
+      try {
+        id = Long.parseLong(page.getPageId());
+      } catch (NumberFormatException e) {
+        return false;
+      }
+      return id >= minPageId && id <= maxPageId;
+    }
+    return true;
+  }
+
+  /**
+   * @return whether {@code revision} should be returned
+   */
+  boolean acceptRevision(WikipediaPageRevision revision) {
+    return acceptTimestamp(revision.getTimestamp());
+  }
+
+  /**
+   * @return whether the revision with the given id is in the revision sample, which can be decided before the
+   *         revision is parsed
+   */
+  boolean acceptRevisionId(String revisionId) {
+    return revisionSample >= 1.0 || sampled(revisionId, revisionSample);
+  }
+
+  /**
+   * @return whether revisions are selected by their content model, so it has to be looked up before they are parsed
+   */
+  boolean filtersModels() {
+    return models != null;
+  }
+
+  /**
+   * @return whether a revision with the content model {@code model}, or none, should be read
+   */
+  boolean acceptModel(String model) {
+    return models == null || models.contains(model == null ? WikipediaPageRevision.MODEL_WIKITEXT : model);
+  }
+
+  /**
+   * @return how many revisions to read at most from the start of each page
+   */
+  int getFirstRevisions() {
+    return firstRevisions;
+  }
+
+  private boolean sampled(String id, double fraction) {
+    long value;
+    try {
+      value = Long.parseLong(id);
+    } catch (NumberFormatException e) {
+      // sample what isn't a number by its text, which is just as stable
+      value = id == null ? 0 : Hashing.hash(id);
+    }
+    return Hashing.sampled(value, sampleSeed, fraction);
+  }
+
+  /**
+   * @return whether a revision made at {@code timestamp} should be returned
+   */
+  boolean acceptTimestamp(String timestamp) {
+    // dump timestamps are all in the same ISO 8601 format, so they compare as strings
+    if (fromTimestamp != null && (timestamp == null || timestamp.compareTo(fromTimestamp) < 0)) {
+      return false;
+    }
+    if (toTimestamp != null && (timestamp == null || timestamp.compareTo(toTimestamp) >= 0)) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return whether the text of revisions should be kept
+   */
+  boolean includeText() {
+    return includeText;
+  }
+}
@@ -0,0 +1,445 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Merges the revisions of dumps, which are ordered by page, into one stream ordered by timestamp, e.g. for
+ * per-minute edit activity.
+ *
+ * Revisions are added from any number of dumps (or parts of dumps, or other sources of revisions), and collected
+ * into runs of at most {@code runSize} revisions. Each run is sorted by {@linkplain
+ * WikipediaPageRevision#getTimestampMillis() timestamp} and, unless it is the last, spilled to a file in a
+ * temporary directory. Iterating merges the runs with a heap, so memory holds one run plus one revision and a
+ * read buffer per file. When there are more than {@code fanIn} files, they are first merged into fewer, longer
+ * ones.
+ *
+ * <pre>
+ * try (WikipediaRevisionMerger merger = new WikipediaRevisionMerger(tmpDir)) {
+ *   for (Path dump : dumps) {
+ *     merger.add(dump, conf);
+ *   }
+ *   while (merger.hasNext()) {
+ *     WikipediaPageRevision revision = merger.next();
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * Revisions with the same timestamp keep the order they were added in, and revisions without a timestamp come
+ * first. Revisions read back from a run file have a page object of their own, with the site info and magic words
+ * of the page they were added with. I/O errors while iterating are thrown as {@link UncheckedIOException}.
+ */
+public class WikipediaRevisionMerger implements Iterator<WikipediaPageRevision>, Closeable {
+  public static final int DEFAULT_RUN_SIZE = 100000;
+  public static final int DEFAULT_FAN_IN = 64;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry a, Entry b) {
+      int c = Long.compare(a.millis, b.millis);
+      return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+    }
+  };
+
+  private static final Comparator<Run> RUN_ORDER = new Comparator<Run>() {
+    @Override
+    public int compare(Run a, Run b) {
+      return ORDER.compare(a.head, b.head);
+    }
+  };
+
+  private final File tmpDir;
+  private final int runSize;
+  private final int fanIn;
+  private final List<Entry> buffer = new ArrayList<Entry>();
+  private final List<File> runFiles = new ArrayList<File>();
+  /**
+   * The site info and magic words of the pages in the run files, one page object per combination.
+   */
+  private final List<WikipediaPage> pageContexts = new ArrayList<WikipediaPage>();
+  private long sequence;
+  private PriorityQueue<Run> heap;
+  private final List<Run> openRuns = new ArrayList<Run>();
+  private int spills;
+
+  /**
+   * @param tmpDir the directory for the run files
+   */
+  public WikipediaRevisionMerger(File tmpDir) {
+    this(tmpDir, DEFAULT_RUN_SIZE, DEFAULT_FAN_IN);
+  }
+
+  /**
+   * @param tmpDir the directory for the run files
+   * @param runSize the number of revisions kept in memory before they are sorted and spilled to a file
+   * @param fanIn the number of files merged at once
+   */
+  public WikipediaRevisionMerger(File tmpDir, int runSize, int fanIn) {
+    if (runSize < 1 || fanIn < 2) {
+      throw new IllegalArgumentException("Run size must be positive and fan-in at least 2");
+    }
+    this.tmpDir = tmpDir;
+    this.runSize = runSize;
+    this.fanIn = fanIn;
+  }
+
+  /**
+   * Adds the revisions of a dump on local disk.
+   *
+   * @param dump the dump
+   * @param conf settings made with {@link WikipediaPageRevisionInputFormat}'s setters, e.g. to select pages
+   * @see WikipediaDumpReader#open(Path, Configuration)
+   */
+  public void add(Path dump, Configuration conf) throws IOException {
+    try (WikipediaDumpReader reader = WikipediaDumpReader.open(dump, conf)) {
+      add(reader);
+    }
+  }
+
+  /**
+   * Adds revisions, in any order. They may not be added once iterating has started.
+   *
+   * @param revisions the revisions
+   */
+  public void add(Iterator<WikipediaPageRevision> revisions) throws IOException {
+    while (revisions.hasNext()) {
+      add(revisions.next());
+    }
+  }
+
+  /**
+   * Adds a revision. Revisions may not be added once iterating has started.
+   *
+   * @param revision the revision
+   */
+  public void add(WikipediaPageRevision revision) throws IOException {
+    if (heap != null) {
+      throw new IllegalStateException("Revisions can't be added while merging");
+    }
+    buffer.add(new Entry(revision.getTimestampMillis(), sequence++, revision));
+    if (buffer.size() >= runSize) {
+      spill();
+    }
+  }
+
+  /**
+   * @return the number of runs spilled to files so far, including the files of intermediate merges
+   */
+  public int getSpillCount() {
+    return spills;
+  }
+
+  /**
+   * Sorts the buffered revisions and writes them to a new run file.
+   */
+  private void spill() throws IOException {
+    Collections.sort(buffer, ORDER);
+    final Iterator<Entry> sorted = buffer.iterator();
+    runFiles.add(writeRun(new Run() {
+      @Override
+      Entry read() {
+        return sorted.hasNext() ? sorted.next() : null;
+      }
+    }));
+    buffer.clear();
+  }
+
+  /**
+   * Writes the entries of a run, in order, to a new file.
+   */
+  private File writeRun(Run run) throws IOException {
+    File file = File.createTempFile("revisions-", ".run", tmpDir);
+    file.deleteOnExit();
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+      WikipediaPage page = null;
+      for (Entry entry = run.read(); entry != null; entry = run.read()) {
+        out.writeBoolean(true);
+        out.writeLong(entry.millis);
+        WritableUtils.writeVLong(out, entry.sequence);
+        WikipediaPage revisionPage = entry.revision.getContainingPage();
+        // the page is only written again when it changes
+        out.writeBoolean(revisionPage != page);
+        if (revisionPage != page) {
+          page = revisionPage;
+          WritableUtils.writeVInt(out, getPageContext(page));
+          RevisionCache.writeString(out, page.getInputName());
+          page.writeCompact(out);
+        }
+        entry.revision.writeCompact(out);
+      }
+      out.writeBoolean(false);
+    }
+    spills++;
+    return file;
+  }
+
+  /**
+   * @return the index of the page context with the site info and magic words of {@code page}
+   */
+  private int getPageContext(WikipediaPage page) {
+    for (int i = 0; i < pageContexts.size(); i++) {
+      WikipediaPage context = pageContexts.get(i);
+      if (context.getSiteInfo() == page.getSiteInfo() && context.getMagicWords() == page.getMagicWords()) {
+        return i;
+      }
+    }
+    WikipediaPage context = new WikipediaPage();
+    context.setSiteInfo(page.getSiteInfo());
+    context.setMagicWords(page.getMagicWords());
+    pageContexts.add(context);
+    return pageContexts.size() - 1;
+  }
+
+  /**
+   * Starts merging: merges the run files down to at most {@code fanIn}, and puts the first revision of each run,
+   * including the one in memory, on the heap.
+   */
+  private void startMerge() throws IOException {
+    Collections.sort(buffer, ORDER);
+    heap = new PriorityQueue<Run>(fanIn + 1, RUN_ORDER);
+    while (runFiles.size() > fanIn) {
+      List<File> merged = new ArrayList<File>(runFiles.subList(0, fanIn));
+      runFiles.subList(0, fanIn).clear();
+      List<Run> runs = new ArrayList<Run>();
+      try {
+        for (File file : merged) {
+          runs.add(new FileRun(file));
+        }
+        runFiles.add(writeRun(new MergedRun(runs)));
+      } finally {
+        closeRuns(runs);
+      }
+      for (File file : merged) {
+        file.delete();
+      }
+    }
+    for (File file : runFiles) {
+      openRuns.add(new FileRun(file));
+    }
+    final Iterator<Entry> sorted = buffer.iterator();
+    openRuns.add(new Run() {
+      @Override
+      Entry read() {
+        return sorted.hasNext() ? sorted.next() : null;
+      }
+    });
+    for (Run run : openRuns) {
+      if (run.advance()) {
+        heap.add(run);
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    try {
+      if (heap == null) {
+        startMerge();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return !heap.isEmpty();
+  }
+
+  @Override
+  public WikipediaPageRevision next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Run run = heap.poll();
+    WikipediaPageRevision revision = run.head.revision;
+    try {
+      if (run.advance()) {
+        heap.add(run);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return revision;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Returns the merged revisions. Closing the stream closes the merger.
+   */
+  public Stream<WikipediaPageRevision> stream() {
+    Spliterator<WikipediaPageRevision> spliterator = Spliterators.spliteratorUnknownSize(this,
+        Spliterator.ORDERED | Spliterator.NONNULL);
+    return StreamSupport.stream(spliterator, false).onClose(() -> {
+      try {
+        close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Deletes the run files.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      closeRuns(openRuns);
+    } finally {
+      openRuns.clear();
+      for (File file : runFiles) {
+        file.delete();
+      }
+      runFiles.clear();
+      buffer.clear();
+    }
+  }
+
+  private static void closeRuns(List<Run> runs) throws IOException {
+    IOException failure = null;
+    for (Run run : runs) {
+      try {
+        run.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * A revision with its sort key.
+   */
+  private static final class Entry {
+    final long millis;
+    final long sequence;
+    final WikipediaPageRevision revision;
+
+    Entry(long millis, long sequence, WikipediaPageRevision revision) {
+      this.millis = millis;
+      this.sequence = sequence;
+      this.revision = revision;
+    }
+  }
+
+  /**
+   * Sorted entries, read one at a time.
+   */
+  private abstract static class Run implements Closeable {
+    Entry head;
+
+    /**
+     * @return the next entry, or {@code null} at the end of the run
+     */
+    abstract Entry read() throws IOException;
+
+    /**
+     * Moves {@link #head} to the next entry.
+     *
+     * @return {@code false} at the end of the run
+     */
+    boolean advance() throws IOException {
+      head = read();
+      return head != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+
+  /**
+   * The entries of a run file.
+   */
+  private final class FileRun extends Run {
+    private final DataInputStream in;
+    private WikipediaPage page;
+
+    FileRun(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+    }
+
+    @Override
+    Entry read() throws IOException {
+      if (!in.readBoolean()) {
+        return null;
+      }
+      long millis = in.readLong();
+      long sequence = WritableUtils.readVLong(in);
+      if (in.readBoolean()) {
+        WikipediaPage context = pageContexts.get(WritableUtils.readVInt(in));
+        page = new WikipediaPage();
+        page.setInputName(RevisionCache.readString(in));
+        page.readCompact(in);
+        page.setSiteInfo(context.getSiteInfo());
+        page.setMagicWords(context.getMagicWords());
+      }
+      WikipediaPageRevision revision = new WikipediaPageRevision(page);
+      revision.readCompact(in);
+      return new Entry(millis, sequence, revision);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * The entries of several runs, merged.
+   */
+  private static final class MergedRun extends Run {
+    private final PriorityQueue<Run> runs;
+
+    MergedRun(List<Run> runs) throws IOException {
+      this.runs = new PriorityQueue<Run>(runs.size(), RUN_ORDER);
+      for (Run run : runs) {
+        if (run.advance()) {
+          this.runs.add(run);
+        }
+      }
+    }
+
+    @Override
+    Entry read() throws IOException {
+      Run run = runs.poll();
+      if (run == null) {
+        return null;
+      }
+      Entry entry = run.head;
+      if (run.advance()) {
+        runs.add(run);
+      }
+      return entry;
+    }
+  }
+}
@@ -0,0 +1,586 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds the revisions of the pages that start within a split of a dump, and parses them.
+ *
+ * This is the part of {@link WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader} that doesn't
+ * depend on Hadoop's MapReduce runtime, so it can also be used over local files by {@link WikipediaDumpReader}.
+ *
+ * In latest revision mode, only the latest revision of each page (within the timestamp range) is parsed and
+ * returned, once the end of the page is reached. The other revisions are only scanned for their timestamp.
+ *
+ * In robust mode, a page or revision that is cut off by the start of another page, or that doesn't parse, is
+ * skipped and reading resumes at the next element; the skipped ranges are counted and can be recorded in a
+ * {@link Quarantine}. Otherwise such elements are logged, and a cut-off element ends the split.
+ *
+ * @see WikipediaPageRevisionInputFormat for how pages are assigned to splits
+ */
+class WikipediaRevisionScanner implements Closeable {
+  private static final Logger LOG = Logger.getLogger(WikipediaRevisionScanner.class);
+
+  private static final byte[] NO_BYTES = new byte[0];
+  private static final byte[] SITEINFO_END_TAG = "</siteinfo>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] ROOT_END_TAG = "</mediawiki>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] PAGE_START_TAG = "<page>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] PAGE_END_TAG = "</page>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] REVISION_START_TAG = "<revision>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] REVISION_END_TAG = "</revision>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] ID_START_TAG = "<id>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] ID_END_TAG = "</id>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TIMESTAMP_START_TAG = "<timestamp>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TIMESTAMP_END_TAG = "</timestamp>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] MODEL_START_TAG = "<model>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] MODEL_END_TAG = "</model>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[][] REVISION_SEARCH_TAGS = {REVISION_START_TAG, PAGE_END_TAG};
+  private static final byte[][] REVISION_END_TAGS = {REVISION_END_TAG};
+  private static final byte[][] PAGE_SKIP_TAGS = {PAGE_END_TAG};
+  // in robust mode, a page start tag anywhere means the element before it is broken
+  private static final byte[][] ROBUST_REVISION_SEARCH_TAGS = {REVISION_START_TAG, PAGE_END_TAG, PAGE_START_TAG};
+  private static final byte[][] ROBUST_REVISION_END_TAGS = {REVISION_END_TAG, REVISION_START_TAG, PAGE_START_TAG};
+  private static final byte[][] ROBUST_PAGE_SKIP_TAGS = {PAGE_END_TAG, PAGE_START_TAG};
+  private static final byte[][] SITEINFO_SEARCH_TAGS = {SITEINFO_END_TAG, PAGE_START_TAG};
+
+  private DumpInput in;
+  private boolean inClosed;
+  /**
+   * Name of the input, for log messages and {@link WikipediaPage#getInputName()}.
+   */
+  private String name;
+  private final WikipediaRevisionFilter filter;
+  private final BoundedStringInterner interner;
+  private final boolean robust;
+  /**
+   * The language set in the configuration, or {@code null} to go by the site info.
+   */
+  private final String language;
+  private final boolean latestOnly;
+  private final WikipediaSignatureHasher signatureHasher;
+  private WikipediaSiteInfo siteInfo;
+  private WikipediaMagicWords magicWords;
+  private Quarantine quarantine;
+  private long corruptRecords;
+
+  // keep track of state
+  private boolean inPage = false;
+  private WikipediaPage page;
+  private WikipediaPageRevision value;
+  private long pageStartPos;
+  /**
+   * Position just past the last complete element of the current page.
+   */
+  private long pageTailPos;
+  private long revisionStartPos;
+  // the compressed blocks of the positions above, see DumpInput.getBlockPos()
+  private long pageStartBlock;
+  private long pageTailBlock;
+  private long revisionStartBlock;
+  private int pageRevisions;
+
+  // in latest revision mode, the latest revision of the current page so far
+  private ByteBuffer candidate;
+  private boolean candidateShareable;
+  private byte[] candidateBytes = new byte[0];
+  private String candidateTimestamp;
+  private long candidateStartPos;
+  private long candidateStartBlock;
+
+  /**
+   * @param in the input
+   * @param name name of the input, for log messages
+   * @param conf settings made with {@link WikipediaPageRevisionInputFormat}'s setters
+   * @param siteInfo the site info of the dump, or {@code null} if not known (yet)
+   */
+  WikipediaRevisionScanner(DumpInput in, String name, Configuration conf, WikipediaSiteInfo siteInfo)
+      throws IOException {
+    this.in = in;
+    this.name = name;
+    this.filter = new WikipediaRevisionFilter(conf);
+    this.interner = conf.getBoolean(WikipediaPageRevisionInputFormat.INTERN_STRINGS, false)
+        ? new BoundedStringInterner(conf.getInt(WikipediaPageRevisionInputFormat.INTERN_TABLE_SIZE,
+        WikipediaPageRevisionInputFormat.DEFAULT_INTERN_TABLE_SIZE))
+        : null;
+    this.robust = conf.getBoolean(WikipediaPageRevisionInputFormat.ROBUST, false);
+    this.language = conf.get(WikipediaPageRevisionInputFormat.LANGUAGE);
+    this.latestOnly = conf.getBoolean(WikipediaPageRevisionInputFormat.LATEST_REVISION_ONLY, false);
+    int signatureHashes = conf.getInt(WikipediaPageRevisionInputFormat.SIGNATURE_HASHES, 0);
+    this.signatureHasher = signatureHashes > 0
+        ? new WikipediaSignatureHasher(signatureHashes,
+        conf.getInt(WikipediaPageRevisionInputFormat.SIGNATURE_SHINGLE_SIZE,
+            WikipediaSignatureHasher.DEFAULT_SHINGLE_SIZE),
+        conf.getLong(WikipediaPageRevisionInputFormat.SIGNATURE_SEED, 0L))
+        : null;
+    setSiteInfo(siteInfo);
+  }
+
+  /**
+   * Moves the scanner on to another input, closing the current one. The settings, the allowlist and the buffers
+   * are kept, so reading many small inputs doesn't pay for them again.
+   *
+   * @param in the input
+   * @param name name of the input
+   * @param siteInfo the site info of the dump, or {@code null} if not known (yet)
+   */
+  void reset(DumpInput in, String name, WikipediaSiteInfo siteInfo) throws IOException {
+    closeInput();
+    this.in = in;
+    inClosed = false;
+    this.name = name;
+    inPage = false;
+    page = null;
+    value = null;
+    pageRevisions = 0;
+    candidate = null;
+    setSiteInfo(siteInfo);
+  }
+
+  private void setSiteInfo(WikipediaSiteInfo siteInfo) {
+    this.siteInfo = siteInfo;
+    this.magicWords = siteInfo != null
+        ? WikipediaMagicWords.forSiteInfo(siteInfo, language) : WikipediaMagicWords.forLanguage(language);
+  }
+
+  /**
+   * Reads the site info at the start of an input that is read from its start, before any revisions.
+   */
+  void readHeader() throws IOException {
+    in.startBuffer(NO_BYTES);
+    switch (in.readUntilMatch(SITEINFO_SEARCH_TAGS, true)) {
+      case 0:
+        setSiteInfo(parseSiteInfo(in.getBuffer(0), name));
+        break;
+      case 1: // a dump without site info
+        startPage();
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Reads the site info at the start of an input.
+   *
+   * @param in the input, at its start
+   * @param name name of the input, for log messages
+   * @return the site info, or {@code null} if the dump has none
+   */
+  static WikipediaSiteInfo readSiteInfo(DumpInput in, String name) throws IOException {
+    in.startBuffer(NO_BYTES);
+    if (in.readUntilMatch(SITEINFO_SEARCH_TAGS, true) != 0) {
+      return null;
+    }
+    return parseSiteInfo(in.getBuffer(0), name);
+  }
+
+  private static WikipediaSiteInfo parseSiteInfo(ByteBuffer header, String name) throws IOException {
+    WikipediaSiteInfo siteInfo = new WikipediaSiteInfo();
+    siteInfo.setHeaderXml(StandardCharsets.UTF_8.decode(header.duplicate()).toString());
+    try {
+      // the header is the root start tag and the site info; close the root so it parses
+      siteInfo.readFromXml(new SequenceInputStream(new ByteBufferInputStream(header),
+          new ByteArrayInputStream(ROOT_END_TAG)));
+    } catch (ParserConfigurationException e) {
+      LOG.error("Error reading site info of " + name, e);
+      return null;
+    } catch (SAXException e) {
+      LOG.error("Error reading site info of " + name, e);
+      return null;
+    }
+    return siteInfo;
+  }
+
+  /**
+   * @return the site info of the dump, or {@code null} if it isn't known
+   */
+  WikipediaSiteInfo getSiteInfo() {
+    return siteInfo;
+  }
+
+  /**
+   * Reads the next revision.
+   *
+   * @return {@code true} if a revision was read
+   * @throws IOException
+   */
+  boolean next() throws IOException {
+    boolean atRevision = false;
+    while (true) {
+      // find page start if we're not in one
+      if (!inPage) {
+        in.clearBuffer();
+        if (in.readUntilMatch(PAGE_START_TAG, false)) {
+          startPage();
+        } else {
+          LOG.debug("No page start tag found within block");
+          return false;
+        }
+      }
+
+      // look for either a revision start tag, or a page end tag, or in robust mode the start of another page
+      int match = atRevision ? 0 : in.readUntilMatch(robust ? ROBUST_REVISION_SEARCH_TAGS : REVISION_SEARCH_TAGS,
+          true);
+      atRevision = false;
+      switch (match) {
+        case 0: // revision
+          if (page == null) {
+            page = readPage();
+            if (page == null || !filter.acceptPage(page)) {
+              if (!skipPage()) {
+                return false;
+              }
+              break;
+            }
+          }
+          if (++pageRevisions > filter.getFirstRevisions()) {
+            // in latest revision mode, the latest of the first revisions
+            boolean read = candidate != null && readCandidate();
+            if (!skipPage()) {
+              return read;
+            }
+            if (read) {
+              return true;
+            }
+            break;
+          }
+          // find the whole xml of the revision
+          revisionStartPos = in.getPos() - REVISION_START_TAG.length;
+          revisionStartBlock = in.getBlockPos();
+          in.startBuffer(REVISION_START_TAG);
+          switch (in.readUntilMatch(robust ? ROBUST_REVISION_END_TAGS : REVISION_END_TAGS, true)) {
+            case 0:
+              pageTailPos = in.getPos();
+              pageTailBlock = in.getBlockPos();
+              if (!filter.acceptRevisionId(readElementText(in.getBuffer(0), ID_START_TAG, ID_END_TAG))) {
+                break;
+              }
+              if (filter.filtersModels() && !filter.acceptModel(
+                  readElementText(in.getBuffer(0), MODEL_START_TAG, MODEL_END_TAG))) {
+                break;
+              }
+              if (latestOnly) {
+                keepIfLatest();
+                break;
+              }
+              if (readRevision(in.getBuffer(0), in.isBufferShareable())) {
+                return true;
+              }
+              break;
+            case 1: // the next revision starts before this one ended
+              pageTailPos = in.getPos() - REVISION_START_TAG.length;
+              pageTailBlock = in.getBlockPos();
+              quarantine(revisionStartPos, revisionStartBlock, pageTailPos, "no end tag for revision");
+              atRevision = true;
+              break;
+            case 2: // the next page starts before this revision ended
+              quarantine(revisionStartPos, revisionStartBlock, in.getPos() - PAGE_START_TAG.length,
+                  "no end tag for revision");
+              if (!resyncAtPage()) {
+                return false;
+              }
+              break;
+            default:
+              // didn't find revision end. that's weird. log it and run away
+              LOG.error("no end tag for revision starting at " + describe(revisionStartPos, revisionStartBlock)
+                  + " in " + name);
+              if (robust) {
+                quarantine(revisionStartPos, revisionStartBlock, in.getPos(), "no end tag for revision");
+              }
+              return false;
+          }
+          break;
+        case 1: // end page
+          // no more revisions for this page so go find start of next page.
+          inPage = false;
+          if (candidate != null && readCandidate()) {
+            page = null;
+            return true;
+          }
+          page = null;
+          break;
+        case 2: // the next page starts before this one ended
+          quarantine(pageTailPos, pageTailBlock, in.getPos() - PAGE_START_TAG.length, "no end tag for page");
+          if (!resyncAtPage()) {
+            return false;
+          }
+          break;
+        default:
+          // didn't find revision start OR page end. that's weird. log it and run away
+          LOG.error("no end tag for page starting at " + describe(pageStartPos, pageStartBlock) + " in " + name);
+          if (robust) {
+            quarantine(pageTailPos, pageTailBlock, in.getPos(), "no end tag for page");
+          }
+          return false;
+      }
+    }
+  }
+
+  /**
+   * Starts a page whose start tag has just been read.
+   */
+  private void startPage() throws IOException {
+    pageStartPos = in.getPos() - PAGE_START_TAG.length;
+    pageTailPos = pageStartPos;
+    pageStartBlock = in.getBlockPos();
+    pageTailBlock = pageStartBlock;
+    inPage = true;
+    page = null;
+    pageRevisions = 0;
+    candidate = null;
+    in.startBuffer(PAGE_START_TAG);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Page start is at " + describe(pageStartPos, pageStartBlock));
+    }
+  }
+
+  /**
+   * Starts the page whose start tag has just been read in the middle of a corrupt one, if it belongs to the split.
+   *
+   * @return {@code false} if the page starts after the end of the split
+   */
+  private boolean resyncAtPage() throws IOException {
+    if (!in.isBeforeEnd(in.getPos() - PAGE_START_TAG.length)) {
+      inPage = false;
+      page = null;
+      return false;
+    }
+    startPage();
+    return true;
+  }
+
+  /**
+   * Parses the page header in the buffer, up to the start tag of its first revision.
+   *
+   * @return the page, or {@code null} if it is corrupt and the scanner is in robust mode
+   */
+  private WikipediaPage readPage() throws IOException {
+    WikipediaPage page = new WikipediaPage();
+    try {
+      page.readFromXml(in.getBuffer(REVISION_START_TAG.length));
+    } catch (SAXException | RuntimeException e) {
+      if (robust) {
+        quarantine(pageStartPos, pageStartBlock, in.getPos() - REVISION_START_TAG.length,
+            "unparseable page: " + e);
+        return null;
+      }
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      LOG.error("Error reading WikipediaPage", e);
+    }
+    page.setSiteInfo(siteInfo);
+    page.setMagicWords(magicWords);
+    page.setInputName(name);
+    return page;
+  }
+
+  /**
+   * Parses a revision into {@link #value}, and checks it against the filter.
+   *
+   * @param xml the xml of the revision
+   * @param shareable whether the revision may keep a reference to {@code xml}
+   * @return whether the revision is to be returned
+   */
+  private boolean readRevision(ByteBuffer xml, boolean shareable) throws IOException {
+    WikipediaPageRevision revision = new WikipediaPageRevision(page);
+    try {
+      revision.readFromXml(xml, shareable);
+    } catch (SAXException | RuntimeException e) {
+      if (robust) {
+        quarantine(revisionStartPos, revisionStartBlock, revisionStartPos + xml.remaining(),
+            "unparseable revision: " + e);
+        return false;
+      }
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      LOG.error("Error reading WikipediaPageRevision in page " + page.getPageId(), e);
+    }
+    if (!filter.acceptRevision(revision)) {
+      return false;
+    }
+    if (signatureHasher != null) {
+      revision.setSignature(signatureHasher.hash(revision));
+    }
+    if (!filter.includeText()) {
+      revision.discardContent();
+    }
+    if (interner != null) {
+      revision.internStrings(interner);
+    }
+    value = revision;
+    return true;
+  }
+
+  /**
+   * Parses the latest revision of the page, kept in latest revision mode.
+   *
+   * @return whether the revision is to be returned
+   */
+  private boolean readCandidate() throws IOException {
+    revisionStartPos = candidateStartPos;
+    revisionStartBlock = candidateStartBlock;
+    boolean read = readRevision(candidate, candidateShareable);
+    candidate = null;
+    return read;
+  }
+
+  /**
+   * In latest revision mode, keeps the revision in the buffer if it is the latest one of the page so far that is
+   * within the timestamp range. Only its timestamp is read; the rest is parsed if it is still the latest at the
+   * end of the page.
+   */
+  private void keepIfLatest() {
+    ByteBuffer revision = in.getBuffer(0);
+    String timestamp = readElementText(revision, TIMESTAMP_START_TAG, TIMESTAMP_END_TAG);
+    if (!filter.acceptTimestamp(timestamp)) {
+      return;
+    }
+    if (candidate != null && timestamp != null && candidateTimestamp != null
+        && timestamp.compareTo(candidateTimestamp) < 0) {
+      return;
+    }
+    if (in.isBufferShareable()) {
+      candidate = revision;
+      candidateShareable = true;
+    } else {
+      // the buffer is reused for the next revision, so keep a copy in a buffer of our own
+      if (candidateBytes.length < revision.remaining()) {
+        candidateBytes = new byte[Math.max(revision.remaining(), candidateBytes.length * 2)];
+      }
+      int length = revision.remaining();
+      revision.get(candidateBytes, 0, length);
+      candidate = ByteBuffer.wrap(candidateBytes, 0, length);
+      candidateShareable = false;
+    }
+    candidateTimestamp = timestamp;
+    candidateStartPos = revisionStartPos;
+    candidateStartBlock = revisionStartBlock;
+  }
+
+  /**
+   * @return the text of the first element with the given tags in {@code xml}, e.g. the id or timestamp of a
+   *         revision, or {@code null} if there is none
+   */
+  private static String readElementText(ByteBuffer xml, byte[] startTag, byte[] endTag) {
+    int limit = xml.limit();
+    int start = XmlBytes.indexOf(xml, xml.position(), limit, startTag);
+    if (start < 0) {
+      return null;
+    }
+    start += startTag.length;
+    int end = XmlBytes.indexOf(xml, start, limit, endTag);
+    return end < 0 ? null : XmlBytes.decode(xml, start, end).trim();
+  }
+
+  /**
+   * Skips the rest of the current page.
+   *
+   * @return {@code false} if there is nothing more to read in the split
+   */
+  private boolean skipPage() throws IOException {
+    in.clearBuffer();
+    switch (in.skipUntilMatch(robust ? ROBUST_PAGE_SKIP_TAGS : PAGE_SKIP_TAGS)) {
+      case 0:
+        inPage = false;
+        page = null;
+        return true;
+      case 1: // the next page starts before this one ended
+        quarantine(pageTailPos, pageTailBlock, in.getPos() - PAGE_START_TAG.length, "no end tag for page");
+        return resyncAtPage();
+      default:
+        LOG.error("no end tag for page starting at " + describe(pageStartPos, pageStartBlock) + " in " + name);
+        inPage = false;
+        page = null;
+        return true;
+    }
+  }
+
+  /**
+   * Records a corrupt range of the input that was skipped. In a split of a compressed file, where uncompressed
+   * positions aren't offsets in the file, the range is that of the compressed blocks it starts and ends in.
+   *
+   * @param startBlock the compressed block {@code start} is in, or -1
+   */
+  private void quarantine(long start, long startBlock, long end, String reason) throws IOException {
+    corruptRecords++;
+    long endBlock = in.getBlockPos();
+    boolean compressedBlocks = startBlock >= 0 && endBlock >= 0;
+    if (compressedBlocks) {
+      start = startBlock;
+      end = endBlock;
+    }
+    LOG.warn("skipping corrupt record at " + (compressedBlocks ? "compressed blocks " : "positions ") + start
+        + " to " + end + " in " + name + ": " + reason);
+    if (quarantine != null) {
+      quarantine.add(name, start, end, compressedBlocks, reason);
+    }
+  }
+
+  /**
+   * @return a position for log messages: the compressed block, if there is one, or the uncompressed offset
+   */
+  private static String describe(long pos, long block) {
+    return block >= 0 ? "compressed block " + block : "position " + pos;
+  }
+
+  /**
+   * Sets where the corrupt records skipped in robust mode are recorded. The quarantine is closed with the scanner.
+   */
+  void setQuarantine(Quarantine quarantine) {
+    this.quarantine = quarantine;
+  }
+
+  /**
+   * @return the number of corrupt records skipped so far
+   */
+  long getCorruptRecordCount() {
+    return corruptRecords;
+  }
+
+  /**
+   * @return the revision read by the last call to {@link #next()}
+   */
+  WikipediaPageRevision getCurrentValue() {
+    return value;
+  }
+
+  /**
+   * @return a number between 0.0 and 1.0 that is the fraction of the split read
+   */
+  float getProgress() throws IOException {
+    return in.getProgress();
+  }
+
+  /**
+   * Closes the current input ahead of {@link #reset} or {@link #close}, e.g. while the reader reads revisions from
+   * elsewhere.
+   */
+  void closeInput() throws IOException {
+    if (!inClosed) {
+      inClosed = true;
+      in.close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      closeInput();
+    } finally {
+      if (quarantine != null) {
+        quarantine.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package io.sunrisedata.wikipedia;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Locality-sensitive signatures of the text of a revision, computed by {@link WikipediaSignatureHasher}: a
+ * MinHash of its word shingles, which estimates the Jaccard similarity of the shingle sets of two texts, and a
+ * 64-bit SimHash, whose Hamming distance to another grows with the difference between the texts.
+ *
+ * Near-duplicates are found without comparing all pairs by banding the MinHash: texts that share any of their
+ * {@link #getBands band keys} are candidates, e.g. by grouping revisions on each of their band keys.
+ */
+public class WikipediaSignature implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final long[] minHash;
+  private final long simHash;
+
+  WikipediaSignature(long[] minHash, long simHash) {
+    this.minHash = minHash;
+    this.simHash = simHash;
+  }
+
+  /**
+   * @return the minimum hash of the shingles under each hash function
+   */
+  public long[] getMinHash() {
+    return minHash.clone();
+  }
+
+  public long getSimHash() {
+    return simHash;
+  }
+
+  /**
+   * Splits the MinHash into {@code bands} bands of equal size and hashes each of them, with its index, to a key.
+   * Two texts with Jaccard similarity {@code s} share a key with probability {@code 1 - (1 - s^r)^bands}, where
+   * {@code r} is the number of hashes per band.
+   *
+   * @param bands the number of bands, which should divide the number of hashes
+   * @return the key of each band
+   */
+  public long[] getBands(int bands) {
+    if (bands <= 0 || bands > minHash.length) {
+      throw new IllegalArgumentException("Can't split " + minHash.length + " hashes into " + bands + " bands");
+    }
+    int rows = minHash.length / bands;
+    long[] keys = new long[bands];
+    for (int b = 0; b < bands; b++) {
+      long h = Hashing.mix(b + 1);
+      for (int r = b * rows; r < (b + 1) * rows; r++) {
+        h = Hashing.mix(h ^ minHash[r]);
+      }
+      keys[b] = h;
+    }
+    return keys;
+  }
+
+  /**
+   * @return the estimated Jaccard similarity of the shingles of the two texts, between 0 and 1
+   */
+  public double estimateSimilarity(WikipediaSignature other) {
+    int n = Math.min(minHash.length, other.minHash.length);
+    if (n == 0) {
+      return 0;
+    }
+    int equal = 0;
+    for (int i = 0; i < n; i++) {
+      if (minHash[i] == other.minHash[i]) {
+        equal++;
+      }
+    }
+    return (double) equal / n;
+  }
+
+  /**
+   * @return the number of bits the SimHashes of the two texts differ in, between 0 and 64
+   */
+  public int simHashDistance(WikipediaSignature other) {
+    return Long.bitCount(simHash ^ other.simHash);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof WikipediaSignature)) {
+      return false;
+    }
+    WikipediaSignature other = (WikipediaSignature) o;
+    return simHash == other.simHash && Arrays.equals(minHash, other.minHash);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(minHash) + Long.hashCode(simHash);
+  }
+}
@@ -0,0 +1,175 @@
+package io.sunrisedata.wikipedia;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Computes the {@link WikipediaSignature} of revisions in a single pass over their wiki markup.
+ *
+ * The text is split into words (lowercased runs of letters and digits), each word is hashed as it is read, and
+ * the hashes of each run of {@code shingleSize} consecutive words are combined into a shingle hash. Each shingle
+ * updates the minimum under each of the MinHash functions and the bit counts of the SimHash. The text of a revision
+ * that hasn't been decoded yet is hashed from its escaped bytes, decoding one character at a time, so no strings
+ * are created along the way and the signature is the same as that of the decoded text. Texts shorter than a
+ * shingle are hashed as a single shingle.
+ *
+ * The hash functions are fixed by the number of hashes and the seed, so signatures computed in different runs
+ * can be compared. Signatures can also be computed by the reader, see
+ * {@link WikipediaPageRevisionInputFormat#setSignatures}.
+ */
+public class WikipediaSignatureHasher {
+  public static final int DEFAULT_NUM_HASHES = 128;
+  public static final int DEFAULT_SHINGLE_SIZE = 5;
+
+  private final int shingleSize;
+  private final long[] seeds;
+  // reused from one text to the next
+  private final long[] wordHashes;
+  private final long[] minHash;
+  private final int[] simHashCounts = new int[64];
+  // the text read so far
+  private int words;
+  private long wordHash;
+  private boolean inWord;
+
+  public WikipediaSignatureHasher() {
+    this(DEFAULT_NUM_HASHES, DEFAULT_SHINGLE_SIZE, 0L);
+  }
+
+  /**
+   * @param numHashes the number of MinHash functions
+   * @param shingleSize the number of words per shingle
+   * @param seed selects the hash functions
+   */
+  public WikipediaSignatureHasher(int numHashes, int shingleSize, long seed) {
+    if (numHashes <= 0 || shingleSize <= 0) {
+      throw new IllegalArgumentException("The number of hashes and the shingle size must be positive");
+    }
+    this.shingleSize = shingleSize;
+    this.seeds = new long[numHashes];
+    long s = Hashing.mix(seed ^ 0x5851f42d4c957f2dL);
+    for (int i = 0; i < numHashes; i++) {
+      s = Hashing.mix(s + 0x9e3779b97f4a7c15L);
+      seeds[i] = s;
+    }
+    this.wordHashes = new long[shingleSize];
+    this.minHash = new long[numHashes];
+  }
+
+  /**
+   * @return the signature of the markup of the revision, or {@code null} if it has no text
+   */
+  public WikipediaSignature hash(WikipediaPageRevision revision) {
+    ByteBuffer escaped = revision.getEscapedContent();
+    if (escaped != null) {
+      return hash(escaped);
+    }
+    String text = revision.getRawContent();
+    return text == null ? null : hash(text);
+  }
+
+  /**
+   * @return the signature of a text
+   */
+  public WikipediaSignature hash(CharSequence text) {
+    start();
+    int n = text.length();
+    for (int i = 0; i < n; ) {
+      int c = Character.codePointAt(text, i);
+      add(c);
+      i += Character.charCount(c);
+    }
+    return finish();
+  }
+
+  /**
+   * @return the signature of the text that is XML-escaped UTF-8 in the remaining bytes of {@code escaped}
+   */
+  WikipediaSignature hash(ByteBuffer escaped) {
+    start();
+    int to = escaped.limit();
+    int i = escaped.position();
+    while (i < to) {
+      long next = XmlBytes.codePointAt(escaped, i, to);
+      int c = XmlBytes.codePoint(next);
+      i = XmlBytes.nextIndex(next);
+      if (Character.isHighSurrogate((char) c) && i < to) {
+        // a pair of surrogates is one character of the decoded text
+        long low = XmlBytes.codePointAt(escaped, i, to);
+        if (Character.isLowSurrogate((char) XmlBytes.codePoint(low))) {
+          c = Character.toCodePoint((char) c, (char) XmlBytes.codePoint(low));
+          i = XmlBytes.nextIndex(low);
+        }
+      }
+      add(c);
+    }
+    return finish();
+  }
+
+  private void start() {
+    Arrays.fill(minHash, Long.MAX_VALUE);
+    Arrays.fill(simHashCounts, 0);
+    words = 0;
+    inWord = false;
+  }
+
+  /**
+   * Reads the next character of the text.
+   */
+  private void add(int c) {
+    if (Character.isLetterOrDigit(c)) {
+      if (!inWord) {
+        wordHash = Hashing.FNV_OFFSET_BASIS;
+        inWord = true;
+      }
+      wordHash = (wordHash ^ Character.toLowerCase(c)) * Hashing.FNV_PRIME;
+    } else {
+      endWord();
+    }
+  }
+
+  private void endWord() {
+    if (inWord) {
+      inWord = false;
+      wordHashes[words % shingleSize] = wordHash;
+      words++;
+      if (words >= shingleSize) {
+        addShingle(words);
+      }
+    }
+  }
+
+  private WikipediaSignature finish() {
+    endWord();
+    if (words > 0 && words < shingleSize) {
+      addShingle(words);
+    }
+    long simHash = 0;
+    for (int bit = 0; bit < 64; bit++) {
+      if (simHashCounts[bit] > 0) {
+        simHash |= 1L << bit;
+      }
+    }
+    return new WikipediaSignature(minHash.clone(), simHash);
+  }
+
+  /**
+   * Adds the shingle of the last words read, up to {@code shingleSize} of them.
+   */
+  private void addShingle(int words) {
+    int size = Math.min(words, shingleSize);
+    long shingle = size;
+    for (int j = words - size; j < words; j++) {
+      shingle = Hashing.mix(shingle ^ wordHashes[j % shingleSize]);
+    }
+    for (int k = 0; k < seeds.length; k++) {
+      long h = Hashing.mix(shingle ^ seeds[k]);
+      if (h < minHash[k]) {
+        minHash[k] = h;
+      }
+    }
+    for (int bit = 0; bit < 64; bit++) {
+      simHashCounts[bit] += ((shingle >>> bit) & 1L) != 0 ? 1 : -1;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package io.sunrisedata.wikipedia;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The &lt;siteinfo&gt; header of a dump: which wiki it is from, and its namespaces.
+ *
+ * Read once per file and shared by all the pages read from it, see {@link WikipediaPage#getSiteInfo()}.
+ */
+public class WikipediaSiteInfo implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  protected static final String XML_TAG_SITEINFO = "siteinfo";
+  protected static final String XML_TAG_SITENAME = "sitename";
+  protected static final String XML_TAG_DBNAME = "dbname";
+  protected static final String XML_TAG_BASE = "base";
+  protected static final String XML_TAG_GENERATOR = "generator";
+  protected static final String XML_TAG_CASE = "case";
+  protected static final String XML_TAG_NAMESPACES = "namespaces";
+  protected static final String XML_TAG_NAMESPACE = "namespace";
+  protected static final String XML_ATTRIBUTE_NAMESPACE_KEY = "key";
+  protected static final String XML_ATTRIBUTE_LANG = "xml:lang";
+
+  private String language;
+  private String siteName;
+  private String dbName;
+  private String base;
+  private String generator;
+  private String titleCase;
+  /**
+   * The header as it was in the dump, or {@code null} if the site info wasn't read from one.
+   */
+  private String headerXml;
+  /**
+   * Namespace names by key, in dump order. The main namespace has an empty name.
+   */
+  private final Map<Integer, String> namespaces = new LinkedHashMap<Integer, String>();
+  /**
+   * The namespace keys as strings, so pages can share them rather than keeping their own copies.
+   */
+  private final Map<String, String> namespaceKeys = new HashMap<String, String>();
+  private final Map<String, Integer> namespacesByName = new HashMap<String, Integer>();
+
+  /**
+   * Reads the site info from the start of a dump, up to and including the &lt;/siteinfo&gt; end tag. The root
+   * &lt;mediawiki&gt; element doesn't need to be closed. Dumps have no DOCTYPE, and one is rejected, so an input
+   * file can't make the parser read other files or URLs through external entities.
+   */
+  public void readFromXml(InputStream xml) throws ParserConfigurationException, IOException, SAXException {
+    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+    dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+    dbf.setFeature("http://xml.org/sax/features/external-general-entities", false);
+    dbf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+    dbf.setXIncludeAware(false);
+    dbf.setExpandEntityReferences(false);
+    DocumentBuilder db = dbf.newDocumentBuilder();
+    Document doc = db.parse(xml);
+
+    Element root = doc.getDocumentElement();
+    Element siteinfo = root;
+    if (!XML_TAG_SITEINFO.equals(root.getTagName())) {
+      if (root.hasAttribute(XML_ATTRIBUTE_LANG)) {
+        this.language = root.getAttribute(XML_ATTRIBUTE_LANG);
+      }
+      NodeList s = root.getElementsByTagName(XML_TAG_SITEINFO);
+      if (s.getLength() == 0) {
+        return;
+      }
+      siteinfo = (Element) s.item(0);
+    }
+
+    NodeList n = siteinfo.getChildNodes();
+    for (int i = 0; i < n.getLength(); i++) {
+      Node node = n.item(i);
+      if (node.getNodeType() == Node.ELEMENT_NODE) {
+        Element e = (Element) node;
+        switch (e.getTagName()) {
+          case XML_TAG_SITENAME:
+            this.siteName = e.getTextContent();
+            break;
+          case XML_TAG_DBNAME:
+            this.dbName = e.getTextContent();
+            break;
+          case XML_TAG_BASE:
+            this.base = e.getTextContent();
+            break;
+          case XML_TAG_GENERATOR:
+            this.generator = e.getTextContent();
+            break;
+          case XML_TAG_CASE:
+            this.titleCase = e.getTextContent();
+            break;
+          case XML_TAG_NAMESPACES:
+            NodeList ns = e.getElementsByTagName(XML_TAG_NAMESPACE);
+            for (int j = 0; j < ns.getLength(); j++) {
+              Element nsEl = (Element) ns.item(j);
+              try {
+                addNamespace(Integer.parseInt(nsEl.getAttribute(XML_ATTRIBUTE_NAMESPACE_KEY).trim()),
+                    nsEl.getTextContent());
+              } catch (NumberFormatException ex) {
+                // not a namespace we can refer to by key
+              }
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    }
+  }
+
+  private void addNamespace(int key, String name) {
+    namespaces.put(key, name);
+    String keyString = Integer.toString(key);
+    namespaceKeys.put(keyString, keyString);
+    namespacesByName.put(name.toLowerCase(Locale.ROOT), key);
+  }
+
+  /**
+   * @return the language code of the wiki, from the xml:lang attribute of the dump, or {@code null}
+   */
+  public String getLanguage() {
+    return language;
+  }
+
+  public String getSiteName() {
+    return siteName;
+  }
+
+  /**
+   * @return the database name of the wiki, e.g. "enwiki"
+   */
+  public String getDbName() {
+    return dbName;
+  }
+
+  public String getBase() {
+    return base;
+  }
+
+  public String getGenerator() {
+    return generator;
+  }
+
+  /**
+   * @return how titles are capitalized, e.g. "first-letter"
+   */
+  public String getCase() {
+    return titleCase;
+  }
+
+  /**
+   * @return namespace names by key, in dump order. The main namespace has an empty name.
+   */
+  public Map<Integer, String> getNamespaces() {
+    return Collections.unmodifiableMap(namespaces);
+  }
+
+  /**
+   * @return the name of the namespace with the given key, or {@code null} if there is none
+   */
+  public String getNamespaceName(int key) {
+    return namespaces.get(key);
+  }
+
+  /**
+   * @param name a namespace name, in any case
+   * @return the key of the namespace, or {@code null} if there is none with that name
+   */
+  public Integer getNamespaceKey(String name) {
+    return namespacesByName.get(name.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * @return the start of the dump the site info was read from, as it was: the root &lt;mediawiki&gt; start tag and
+   *         the &lt;siteinfo&gt; element, or {@code null} if the site info wasn't read from a dump
+   */
+  public String getHeaderXml() {
+    return headerXml;
+  }
+
+  void setHeaderXml(String headerXml) {
+    this.headerXml = headerXml;
+  }
+
+  /**
+   * @return the shared instance of a namespace key string, or {@code key} itself if it isn't a known namespace
+   */
+  String internNamespaceKey(String key) {
+    String shared = namespaceKeys.get(key);
+    return shared != null ? shared : key;
+  }
+}
@@ -0,0 +1,374 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Old API ({@code org.apache.hadoop.mapred}) {@code InputFormat} for Hadoop Streaming jobs, which hands each
+ * revision to the mapper script as a single line of selected fields, already parsed, instead of as xml.
+ *
+ * <pre>
+ * hadoop jar hadoop-streaming.jar -libjars wikipedia-hadoop.jar \
+ *   -D wikipedia.streaming.fields=page_id,title,timestamp,text -D wikipedia.streaming.format=json \
+ *   -D stream.map.input.ignoreKey=true \
+ *   -inputformat io.sunrisedata.wikipedia.WikipediaStreamingInputFormat -input ... -mapper mapper.py
+ * </pre>
+ *
+ * The key is the same as that of {@link WikipediaPageRevisionInputFormat}, the page id and the revision id; the
+ * value is the fields in {@link #FIELDS} order, either separated by tabs with tabs, newlines and backslashes
+ * escaped as {@code \t}, {@code \n} and {@code \\}, or as a JSON object. Streaming passes the key, a tab and the
+ * value to the script, or just the value with {@code stream.map.input.ignoreKey}.
+ *
+ * Revisions are read by the same reader as {@link WikipediaPageRevisionInputFormat}, so splitting, compression and
+ * all of its settings apply as well.
+ */
+public class WikipediaStreamingInputFormat extends FileInputFormat<Text, Text> {
+  public static final String FIELDS = "wikipedia.streaming.fields";
+  public static final String FORMAT = "wikipedia.streaming.format";
+
+  /**
+   * The fields a record can have, named in {@link #FIELDS} in lower case.
+   */
+  public enum Field {
+    PAGE_ID, NAMESPACE, TITLE, REDIRECTS_TO, REVISION_ID, PARENT_ID, TIMESTAMP, CONTRIBUTOR_USERNAME,
+    CONTRIBUTOR_ID, CONTRIBUTOR_IP, MINOR, COMMENT, SHA1, MODEL, FORMAT, LENGTH, REDIRECT, STUB, TEXT
+  }
+
+  /**
+   * How records are written.
+   */
+  public enum Format {
+    TSV, JSON
+  }
+
+  public static final Field[] DEFAULT_FIELDS = {Field.PAGE_ID, Field.TITLE, Field.REVISION_ID, Field.TIMESTAMP,
+      Field.TEXT};
+
+  /**
+   * The fields of each record, in order. Defaults to {@link #DEFAULT_FIELDS}.
+   *
+   * @param conf the job configuration
+   * @param fields the fields
+   */
+  public static void setFields(Configuration conf, Field... fields) {
+    String[] names = new String[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      names[i] = fields[i].name().toLowerCase(Locale.ROOT);
+    }
+    conf.setStrings(FIELDS, names);
+  }
+
+  /**
+   * How records are written. Defaults to {@link Format#TSV}.
+   *
+   * @param conf the job configuration
+   * @param format the format
+   */
+  public static void setFormat(Configuration conf, Format format) {
+    conf.set(FORMAT, format.name().toLowerCase(Locale.ROOT));
+  }
+
+  @Override
+  protected boolean isSplitable(FileSystem fs, Path file) {
+    CompressionCodec codec = new CompressionCodecFactory(fs.getConf()).getCodec(file);
+    return codec == null || codec instanceof SplittableCompressionCodec;
+  }
+
+  @Override
+  public RecordReader<Text, Text> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
+      throws IOException {
+    reporter.setStatus(split.toString());
+    return new WikipediaStreamingRecordReader((FileSplit) split, job, reporter);
+  }
+
+  /**
+   * Reads revisions with a {@link WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader}, and writes
+   * them as lines.
+   */
+  public static class WikipediaStreamingRecordReader implements RecordReader<Text, Text> {
+    private final WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader =
+        new WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader();
+    private final FileSplit split;
+    private final Field[] fields;
+    private final Format format;
+    private final StringBuilder line = new StringBuilder();
+
+    public WikipediaStreamingRecordReader(FileSplit split, JobConf job, Reporter reporter) throws IOException {
+      this.split = split;
+      this.fields = getFields(job);
+      this.format = Format.valueOf(job.get(FORMAT, Format.TSV.name()).trim().toUpperCase(Locale.ROOT));
+      if (!hasField(Field.TEXT)) {
+        // don't keep what isn't written
+        job = new JobConf(job);
+        job.setBoolean(WikipediaPageRevisionInputFormat.INCLUDE_TEXT, false);
+      }
+      TaskAttemptID attempt = TaskAttemptID.forName(job.get("mapreduce.task.attempt.id"));
+      try {
+        reader.initialize(new org.apache.hadoop.mapreduce.lib.input.FileSplit(split.getPath(), split.getStart(),
+                split.getLength(), split.getLocations()),
+            new TaskAttemptContextImpl(job, attempt != null ? attempt : new TaskAttemptID(),
+                new ReporterStatusReporter(reporter)));
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
+
+    private static Field[] getFields(Configuration conf) {
+      String[] names = conf.getTrimmedStrings(FIELDS);
+      if (names.length == 0) {
+        return DEFAULT_FIELDS;
+      }
+      List<Field> fields = new ArrayList<Field>();
+      for (String name : names) {
+        try {
+          fields.add(Field.valueOf(name.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException("Unknown field in " + FIELDS + ": " + name, e);
+        }
+      }
+      return fields.toArray(new Field[fields.size()]);
+    }
+
+    private boolean hasField(Field field) {
+      for (Field f : fields) {
+        if (f == field) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public boolean next(Text key, Text value) throws IOException {
+      try {
+        if (!reader.nextKeyValue()) {
+          return false;
+        }
+        key.set(reader.getCurrentKey());
+        value.set(format(reader.getCurrentValue()));
+        return true;
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
+
+    /**
+     * @return the selected fields of a revision as a line, without the line end
+     */
+    String format(WikipediaPageRevision revision) {
+      line.setLength(0);
+      if (format == Format.JSON) {
+        line.append('{');
+      }
+      for (int i = 0; i < fields.length; i++) {
+        Object value = getField(revision, fields[i]);
+        if (format == Format.JSON) {
+          if (i > 0) {
+            line.append(',');
+          }
+          line.append('"').append(fields[i].name().toLowerCase(Locale.ROOT)).append("\":");
+          if (value == null) {
+            line.append("null");
+          } else if (value instanceof String) {
+            appendJsonString((String) value);
+          } else {
+            line.append(value);
+          }
+        } else {
+          if (i > 0) {
+            line.append('\t');
+          }
+          if (value != null) {
+            appendTsv(value.toString());
+          }
+        }
+      }
+      if (format == Format.JSON) {
+        line.append('}');
+      }
+      return line.toString();
+    }
+
+    private static Object getField(WikipediaPageRevision revision, Field field) {
+      WikipediaPage page = revision.getContainingPage();
+      switch (field) {
+        case PAGE_ID:
+          return page.getPageId();
+        case NAMESPACE:
+          return page.getNamespace();
+        case TITLE:
+          return page.getTitle();
+        case REDIRECTS_TO:
+          return page.getRedirectsTo();
+        case REVISION_ID:
+          return revision.getRevisionId();
+        case PARENT_ID:
+          return revision.getParentRevisionId();
+        case TIMESTAMP:
+          return revision.getTimestamp();
+        case CONTRIBUTOR_USERNAME:
+          return revision.getContributorUsername();
+        case CONTRIBUTOR_ID:
+          return revision.getContributorId();
+        case CONTRIBUTOR_IP:
+          return revision.getContributorIp();
+        case MINOR:
+          return revision.isMinor();
+        case COMMENT:
+          return revision.getComment();
+        case SHA1:
+          return revision.getSha1();
+        case MODEL:
+          return revision.getModel();
+        case FORMAT:
+          return revision.getFormat();
+        case LENGTH:
+          return revision.getDeclaredContentLength();
+        case REDIRECT:
+          return revision.isRedirect();
+        case STUB:
+          return revision.isStub();
+        case TEXT:
+          return revision.getRawContent();
+        default:
+          throw new IllegalArgumentException("Unknown field " + field);
+      }
+    }
+
+    private void appendTsv(String s) {
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        switch (c) {
+          case '\t':
+            line.append("\\t");
+            break;
+          case '\n':
+            line.append("\\n");
+            break;
+          case '\r':
+            line.append("\\r");
+            break;
+          case '\\':
+            line.append("\\\\");
+            break;
+          default:
+            line.append(c);
+        }
+      }
+    }
+
+    private void appendJsonString(String s) {
+      line.append('"');
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        switch (c) {
+          case '"':
+            line.append("\\\"");
+            break;
+          case '\\':
+            line.append("\\\\");
+            break;
+          case '\n':
+            line.append("\\n");
+            break;
+          case '\r':
+            line.append("\\r");
+            break;
+          case '\t':
+            line.append("\\t");
+            break;
+          default:
+            if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+              line.append(String.format("\\u%04x", (int) c));
+            } else {
+              line.append(c);
+            }
+        }
+      }
+      line.append('"');
+    }
+
+    @Override
+    public Text createKey() {
+      return new Text();
+    }
+
+    @Override
+    public Text createValue() {
+      return new Text();
+    }
+
+    /**
+     * @return an estimate of the position in the split, from the progress of the reader
+     */
+    @Override
+    public long getPos() throws IOException {
+      return split.getStart() + (long) (getProgress() * split.getLength());
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      return reader.getProgress();
+    }
+  }
+
+  /**
+   * Passes the counters and status of the new API reader on to the old API reporter.
+   */
+  private static class ReporterStatusReporter extends StatusReporter {
+    private final Reporter reporter;
+
+    ReporterStatusReporter(Reporter reporter) {
+      this.reporter = reporter;
+    }
+
+    @Override
+    public org.apache.hadoop.mapreduce.Counter getCounter(Enum<?> name) {
+      return reporter.getCounter(name);
+    }
+
+    @Override
+    public org.apache.hadoop.mapreduce.Counter getCounter(String group, String name) {
+      return reporter.getCounter(group, name);
+    }
+
+    @Override
+    public void progress() {
+      reporter.progress();
+    }
+
+    @Override
+    public float getProgress() {
+      return reporter.getProgress();
+    }
+
+    @Override
+    public void setStatus(String status) {
+      reporter.setStatus(status);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package io.sunrisedata.wikipedia;
+
+/**
+ * Splits the text of revisions into terms for indexing, without creating a {@code String} per token: terms are
+ * lowercased runs of letters and digits, looked up in a shared {@link WikipediaVocabulary} straight from a reused
+ * char buffer, and passed on as term ids and positions.
+ *
+ * <pre>
+ * WikipediaVocabulary vocabulary = new WikipediaVocabulary();
+ * WikipediaTokenizer tokenizer = new WikipediaTokenizer(vocabulary, WikipediaTokenizer.Source.RENDERED);
+ * TermFrequencies tf = new TermFrequencies();
+ * // for each revision
+ * tokenizer.countTerms(revision, tf);
+ * </pre>
+ *
+ * Not thread-safe; tokenizers on different threads need vocabularies of their own, or a frozen one.
+ */
+public class WikipediaTokenizer {
+
+  /**
+   * Which text of a revision is tokenized.
+   */
+  public enum Source {
+    /**
+     * The wiki markup, as returned by {@link WikipediaPageRevision#getRawContent()}. Cheap, but markup such as
+     * template and parameter names is tokenized along with the text.
+     */
+    WIKITEXT,
+    /**
+     * The title and plain text, as returned by {@link WikipediaPageRevision#getRenderedContent()}.
+     */
+    RENDERED
+  }
+
+  /**
+   * Receives the terms of a text in order.
+   */
+  public interface TermSink {
+    /**
+     * @param termId the id of the term, or {@link WikipediaVocabulary#UNKNOWN} if it isn't in a frozen vocabulary
+     * @param position the position of the term in the text, counting from 0
+     */
+    void term(int termId, int position);
+  }
+
+  /**
+   * Longer runs of letters and digits, e.g. encoded data, are skipped, though they still take a position.
+   */
+  public static final int MAX_TERM_LENGTH = 64;
+
+  private final WikipediaVocabulary vocabulary;
+  private final Source source;
+  private final char[] term = new char[MAX_TERM_LENGTH + 1];
+
+  public WikipediaTokenizer(WikipediaVocabulary vocabulary, Source source) {
+    this.vocabulary = vocabulary;
+    this.source = source;
+  }
+
+  public WikipediaVocabulary getVocabulary() {
+    return vocabulary;
+  }
+
+  /**
+   * Tokenizes the text of a revision.
+   *
+   * @return the number of terms
+   */
+  public int tokenize(WikipediaPageRevision revision, TermSink sink) {
+    CharSequence text = source == Source.RENDERED ? revision.getRenderedContent() : revision.getRawContent();
+    return text == null ? 0 : tokenize(text, sink);
+  }
+
+  /**
+   * Counts the terms of the text of a revision. Unknown terms of a frozen vocabulary aren't counted.
+   *
+   * @param tf cleared, then filled with the term frequencies
+   * @return the number of terms
+   */
+  public int countTerms(WikipediaPageRevision revision, final TermFrequencies tf) {
+    tf.clear();
+    return tokenize(revision, new TermSink() {
+      @Override
+      public void term(int termId, int position) {
+        if (termId != WikipediaVocabulary.UNKNOWN) {
+          tf.add(termId);
+        }
+      }
+    });
+  }
+
+  /**
+   * Tokenizes text.
+   *
+   * @return the number of terms
+   */
+  public int tokenize(CharSequence text, TermSink sink) {
+    int position = 0;
+    int n = text.length();
+    int i = 0;
+    while (i < n) {
+      int c = Character.codePointAt(text, i);
+      if (!Character.isLetterOrDigit(c)) {
+        i += Character.charCount(c);
+        continue;
+      }
+      int length = 0;
+      boolean tooLong = false;
+      do {
+        i += Character.charCount(c);
+        if (!tooLong && length + Character.charCount(c) <= MAX_TERM_LENGTH) {
+          length += Character.toChars(Character.toLowerCase(c), term, length);
+        } else {
+          tooLong = true;
+        }
+      } while (i < n && Character.isLetterOrDigit(c = Character.codePointAt(text, i)));
+      if (!tooLong) {
+        sink.term(vocabulary.getId(term, 0, length), position);
+      }
+      position++;
+    }
+    return position;
+  }
+}
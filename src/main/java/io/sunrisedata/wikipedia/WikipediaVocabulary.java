@@ -0,0 +1,165 @@
+package io.sunrisedata.wikipedia;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids to terms, for {@link WikipediaTokenizer}. Terms are looked up from a range of a char
+ * array, so a term that is already known costs no allocation.
+ *
+ * A vocabulary can be shared by the tokenizers of a task, and written out and read back as a {@link Writable},
+ * e.g. to ship the vocabulary of a first pass to all the tasks of a second one. Once frozen, unknown terms get no
+ * id rather than a new one. Not thread-safe.
+ */
+public class WikipediaVocabulary implements Writable {
+  /**
+   * The id of terms that aren't in a frozen vocabulary.
+   */
+  public static final int UNKNOWN = -1;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private String[] terms = new String[INITIAL_CAPACITY / 2];
+  private int[] hashes = new int[INITIAL_CAPACITY / 2];
+  /**
+   * Open-addressed table of term id + 1, 0 for empty slots.
+   */
+  private int[] table = new int[INITIAL_CAPACITY];
+  private int size;
+  private boolean frozen;
+
+  /**
+   * Returns the id of a term, adding it if it is new and the vocabulary isn't frozen.
+   *
+   * @param chars the term is {@code chars[start]} to {@code chars[start + length - 1]}
+   * @return the id, or {@link #UNKNOWN}
+   */
+  public int getId(char[] chars, int start, int length) {
+    int hash = hash(chars, start, length);
+    int mask = table.length - 1;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      int entry = table[i];
+      if (entry == 0) {
+        if (frozen) {
+          return UNKNOWN;
+        }
+        return add(new String(chars, start, length), hash, i);
+      }
+      if (hashes[entry - 1] == hash && equals(terms[entry - 1], chars, start, length)) {
+        return entry - 1;
+      }
+    }
+  }
+
+  /**
+   * @return the id of a term, adding it if it is new and the vocabulary isn't frozen
+   */
+  public int getId(String term) {
+    return getId(term.toCharArray(), 0, term.length());
+  }
+
+  /**
+   * @return the term with the given id
+   */
+  public String getTerm(int id) {
+    if (id < 0 || id >= size) {
+      throw new IndexOutOfBoundsException("No term with id " + id);
+    }
+    return terms[id];
+  }
+
+  /**
+   * @return the number of terms
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Stops adding terms; unknown terms get {@link #UNKNOWN} from then on.
+   */
+  public void freeze() {
+    frozen = true;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  private int add(String term, int hash, int slot) {
+    if (size == terms.length) {
+      terms = Arrays.copyOf(terms, size * 2);
+      hashes = Arrays.copyOf(hashes, size * 2);
+    }
+    terms[size] = term;
+    hashes[size] = hash;
+    table[slot] = size + 1;
+    int id = size++;
+    if (size * 2 > table.length) {
+      rehash();
+    }
+    return id;
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    int mask = table.length - 1;
+    for (int id = 0; id < size; id++) {
+      int i = hashes[id] & mask;
+      while (table[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      table[i] = id + 1;
+    }
+  }
+
+  private static int hash(char[] chars, int start, int length) {
+    int h = 0;
+    for (int i = start; i < start + length; i++) {
+      h = 31 * h + chars[i];
+    }
+    return (int) Hashing.mix(h);
+  }
+
+  private static boolean equals(String term, char[] chars, int start, int length) {
+    if (term.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (term.charAt(i) != chars[start + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeBoolean(frozen);
+    WritableUtils.writeVInt(out, size);
+    for (int id = 0; id < size; id++) {
+      Text.writeString(out, terms[id]);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    boolean readFrozen = in.readBoolean();
+    int count = WritableUtils.readVInt(in);
+    terms = new String[Math.max(INITIAL_CAPACITY / 2, count)];
+    hashes = new int[terms.length];
+    table = new int[Integer.highestOneBit(terms.length * 2 - 1) << 1];
+    size = 0;
+    frozen = false;
+    for (int id = 0; id < count; id++) {
+      getId(Text.readString(in));
+    }
+    frozen = readFrozen;
+  }
+}
@@ -0,0 +1,233 @@
+package io.sunrisedata.wikipedia;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes XML-escaped UTF-8 straight from the bytes of a dump.
+ *
+ * Decoding and replacing entity and character references happen in a single pass. Ranges that are all ASCII and
+ * have no references, which is most of the fields of a revision, take a fast path that doesn't decode at all: the
+ * bytes are copied once into the string.
+ *
+ * Decoded fields are strings rather than slices of the bytes, since the getters of {@link WikipediaPage} and
+ * {@link WikipediaPageRevision} return strings and the reader reuses its buffer for the next page. The text, the
+ * only large field, isn't decoded until it is asked for; until then its revision keeps the escaped bytes, as a
+ * slice of the buffer where it isn't reused.
+ */
+final class XmlBytes {
+  /**
+   * Longest reference we decode, "&amp;#x10FFFF;".
+   */
+  private static final int MAX_REFERENCE_LENGTH = 10;
+
+  private XmlBytes() {
+  }
+
+  /**
+   * Decodes the bytes from {@code from} (inclusive) to {@code to} (exclusive) of {@code buf}.
+   */
+  static String decode(ByteBuffer buf, int from, int to) {
+    if (buf.hasArray()) {
+      return decode(buf.array(), buf.arrayOffset() + from, buf.arrayOffset() + to);
+    }
+    byte[] bytes = new byte[to - from];
+    ByteBuffer b = buf.duplicate();
+    b.limit(to);
+    b.position(from);
+    b.get(bytes);
+    return decode(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Decodes the bytes from {@code from} (inclusive) to {@code to} (exclusive) of {@code bytes}.
+   */
+  static String decode(byte[] bytes, int from, int to) {
+    int i = from;
+    while (i < to && bytes[i] >= 0 && bytes[i] != '&') {
+      i++;
+    }
+    if (i == to) {
+      // ASCII without references: every byte is a char, so the bytes are only copied
+      return new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    // UTF-16 never takes more chars than UTF-8 takes bytes, and references only get shorter
+    char[] out = new char[to - from];
+    int n = 0;
+    for (int j = from; j < i; j++) {
+      out[n++] = (char) bytes[j];
+    }
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    while (i < to) {
+      int b = bytes[i];
+      if (b >= 0 && b != '&') {
+        out[n++] = (char) b;
+        i++;
+      } else {
+        long next = codePointAt(buf, i, to);
+        n += Character.toChars(codePoint(next), out, n);
+        i = nextIndex(next);
+      }
+    }
+    return new String(out, 0, n);
+  }
+
+  /**
+   * Decodes the character, or the entity or character reference, at {@code i} of the bytes of {@code buf} up to
+   * {@code to}, the way {@link #decode} does: a reference we don't know is a '&amp;', and malformed UTF-8 is
+   * U+FFFD. A character outside the BMP that is encoded as two surrogates is returned as the two surrogates.
+   *
+   * @return the code point, and the index after it, which are taken apart with {@link #codePoint} and
+   *         {@link #nextIndex}
+   */
+  static long codePointAt(ByteBuffer buf, int i, int to) {
+    int b = buf.get(i);
+    int c;
+    int length;
+    if (b >= 0) {
+      int semi = b == '&' ? indexOf(buf, (byte) ';', i + 1, Math.min(to, i + MAX_REFERENCE_LENGTH)) : -1;
+      c = semi < 0 ? -1 : decodeReference(buf, i + 1, semi);
+      if (c < 0) {
+        // not a reference we know, keep it as it is
+        c = b;
+        length = 1;
+      } else {
+        length = semi + 1 - i;
+      }
+    } else if ((b & 0xe0) == 0xc0 && i + 1 < to && isContinuation(buf.get(i + 1))) {
+      c = ((b & 0x1f) << 6) | (buf.get(i + 1) & 0x3f);
+      length = 2;
+    } else if ((b & 0xf0) == 0xe0 && i + 2 < to && isContinuation(buf.get(i + 1))
+        && isContinuation(buf.get(i + 2))) {
+      c = ((b & 0x0f) << 12) | ((buf.get(i + 1) & 0x3f) << 6) | (buf.get(i + 2) & 0x3f);
+      length = 3;
+    } else if ((b & 0xf8) == 0xf0 && i + 3 < to && isContinuation(buf.get(i + 1))
+        && isContinuation(buf.get(i + 2)) && isContinuation(buf.get(i + 3))) {
+      c = ((b & 0x07) << 18) | ((buf.get(i + 1) & 0x3f) << 12) | ((buf.get(i + 2) & 0x3f) << 6)
+          | (buf.get(i + 3) & 0x3f);
+      if (c > Character.MAX_CODE_POINT) {
+        c = 0xfffd;
+      }
+      length = 4;
+    } else {
+      // malformed
+      c = 0xfffd;
+      length = 1;
+    }
+    return ((long) (i + length) << 32) | c;
+  }
+
+  /**
+   * @return the code point of a result of {@link #codePointAt}
+   */
+  static int codePoint(long next) {
+    return (int) next;
+  }
+
+  /**
+   * @return the index after the character of a result of {@link #codePointAt}
+   */
+  static int nextIndex(long next) {
+    return (int) (next >>> 32);
+  }
+
+  private static boolean isContinuation(byte b) {
+    return (b & 0xc0) == 0x80;
+  }
+
+  /**
+   * @return the code point of the reference between '&amp;' and ';', or -1 if it isn't one
+   */
+  private static int decodeReference(ByteBuffer buf, int from, int to) {
+    int length = to - from;
+    if (length >= 2 && buf.get(from) == '#') {
+      int c = 0;
+      if (buf.get(from + 1) == 'x' || buf.get(from + 1) == 'X') {
+        if (length == 2) {
+          return -1;
+        }
+        for (int i = from + 2; i < to; i++) {
+          int d = Character.digit(buf.get(i), 16);
+          if (d < 0) {
+            return -1;
+          }
+          c = c * 16 + d;
+        }
+      } else {
+        for (int i = from + 1; i < to; i++) {
+          int d = Character.digit(buf.get(i), 10);
+          if (d < 0) {
+            return -1;
+          }
+          c = c * 10 + d;
+        }
+      }
+      return c <= Character.MAX_CODE_POINT ? c : -1;
+    }
+    switch (length) {
+      case 2:
+        if (buf.get(from + 1) == 't') {
+          if (buf.get(from) == 'l') {
+            return '<';
+          }
+          if (buf.get(from) == 'g') {
+            return '>';
+          }
+        }
+        return -1;
+      case 3:
+        return buf.get(from) == 'a' && buf.get(from + 1) == 'm' && buf.get(from + 2) == 'p' ? '&' : -1;
+      case 4:
+        if (buf.get(from) == 'q' && buf.get(from + 1) == 'u' && buf.get(from + 2) == 'o'
+            && buf.get(from + 3) == 't') {
+          return '"';
+        }
+        if (buf.get(from) == 'a' && buf.get(from + 1) == 'p' && buf.get(from + 2) == 'o'
+            && buf.get(from + 3) == 's') {
+          return '\'';
+        }
+        return -1;
+      default:
+        return -1;
+    }
+  }
+
+  private static int indexOf(ByteBuffer buf, byte b, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (buf.get(i) == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return whether the bytes of {@code buf} starting at {@code from} are {@code prefix}
+   */
+  static boolean startsWith(ByteBuffer buf, int from, int to, byte[] prefix) {
+    if (to - from < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buf.get(from + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the index of the first occurrence of {@code match} in the bytes of {@code buf} from {@code from}
+   *         (inclusive) to {@code to} (exclusive), or -1
+   */
+  static int indexOf(ByteBuffer buf, int from, int to, byte[] match) {
+    byte first = match[0];
+    for (int i = from, last = to - match.length; i <= last; i++) {
+      if (buf.get(i) == first && startsWith(buf, i, to, match)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,276 @@
+package io.sunrisedata.wikipedia;
+
+import org.xml.sax.SAXException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the child elements of a dump element, such as a page header or a revision, straight from its bytes.
+ *
+ * Only handles what the dump elements contain: elements with attributes and escaped text. Comments and
+ * processing instructions between elements are skipped; CDATA sections aren't supported.
+ */
+final class XmlElementReader {
+  /**
+   * Names of the elements in the dumps, so reading them doesn't create new strings.
+   */
+  private static final String[] ELEMENT_NAMES = {
+      WikipediaPage.XML_TAG_TITLE, WikipediaPage.XML_TAG_NAMESPACE, WikipediaPage.XML_TAG_ID,
+      WikipediaPage.XML_TAG_REDIRECT, WikipediaPage.XML_TAG_RESTRICTIONS,
+      WikipediaPageRevision.XML_TAG_PARENTID, WikipediaPageRevision.XML_TAG_TIMESTAMP,
+      WikipediaPageRevision.XML_TAG_CONTRIBUTOR, WikipediaPageRevision.XML_TAG_CONTRIBUTOR_USERNAME,
+      WikipediaPageRevision.XML_TAG_CONTRIBUTOR_IP, WikipediaPageRevision.XML_TAG_MINOR,
+      WikipediaPageRevision.XML_TAG_COMMENT, WikipediaPageRevision.XML_TAG_MODEL,
+      WikipediaPageRevision.XML_TAG_FORMAT, WikipediaPageRevision.XML_TAG_TEXT, WikipediaPageRevision.XML_TAG_SHA1
+  };
+  private static final byte[][] ELEMENT_NAME_BYTES = new byte[ELEMENT_NAMES.length][];
+
+  static {
+    for (int i = 0; i < ELEMENT_NAMES.length; i++) {
+      ELEMENT_NAME_BYTES[i] = ELEMENT_NAMES[i].getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  private final ByteBuffer buf;
+  private final int limit;
+  /**
+   * Where to look for the next child element.
+   */
+  private int pos;
+
+  // the current child element
+  private int nameStart;
+  private int nameEnd;
+  private int attributesEnd;
+  private int contentStart;
+  private int contentEnd;
+
+  /**
+   * Reads the children of the element whose start tag is at the beginning of the remaining bytes of {@code buf}.
+   * The element's end tag may be missing.
+   */
+  XmlElementReader(ByteBuffer buf) throws SAXException {
+    this.buf = buf;
+    this.limit = buf.limit();
+    int lt = indexOf((byte) '<', buf.position());
+    int gt = lt < 0 ? -1 : endOfTag(lt + 1);
+    if (gt < 0) {
+      throw new SAXException("no start tag");
+    }
+    // a root element without children has nothing to read
+    this.pos = buf.get(gt - 1) == '/' ? limit : gt + 1;
+  }
+
+  private XmlElementReader(ByteBuffer buf, int from, int to) {
+    this.buf = buf;
+    this.pos = from;
+    this.limit = to;
+  }
+
+  /**
+   * Moves to the next child element.
+   *
+   * @return {@code false} if there are no more children
+   * @throws SAXException if the child element has no end tag
+   */
+  boolean next() throws SAXException {
+    while (true) {
+      int lt = indexOf((byte) '<', pos);
+      if (lt < 0 || lt + 1 >= limit) {
+        pos = limit;
+        return false;
+      }
+      byte c = buf.get(lt + 1);
+      if (c == '/') {
+        // end tag of the parent
+        pos = limit;
+        return false;
+      }
+      if (c == '!' || c == '?') {
+        int gt = indexOf((byte) '>', lt);
+        pos = gt < 0 ? limit : gt + 1;
+        continue;
+      }
+
+      nameStart = lt + 1;
+      nameEnd = nameStart;
+      while (nameEnd < limit && !isNameEnd(buf.get(nameEnd))) {
+        nameEnd++;
+      }
+      int gt = endOfTag(nameEnd);
+      if (gt < 0) {
+        throw new SAXException("unterminated start tag");
+      }
+      if (buf.get(gt - 1) == '/') {
+        attributesEnd = gt - 1;
+        contentStart = contentEnd = pos = gt + 1;
+        return true;
+      }
+      attributesEnd = gt;
+      contentStart = gt + 1;
+      contentEnd = findEndTag(contentStart);
+      if (contentEnd < 0) {
+        throw new SAXException("no end tag for " + getName());
+      }
+      int endGt = indexOf((byte) '>', contentEnd);
+      pos = endGt < 0 ? limit : endGt + 1;
+      return true;
+    }
+  }
+
+  /**
+   * @return the name of the current element
+   */
+  String getName() {
+    int length = nameEnd - nameStart;
+    for (int i = 0; i < ELEMENT_NAME_BYTES.length; i++) {
+      byte[] name = ELEMENT_NAME_BYTES[i];
+      if (name.length == length && XmlBytes.startsWith(buf, nameStart, nameEnd, name)) {
+        return ELEMENT_NAMES[i];
+      }
+    }
+    return XmlBytes.decode(buf, nameStart, nameEnd);
+  }
+
+  /**
+   * @return whether the current element has the given attribute
+   */
+  boolean hasAttribute(String name) {
+    return findAttributeValue(name) >= 0;
+  }
+
+  /**
+   * @return the value of the given attribute of the current element, or {@code null} if it has no such attribute
+   */
+  String getAttribute(String name) {
+    int start = findAttributeValue(name);
+    if (start < 0) {
+      return null;
+    }
+    byte quote = buf.get(start - 1);
+    int end = indexOf(quote, start);
+    return XmlBytes.decode(buf, start, end);
+  }
+
+  /**
+   * @return the index of the first byte of the value of the attribute, or -1
+   */
+  private int findAttributeValue(String name) {
+    int i = nameEnd;
+    while (i < attributesEnd) {
+      while (i < attributesEnd && isWhitespace(buf.get(i))) {
+        i++;
+      }
+      int attributeNameStart = i;
+      while (i < attributesEnd && buf.get(i) != '=' && !isWhitespace(buf.get(i))) {
+        i++;
+      }
+      int attributeNameEnd = i;
+      while (i < attributesEnd && buf.get(i) != '"' && buf.get(i) != '\'') {
+        i++;
+      }
+      if (i >= attributesEnd) {
+        return -1;
+      }
+      byte quote = buf.get(i);
+      int valueStart = i + 1;
+      int valueEnd = indexOf(quote, valueStart);
+      if (valueEnd < 0 || valueEnd > attributesEnd) {
+        return -1;
+      }
+      if (attributeNameEnd - attributeNameStart == name.length()) {
+        boolean matches = true;
+        for (int j = 0; j < name.length() && matches; j++) {
+          matches = buf.get(attributeNameStart + j) == name.charAt(j);
+        }
+        if (matches) {
+          return valueStart;
+        }
+      }
+      i = valueEnd + 1;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the decoded text of the current element
+   */
+  String getText() {
+    return XmlBytes.decode(buf, contentStart, contentEnd);
+  }
+
+  /**
+   * @return the (still escaped) bytes of the content of the current element, sharing {@code buf}'s storage
+   */
+  ByteBuffer getContent() {
+    ByteBuffer b = buf.duplicate();
+    b.limit(contentEnd);
+    b.position(contentStart);
+    return b.slice();
+  }
+
+  /**
+   * @return a reader for the children of the current element
+   */
+  XmlElementReader getChildren() {
+    return new XmlElementReader(buf, contentStart, contentEnd);
+  }
+
+  /**
+   * @return the index of the '&gt;' ending the tag whose name ends at {@code from}, skipping quoted attribute
+   *         values, or -1
+   */
+  private int endOfTag(int from) {
+    byte quote = 0;
+    for (int i = from; i < limit; i++) {
+      byte b = buf.get(i);
+      if (quote != 0) {
+        if (b == quote) {
+          quote = 0;
+        }
+      } else if (b == '"' || b == '\'') {
+        quote = b;
+      } else if (b == '>') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the index of the end tag of the current element, or -1
+   */
+  private int findEndTag(int from) {
+    int length = nameEnd - nameStart;
+    for (int i = indexOf((byte) '<', from); i >= 0; i = indexOf((byte) '<', i + 1)) {
+      if (i + length + 2 < limit && buf.get(i + 1) == '/' && isNameEnd(buf.get(i + 2 + length))) {
+        boolean matches = true;
+        for (int j = 0; j < length && matches; j++) {
+          matches = buf.get(i + 2 + j) == buf.get(nameStart + j);
+        }
+        if (matches) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private int indexOf(byte b, int from) {
+    for (int i = from; i < limit; i++) {
+      if (buf.get(i) == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isNameEnd(byte b) {
+    return b == '>' || b == '/' || isWhitespace(b);
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+  }
+}
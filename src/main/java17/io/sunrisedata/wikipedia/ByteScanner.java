@@ -0,0 +1,52 @@
+package io.sunrisedata.wikipedia;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the next occurrence of a byte, so {@link DumpInput} can skip text between tags in bulk. This is the version
+ * for Java 17 and later, which compares a vector of bytes at a time when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}, and otherwise falls back to {@link PortableByteScanner}.
+ *
+ * The Vector API is still incubating, so the vector scanner is tried once when this class is loaded, and the
+ * portable scanner is used if the JVM's version of the API doesn't link.
+ */
+final class ByteScanner {
+  private static final boolean VECTOR = isVectorAvailable();
+
+  private ByteScanner() {
+  }
+
+  /**
+   * @return the index of the first {@code b} in {@code buf} from {@code from} up to {@code to}, or {@code to} if
+   *         there is none
+   */
+  static int indexOf(ByteBuffer buf, int from, int to, byte b) {
+    return VECTOR ? VectorByteScanner.indexOf(buf, from, to, b) : PortableByteScanner.indexOf(buf, from, to, b);
+  }
+
+  /**
+   * @return whether bytes are found with the Vector API
+   */
+  static boolean isVectorized() {
+    return VECTOR;
+  }
+
+  private static boolean isVectorAvailable() {
+    if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      return false;
+    }
+    try {
+      // links the vector API methods the scanner uses on heap and direct buffers, so a mismatch shows now rather
+      // than mid-split
+      for (ByteBuffer probe : new ByteBuffer[]{ByteBuffer.allocate(256), ByteBuffer.allocateDirect(256)}) {
+        probe.put(200, (byte) 1);
+        if (VectorByteScanner.indexOf(probe, 0, probe.limit(), (byte) 1) != 200) {
+          return false;
+        }
+      }
+      return true;
+    } catch (LinkageError e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package io.sunrisedata.wikipedia;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds a byte with the Vector API, comparing as many bytes at a time as the CPU's widest vectors hold, e.g. 32
+ * with AVX2 or 64 with AVX-512. Only loaded by {@link ByteScanner} when the incubator module is present.
+ *
+ * Heap buffers are loaded from their arrays, which works the same on every version of the incubator API. Direct
+ * buffers, such as mapped dumps, are loaded with {@code ByteVector.fromByteBuffer} on Java 17 and 18; Java 19
+ * replaced it with memory segment loads, so later JVMs copy direct buffers a block at a time into an array.
+ */
+final class VectorByteScanner {
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+  private static final boolean BUFFER_LOADS = Runtime.version().feature() <= 18;
+  private static final int BLOCK_SIZE = 1024;
+  private static final ThreadLocal<byte[]> BLOCK = ThreadLocal.withInitial(() -> new byte[BLOCK_SIZE]);
+
+  private VectorByteScanner() {
+  }
+
+  /**
+   * @return the index of the first {@code b} in {@code buf} from {@code from} up to {@code to}, or {@code to} if
+   *         there is none
+   */
+  static int indexOf(ByteBuffer buf, int from, int to, byte b) {
+    if (buf.hasArray()) {
+      int offset = buf.arrayOffset();
+      return indexOf(buf.array(), offset + from, offset + to, b) - offset;
+    }
+    return BUFFER_LOADS ? indexOfLoading(buf, from, to, b) : indexOfCopying(buf, from, to, b);
+  }
+
+  /**
+   * Loads vectors straight from the buffer, which only the incubator API of Java 17 and 18 can do.
+   */
+  static int indexOfLoading(ByteBuffer buf, int from, int to, byte b) {
+    int i = from;
+    for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+      VectorMask<Byte> found = ByteVector.fromByteBuffer(SPECIES, buf, i, ByteOrder.nativeOrder()).eq(b);
+      if (found.anyTrue()) {
+        return i + found.firstTrue();
+      }
+    }
+    return PortableByteScanner.indexOf(buf, i, to, b);
+  }
+
+  /**
+   * Copies the buffer into an array a block at a time, and loads vectors from that.
+   */
+  static int indexOfCopying(ByteBuffer buf, int from, int to, byte b) {
+    byte[] block = BLOCK.get();
+    int i = from;
+    while (to - i >= SPECIES.length()) {
+      int length = Math.min(block.length, to - i);
+      buf.get(i, block, 0, length);
+      int found = indexOf(block, 0, length, b);
+      if (found < length) {
+        return i + found;
+      }
+      i += length;
+    }
+    return PortableByteScanner.indexOf(buf, i, to, b);
+  }
+
+  private static int indexOf(byte[] array, int from, int to, byte b) {
+    int i = from;
+    for (int bound = to - SPECIES.length(); i <= bound; i += SPECIES.length()) {
+      VectorMask<Byte> found = ByteVector.fromArray(SPECIES, array, i).eq(b);
+      if (found.anyTrue()) {
+        return i + found.firstTrue();
+      }
+    }
+    for (; i < to; i++) {
+      if (array[i] == b) {
+        return i;
+      }
+    }
+    return to;
+  }
+}
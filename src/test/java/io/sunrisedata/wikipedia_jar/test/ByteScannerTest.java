@@ -0,0 +1,161 @@
+package io.sunrisedata.wikipedia_jar.test;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the byte scanners against a byte-by-byte loop. The scanners are package-private, and the Java 17 versions
+ * are only in {@code META-INF/versions/17} of the build output, so they are loaded the way a multi-release jar
+ * would load them on this JVM, by a class loader that looks in that directory first.
+ */
+public class ByteScannerTest {
+  private static final String PACKAGE = "io.sunrisedata.wikipedia.";
+  /**
+   * Longer than two of the widest vectors (64 bytes with AVX-512), so every length and offset around the width of
+   * a {@code long} and of a vector is covered.
+   */
+  private static final int MAX_LENGTH = 2 * 64 + 17;
+  private static final int MAX_OFFSET = 17;
+
+  private static ClassLoader scanners;
+
+  @BeforeClass
+  public static void loadScanners() throws Exception {
+    File classes = new File(Class.forName(PACKAGE + "WikipediaPage").getProtectionDomain().getCodeSource()
+        .getLocation().toURI());
+    File versioned = new File(classes, "META-INF/versions/17");
+    URL[] urls = versioned.isDirectory() && isJava17OrLater()
+        ? new URL[]{versioned.toURI().toURL(), classes.toURI().toURL()}
+        : new URL[]{classes.toURI().toURL()};
+    // the parent only provides the JDK, so the scanners come from the urls, in order
+    scanners = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+  }
+
+  @Test
+  public void portableScannerFindsSameBytesAsLoop() throws Exception {
+    checkAgainstLoop(getIndexOf("PortableByteScanner"));
+  }
+
+  @Test
+  public void scannerFindsSameBytesAsLoop() throws Exception {
+    checkAgainstLoop(getIndexOf("ByteScanner"));
+  }
+
+  @Test
+  public void vectorScannerFindsSameBytesAsLoop() throws Exception {
+    Assume.assumeTrue(expectVector());
+    Method isVectorized = scanners.loadClass(PACKAGE + "ByteScanner").getDeclaredMethod("isVectorized");
+    isVectorized.setAccessible(true);
+    Assert.assertEquals(Boolean.TRUE, isVectorized.invoke(null));
+    checkAgainstLoop(getIndexOf("VectorByteScanner"));
+  }
+
+  @Test
+  public void vectorScannerFindsSameBytesAsLoopWhenCopyingDirectBuffers() throws Exception {
+    // what Java 19 and later do with direct buffers
+    Assume.assumeTrue(expectVector());
+    Method indexOf = getIndexOf("VectorByteScanner", "indexOfCopying");
+    checkAgainstLoop(indexOf);
+    // across the blocks it copies
+    Random random = new Random(19);
+    ByteBuffer buf = ByteBuffer.allocateDirect(5000);
+    byte b = fill(buf, random);
+    for (int from = 0; from < buf.limit(); from += 1 + random.nextInt(300)) {
+      Assert.assertEquals(loop(buf, from, buf.limit(), b), indexOf.invoke(null, buf, from, buf.limit(), b));
+    }
+  }
+
+  private static Method getIndexOf(String scanner) throws Exception {
+    return getIndexOf(scanner, "indexOf");
+  }
+
+  private static Method getIndexOf(String scanner, String name) throws Exception {
+    Method indexOf = scanners.loadClass(PACKAGE + scanner).getDeclaredMethod(name, ByteBuffer.class,
+        int.class, int.class, byte.class);
+    indexOf.setAccessible(true);
+    return indexOf;
+  }
+
+  private static void checkAgainstLoop(Method indexOf) throws Exception {
+    Random random = new Random(42);
+    for (ByteOrder order : Arrays.asList(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+      for (boolean direct : new boolean[]{false, true}) {
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+          ByteBuffer buf = (direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length)).order(order);
+          byte b = fill(buf, random);
+          for (int from = 0; from <= Math.min(length, MAX_OFFSET); from++) {
+            for (int to = from; to <= length; to++) {
+              int expected = loop(buf, from, to, b);
+              int actual = (Integer) indexOf.invoke(null, buf, from, to, b);
+              if (actual != expected) {
+                Assert.fail(indexOf.getDeclaringClass().getSimpleName() + " found " + actual + " instead of "
+                    + expected + " in " + length + " " + order + (direct ? " direct" : "") + " bytes from " + from
+                    + " to " + to);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Fills the buffer with bytes that differ from the one looked for in only one bit, or only in the high bit,
+   * which is what a careless zero-byte test confuses, and with the byte looked for at a few random places.
+   *
+   * @return the byte to look for
+   */
+  private static byte fill(ByteBuffer buf, Random random) {
+    byte b = (byte) random.nextInt(256);
+    for (int i = 0; i < buf.limit(); i++) {
+      int bit = random.nextInt(9);
+      buf.put(i, (byte) (bit == 8 ? b ^ 0x80 : b ^ (1 << bit)));
+    }
+    int matches = buf.limit() == 0 ? 0 : random.nextInt(4);
+    for (int m = 0; m < matches; m++) {
+      buf.put(random.nextInt(buf.limit()), b);
+    }
+    return b;
+  }
+
+  private static int loop(ByteBuffer buf, int from, int to, byte b) {
+    for (int i = from; i < to; i++) {
+      if (buf.get(i) == b) {
+        return i;
+      }
+    }
+    return to;
+  }
+
+  private static boolean isJava17OrLater() {
+    String version = System.getProperty("java.specification.version");
+    return !version.startsWith("1.") && Integer.parseInt(version) >= 17;
+  }
+
+  /**
+   * @return whether the JVM is one the vector scanner is used on: Java 17 or later, started with the incubator
+   *         module
+   */
+  private static boolean expectVector() {
+    if (!isJava17OrLater()) {
+      return false;
+    }
+    try {
+      Class.forName("jdk.incubator.vector.ByteVector");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package io.sunrisedata.wikipedia_jar.test;
+
+import io.sunrisedata.wikipedia.WikipediaDumpOutputFormat;
+import io.sunrisedata.wikipedia.WikipediaDumpReader;
+import io.sunrisedata.wikipedia.WikipediaDumpWriter;
+import io.sunrisedata.wikipedia.WikipediaPage;
+import io.sunrisedata.wikipedia.WikipediaPageRevision;
+import io.sunrisedata.wikipedia.WikipediaPageRevisionInputFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class WikipediaDumpOutputFormatTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File getDump2() {
+    return new File(this.getClass().getClassLoader().getResource("dump2.xml").getFile());
+  }
+
+  private static List<String> describe(WikipediaPageRevision revision) {
+    WikipediaPage page = revision.getContainingPage();
+    return Arrays.asList(page.getPageId(), page.getTitle(), page.getNamespace(), page.getRedirectsTo(),
+        revision.getRevisionId(), revision.getParentRevisionId(), revision.getTimestamp(),
+        revision.getContributorUsername(), revision.getContributorId(), revision.getContributorIp(),
+        String.valueOf(revision.isMinor()), revision.getComment(), revision.getModel(), revision.getFormat(),
+        revision.getSha1(), String.valueOf(revision.getDeclaredContentLength()),
+        String.valueOf(revision.isRedirect()), String.valueOf(revision.isMetadata()), revision.getRawContent());
+  }
+
+  private List<List<String>> copy(File from, File to, boolean decodeFirst) throws IOException {
+    List<List<String>> revisions = new ArrayList<List<String>>();
+    try (WikipediaDumpReader reader = WikipediaDumpReader.openMapped(from);
+         WikipediaDumpWriter writer = new WikipediaDumpWriter(new FileOutputStream(to))) {
+      while (reader.hasNext()) {
+        WikipediaPageRevision revision = reader.next();
+        if (decodeFirst) {
+          revisions.add(describe(revision));
+        }
+        writer.write(revision);
+        if (!decodeFirst) {
+          revisions.add(describe(revision));
+        }
+      }
+      Assert.assertEquals(2, writer.getPageCount());
+    }
+    return revisions;
+  }
+
+  @Test
+  public void writerRoundTripsDump() throws IOException {
+    File copy1 = tmp.newFile("copy1.xml");
+    File copy2 = tmp.newFile("copy2.xml");
+    // text copied as it was, then decoded and escaped again
+    List<List<String>> original = copy(getDump2(), copy1, false);
+    List<List<String>> copied = copy(copy1, copy2, true);
+    Assert.assertEquals(5, original.size());
+    Assert.assertEquals(original, copied);
+    Assert.assertEquals(original, copy(copy2, tmp.newFile("copy3.xml"), false));
+
+    // the original header is kept
+    try (BufferedReader in1 = new BufferedReader(new FileReader(getDump2()));
+         BufferedReader in2 = new BufferedReader(new FileReader(copy2))) {
+      for (int i = 0; i < 40; i++) {
+        Assert.assertEquals(in1.readLine(), in2.readLine());
+      }
+    }
+    try (WikipediaDumpReader reader = WikipediaDumpReader.openMapped(copy2)) {
+      Assert.assertEquals("enwiki", reader.next().getContainingPage().getSiteInfo().getDbName());
+    }
+  }
+
+  @Test
+  public void outputFormatWritesCompressedDumpReadableByInputFormat() throws IOException, InterruptedException {
+    Job job = Job.getInstance(new Configuration(true));
+    FileOutputFormat.setOutputPath(job, new Path(tmp.getRoot().getAbsolutePath(), "out"));
+    FileOutputFormat.setCompressOutput(job, true);
+    FileOutputFormat.setOutputCompressorClass(job, BZip2Codec.class);
+    TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(),
+        new TaskAttemptID(new TaskID(new JobID("local", 1000), TaskType.MAP, 100), 1));
+
+    WikipediaDumpOutputFormat<Text> format = new WikipediaDumpOutputFormat<Text>();
+    RecordWriter<Text, WikipediaPageRevision> writer = format.getRecordWriter(context);
+    List<String> keys = new ArrayList<String>();
+    try (WikipediaDumpReader reader = WikipediaDumpReader.openMapped(getDump2())) {
+      while (reader.hasNext()) {
+        WikipediaPageRevision revision = reader.next();
+        if (!revision.getContainingPage().getPageId().equals("10")) {
+          keys.add(revision.getContainingPage().getPageId() + "_" + revision.getRevisionId());
+          writer.write(null, revision);
+        }
+      }
+    }
+    writer.close(context);
+
+    Path file = format.getDefaultWorkFile(context, ".xml.bz2");
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader =
+        new WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader();
+    reader.initialize(new FileSplit(file, 0, file.getFileSystem(job.getConfiguration()).getFileStatus(file).getLen(),
+        null), context);
+    List<String> read = new ArrayList<String>();
+    while (reader.nextKeyValue()) {
+      read.add(reader.getCurrentKey().toString());
+    }
+    reader.close();
+    Assert.assertEquals(Arrays.asList("12_18201", "12_19746", "12_19749"), keys);
+    Assert.assertEquals(keys, read);
+  }
+}
@@ -0,0 +1,237 @@
+package io.sunrisedata.wikipedia_jar.test;
+
+import io.sunrisedata.wikipedia.WikipediaDumpReader;
+import io.sunrisedata.wikipedia.WikipediaPageRevision;
+import io.sunrisedata.wikipedia.WikipediaPageRevisionInputFormat;
+import io.sunrisedata.wikipedia.WikipediaRevisionMerger;
+import io.sunrisedata.wikipedia.WikipediaSiteInfo;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class WikipediaDumpReaderTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File getDump2() {
+    return new File(this.getClass().getClassLoader().getResource("dump2.xml").getFile());
+  }
+
+  private static final String GERMAN_DUMP = "<mediawiki xml:lang=\"de\">\n  <siteinfo>\n"
+      + "    <dbname>dewiki</dbname>\n    <namespaces>\n"
+      + "      <namespace key=\"6\" case=\"first-letter\">Datei</namespace>\n"
+      + "      <namespace key=\"14\" case=\"first-letter\">Kategorie</namespace>\n"
+      + "    </namespaces>\n  </siteinfo>\n"
+      + "  <page>\n    <title>A</title>\n    <ns>0</ns>\n    <id>1</id>\n"
+      + "    <revision>\n      <id>2</id>\n      <text>#weiterleitung [[B]]</text>\n    </revision>\n  </page>\n"
+      + "  <page>\n    <title>B</title>\n    <ns>0</ns>\n    <id>3</id>\n"
+      + "    <revision>\n      <id>4</id>\n"
+      + "      <text>Text [[Kategorie:Stadt]] [[Bild:X.jpg|mini]] [[Category:Ort]] {{Stub}}</text>\n"
+      + "    </revision>\n  </page>\n</mediawiki>\n";
+
+  @Test
+  public void pagesOfStreamAreNamedAfterIt() throws IOException {
+    try (WikipediaDumpReader reader = WikipediaDumpReader.open(
+        new ByteArrayInputStream(GERMAN_DUMP.getBytes(StandardCharsets.UTF_8)))) {
+      Assert.assertEquals(WikipediaDumpReader.STREAM_NAME, reader.next().getContainingPage().getInputName());
+    }
+    try (WikipediaDumpReader reader = WikipediaDumpReader.open(
+        new ByteArrayInputStream(GERMAN_DUMP.getBytes(StandardCharsets.UTF_8)), "dewiki.xml")) {
+      Assert.assertEquals("dewiki.xml", reader.next().getContainingPage().getInputName());
+    }
+  }
+
+  @Test
+  public void siteInfoDoesNotResolveExternalEntities() throws Exception {
+    File secret = tmp.newFile("secret.txt");
+    Files.write(secret.toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+    String dump = "<?xml version=\"1.0\"?>\n<!DOCTYPE mediawiki [<!ENTITY xxe SYSTEM \"" + secret.toURI() + "\">]>\n"
+        + "<mediawiki xml:lang=\"en\">\n  <siteinfo>\n    <dbname>&xxe;</dbname>\n  </siteinfo>\n"
+        + "  <page>\n    <title>A</title>\n    <ns>0</ns>\n    <id>1</id>\n"
+        + "    <revision>\n      <id>2</id>\n      <text>a</text>\n    </revision>\n  </page>\n</mediawiki>\n";
+    try {
+      new WikipediaSiteInfo().readFromXml(new ByteArrayInputStream(dump.getBytes(StandardCharsets.UTF_8)));
+      Assert.fail("DOCTYPE is parsed");
+    } catch (SAXException e) {
+      // expected
+    }
+    try (WikipediaDumpReader reader = WikipediaDumpReader.open(
+        new ByteArrayInputStream(dump.getBytes(StandardCharsets.UTF_8)))) {
+      WikipediaSiteInfo siteInfo = reader.next().getContainingPage().getSiteInfo();
+      Assert.assertTrue(siteInfo == null || !"secret".equals(siteInfo.getDbName()));
+    }
+  }
+
+  @Test
+  public void readerUsesMagicWordsOfDumpLanguage() throws IOException {
+    try (WikipediaDumpReader reader = WikipediaDumpReader.open(
+        new ByteArrayInputStream(GERMAN_DUMP.getBytes(StandardCharsets.UTF_8)))) {
+      WikipediaPageRevision redirect = reader.next();
+      Assert.assertEquals("de", redirect.getContainingPage().getMagicWords().getLanguage());
+      Assert.assertTrue(redirect.isRedirect());
+      WikipediaPageRevision article = reader.next();
+      Assert.assertFalse(article.isRedirect());
+      Assert.assertTrue(article.isStub());
+      Assert.assertEquals("[Stadt, Ort]", article.getCategories().toString());
+      Assert.assertEquals("[X.jpg]", article.getFiles().toString());
+    }
+
+    Configuration conf = new Configuration(false);
+    WikipediaPageRevisionInputFormat.setLanguage(conf, "en");
+    try (WikipediaDumpReader reader = WikipediaDumpReader.open(
+        new ByteArrayInputStream(GERMAN_DUMP.getBytes(StandardCharsets.UTF_8)), conf)) {
+      Assert.assertFalse(reader.next().isRedirect());
+    }
+  }
+
+  @Test
+  public void mappedReaderReadsAllRevisions() throws IOException {
+    try (WikipediaDumpReader reader = WikipediaDumpReader.openMapped(getDump2())) {
+      Assert.assertEquals("[10_233192, 10_862220, 12_18201, 12_19746, 12_19749]", keys(reader).toString());
+    }
+  }
+
+  @Test
+  public void mappedReaderReadsPagesStartingInRange() throws IOException {
+    try (WikipediaDumpReader reader = WikipediaDumpReader.openMapped(getDump2(), 2500, 2700)) {
+      Assert.assertTrue(reader.hasNext());
+      Assert.assertEquals("Wikipedia", reader.next().getContainingPage().getSiteInfo().getSiteName());
+      Assert.assertEquals("[10_862220]", keys(reader).toString());
+    }
+  }
+
+  @Test
+  public void mappedReaderParsesRevisionFields() throws IOException {
+    try (WikipediaDumpReader reader = WikipediaDumpReader.openMapped(getDump2())) {
+      WikipediaPageRevision revision = reader.next();
+      Assert.assertEquals("AccessibleComputing", revision.getContainingPage().getTitle());
+      Assert.assertEquals("Computer accessibility", revision.getContainingPage().getRedirectsTo());
+      Assert.assertEquals("RoseParks", revision.getContributorUsername());
+      Assert.assertEquals("8kul9tlwjm9oxgvqzbwuegt9b2830vw", revision.getSha1());
+      Assert.assertEquals(124, revision.getDeclaredContentLength());
+    }
+  }
+
+  @Test
+  public void mappedReaderReadsLatestRevisions() throws IOException {
+    Configuration conf = new Configuration(false);
+    WikipediaPageRevisionInputFormat.setLatestRevisionOnly(conf, true);
+    try (WikipediaDumpReader reader = WikipediaDumpReader.openMapped(getDump2(), 0, Long.MAX_VALUE, conf)) {
+      Assert.assertEquals("[10_862220, 12_19749]", keys(reader).toString());
+    }
+  }
+
+  @Test
+  public void streamReaderReadsAllRevisions() throws IOException {
+    try (WikipediaDumpReader reader = WikipediaDumpReader.open(new FileInputStream(getDump2()))) {
+      Assert.assertTrue(reader.hasNext());
+      Assert.assertEquals("enwiki", reader.next().getContainingPage().getSiteInfo().getDbName());
+      Assert.assertEquals("[10_862220, 12_18201, 12_19746, 12_19749]", keys(reader).toString());
+    }
+  }
+
+  @Test
+  public void parallelStreamReadsAllRevisionsInOrder() throws IOException {
+    try (Stream<WikipediaPageRevision> revisions = WikipediaDumpReader.stream(getDump2().toPath())) {
+      List<String> keys = revisions.parallel()
+          .map(r -> r.getContainingPage().getPageId() + "_" + r.getRevisionId())
+          .collect(Collectors.toList());
+      Assert.assertEquals("[10_233192, 10_862220, 12_18201, 12_19746, 12_19749]", keys.toString());
+    }
+  }
+
+  @Test
+  public void mergerOrdersRevisionsByTimestamp() throws IOException {
+    // runs of two revisions, merged two files at a time, so revisions go through spills and intermediate merges
+    try (WikipediaRevisionMerger merger = new WikipediaRevisionMerger(tmp.newFolder("runs"), 2, 2)) {
+      merger.add(getDump2().toPath(), new Configuration(false));
+      merger.add(getDump2().toPath(), new Configuration(false));
+      List<String> keys = new ArrayList<String>();
+      long previous = Long.MIN_VALUE;
+      while (merger.hasNext()) {
+        WikipediaPageRevision revision = merger.next();
+        Assert.assertEquals(Instant.parse(revision.getTimestamp()).toEpochMilli(), revision.getTimestampMillis());
+        Assert.assertTrue(revision.getTimestampMillis() >= previous);
+        previous = revision.getTimestampMillis();
+        Assert.assertEquals("enwiki", revision.getContainingPage().getSiteInfo().getDbName());
+        if (revision.getRevisionId().equals("233192")) {
+          Assert.assertEquals("AccessibleComputing", revision.getContainingPage().getTitle());
+          Assert.assertEquals("", revision.getRawContent());
+        }
+        keys.add(revision.getContainingPage().getPageId() + "_" + revision.getRevisionId());
+      }
+      // revisions with the same timestamp keep the order they were added in
+      Assert.assertEquals("[10_233192, 10_233192, 12_18201, 12_18201, 10_862220, 12_19746, 10_862220, 12_19746, "
+          + "12_19749, 12_19749]", keys.toString());
+      Assert.assertTrue(merger.getSpillCount() > 5);
+    }
+  }
+
+  @Test
+  public void mergerKeepsTextThroughSpillsAndMerges() throws IOException {
+    // pages whose revisions' timestamps go back and forth, each with its own text
+    StringBuilder dump = new StringBuilder("<mediawiki xml:lang=\"en\">\n  <siteinfo>\n    <dbname>enwiki</dbname>\n"
+        + "  </siteinfo>\n");
+    Map<String, String> texts = new HashMap<String, String>();
+    for (int page = 1; page <= 3; page++) {
+      dump.append("  <page>\n    <title>P").append(page).append("</title>\n    <ns>0</ns>\n    <id>").append(page)
+          .append("</id>\n");
+      for (int r = 0; r < 3; r++) {
+        String id = page + "0" + r;
+        dump.append("    <revision>\n      <id>").append(id).append("</id>\n      <timestamp>2015-09-1")
+            .append((page * 7 + r * 3) % 10).append("T00:00:00Z</timestamp>\n      <text xml:space=\"preserve\">")
+            .append("Revision ").append(id).append(" of Gr\u00F6\u00DFe &lt;ref&gt;&amp;nbsp;&lt;/ref&gt; \uD83D\uDE00")
+            .append("</text>\n    </revision>\n");
+        texts.put(id, "Revision " + id + " of Gr\u00F6\u00DFe <ref>&nbsp;</ref> \uD83D\uDE00");
+      }
+      dump.append("  </page>\n");
+    }
+    dump.append("</mediawiki>\n");
+    File file = tmp.newFile("text.xml");
+    Files.write(file.toPath(), dump.toString().getBytes(StandardCharsets.UTF_8));
+
+    try (WikipediaRevisionMerger merger = new WikipediaRevisionMerger(tmp.newFolder("runs"), 2, 2)) {
+      merger.add(file.toPath(), new Configuration(false));
+      merger.add(file.toPath(), new Configuration(false));
+      int count = 0;
+      long previous = Long.MIN_VALUE;
+      while (merger.hasNext()) {
+        WikipediaPageRevision revision = merger.next();
+        Assert.assertTrue(revision.getTimestampMillis() >= previous);
+        previous = revision.getTimestampMillis();
+        Assert.assertEquals(texts.get(revision.getRevisionId()), revision.getRawContent());
+        Assert.assertEquals("P" + revision.getContainingPage().getPageId(), revision.getContainingPage().getTitle());
+        count++;
+      }
+      Assert.assertEquals(18, count);
+      Assert.assertTrue(merger.getSpillCount() > 5);
+    }
+  }
+
+  private static List<String> keys(WikipediaDumpReader reader) {
+    List<String> keys = new ArrayList<String>();
+    while (reader.hasNext()) {
+      WikipediaPageRevision revision = reader.next();
+      keys.add(revision.getContainingPage().getPageId() + "_" + revision.getRevisionId());
+    }
+    return keys;
+  }
+}
@@ -1,11 +1,20 @@
 package io.sunrisedata.wikipedia_jar.test;
 
+import io.sunrisedata.wikipedia.WikipediaCombinePageRevisionInputFormat;
 import io.sunrisedata.wikipedia.WikipediaPage;
 import io.sunrisedata.wikipedia.WikipediaPageRevision;
 import io.sunrisedata.wikipedia.WikipediaPageRevisionInputFormat;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
 import org.apache.hadoop.mapreduce.*;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
@@ -13,10 +22,34 @@ import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
 import org.apache.log4j.PatternLayout;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.Assert;
-
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -25,6 +58,23 @@ import org.apache.log4j.Logger;
  */
 public class WikipediaPageRevisionInputReaderTest {
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static final String TEXT_DUMP = "<mediawiki xml:lang=\"en\">\n  <siteinfo>\n"
+      + "    <dbname>enwiki</dbname>\n    <namespaces>\n"
+      + "      <namespace key=\"0\" case=\"first-letter\" />\n    </namespaces>\n  </siteinfo>\n"
+      + "  <page>\n    <title>Gr\u00F6\u00DFe</title>\n    <ns>0</ns>\n    <id>1</id>\n"
+      + "    <revision>\n      <id>2</id>\n      <timestamp>2015-09-11T00:00:00Z</timestamp>\n"
+      + "      <comment>&lt;b&gt; Zo\u00EB</comment>\n"
+      + "      <text xml:space=\"preserve\" bytes=\"60\">Gr\u00F6\u00DFe &lt;ref&gt;&amp;nbsp;&lt;/ref&gt; "
+      + "&quot;quoted&quot; \uD83D\uDE00 &amp; more words for the shingles of the signature</text>\n"
+      + "    </revision>\n"
+      + "    <revision>\n      <id>3</id>\n      <parentid>2</parentid>\n"
+      + "      <timestamp>2015-09-12T00:00:00Z</timestamp>\n"
+      + "      <text xml:space=\"preserve\">#REDIRECT [[Gr\u00F6\u00DFe &amp; Co]]</text>\n"
+      + "    </revision>\n  </page>\n</mediawiki>\n";
+
   @BeforeClass
   public static void classSetUp() {
     Logger rootLogger = Logger.getRootLogger();
@@ -122,9 +172,659 @@ public class WikipediaPageRevisionInputReaderTest {
     checkNoMoreRevisions(reader);
   }
 
+  @Test
+  public void nextKeyValueReadsEachRevisionOnceAcrossBzip2Splits() throws IOException, InterruptedException {
+    File bz2 = tmp.newFile("generated.xml.bz2");
+    List<String> expected = writeBzip2Dump(bz2, 200, 3);
+
+    // splits much shorter than a bzip2 block, so nearly all of them start and end inside one
+    long splitLength = 23457;
+    List<String> keys = new ArrayList<String>();
+    int splitsWithRevisions = 0;
+    for (long start = 0; start < bz2.length(); start += splitLength) {
+      WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader =
+          getReaderForFile(bz2.getAbsolutePath(), start, Math.min(splitLength, bz2.length() - start));
+      int before = keys.size();
+      while (reader.nextKeyValue()) {
+        keys.add(reader.getCurrentKey().toString());
+      }
+      reader.close();
+      if (keys.size() > before) {
+        splitsWithRevisions++;
+      }
+    }
+    Collections.sort(expected);
+    Collections.sort(keys);
+    Assert.assertEquals("revisions read across splits", expected, keys);
+    Assert.assertTrue("revisions are read by several splits", splitsWithRevisions > 1);
+  }
+
+  @Test
+  public void corruptRecordsInBzip2SplitsAreQuarantinedByBlock() throws IOException, InterruptedException {
+    File bz2 = tmp.newFile("corrupt.xml.bz2");
+    List<String> expected = writeBzip2Dump(bz2, 100, 3, "70_7001");
+
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setRobust(conf, true);
+    File quarantineDir = tmp.newFolder("quarantine");
+    WikipediaPageRevisionInputFormat.setQuarantineDir(conf, new Path(quarantineDir.getAbsolutePath()));
+    long splitLength = 23457;
+    List<String> keys = new ArrayList<String>();
+    for (long start = 0; start < bz2.length(); start += splitLength) {
+      WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader =
+          getReaderForFile(bz2.getAbsolutePath(), start, Math.min(splitLength, bz2.length() - start), conf);
+      while (reader.nextKeyValue()) {
+        keys.add(reader.getCurrentKey().toString());
+      }
+      reader.close();
+    }
+    Collections.sort(expected);
+    Collections.sort(keys);
+    Assert.assertEquals(expected, keys);
+
+    File[] quarantined = quarantineDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith("quarantine-");
+      }
+    });
+    Assert.assertEquals(1, quarantined.length);
+    String[] record = new String(Files.readAllBytes(quarantined[0].toPath()), StandardCharsets.UTF_8).split("\t");
+    Assert.assertEquals("compressed-block", record[3]);
+    long start = Long.parseLong(record[1]);
+    long end = Long.parseLong(record[2]);
+    Assert.assertTrue(start <= end && end <= bz2.length());
+    // the revision starts in the block whose marker is just before the start position, not in a later one
+    String revisionStart = "<revision>\n      <id>7001</id>";
+    Assert.assertTrue(decompressBlocksFrom(bz2, start - 8).contains(revisionStart));
+    Assert.assertFalse(decompressBlocksFrom(bz2, start + 1).contains(revisionStart));
+  }
+
+  @Test
+  public void progressAdvancesThroughWholeCompressedFile() throws IOException, InterruptedException {
+    File gz = tmp.newFile("dump2.xml.gz");
+    GzipCodec codec = new GzipCodec();
+    codec.setConf(new Configuration());
+    InputStream in = new FileInputStream(this.getClass().getClassLoader().getResource("dump2.xml").getFile());
+    OutputStream out = codec.createOutputStream(new FileOutputStream(gz));
+    IOUtils.copyBytes(in, out, 4096, true);
+
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader =
+        getReaderForFile(gz.getAbsolutePath(), 0, gz.length());
+    float progress = reader.getProgress();
+    while (reader.nextKeyValue()) {
+      Assert.assertTrue("progress goes back", reader.getProgress() >= progress);
+      progress = reader.getProgress();
+    }
+    Assert.assertTrue("progress is made", progress > 0.0f);
+    Assert.assertEquals(1.0f, reader.getProgress(), 0.0f);
+    reader.close();
+  }
+
+  @Test
+  public void combinedSplitReadsSmallFilesInOneReader() throws IOException, InterruptedException {
+    File dir = tmp.newFolder("parts");
+    String dump2 = this.getClass().getClassLoader().getResource("dump2.xml").getFile();
+    Files.copy(Paths.get(dump2), new File(dir, "part1.xml").toPath());
+    Files.copy(Paths.get(dump2), new File(dir, "part2.xml").toPath());
+    GzipCodec codec = new GzipCodec();
+    codec.setConf(new Configuration());
+    IOUtils.copyBytes(new FileInputStream(dump2),
+        codec.createOutputStream(new FileOutputStream(new File(dir, "part3.xml.gz"))), 4096, true);
+
+    Job job = Job.getInstance(new Configuration(true));
+    WikipediaCombinePageRevisionInputFormat.addInputPath(job, new Path(dir.getAbsolutePath()));
+    WikipediaCombinePageRevisionInputFormat format = new WikipediaCombinePageRevisionInputFormat();
+    List<InputSplit> splits = format.getSplits(job);
+    Assert.assertEquals(1, splits.size());
+
+    TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(),
+        new TaskAttemptID(new TaskID(new JobID("local", 1000), TaskType.MAP, 100), 1));
+    RecordReader<Text, WikipediaPageRevision> reader = format.createRecordReader(splits.get(0), context);
+    reader.initialize(splits.get(0), context);
+    int count = 0;
+    Set<String> inputs = new HashSet<String>();
+    float progress = reader.getProgress();
+    while (reader.nextKeyValue()) {
+      count++;
+      String input = reader.getCurrentValue().getContainingPage().getInputName();
+      inputs.add(input.substring(input.lastIndexOf('/') + 1));
+      Assert.assertEquals(input, context.getConfiguration().get(MRJobConfig.MAP_INPUT_FILE));
+      Assert.assertTrue("progress goes back", reader.getProgress() >= progress);
+      progress = reader.getProgress();
+    }
+    Assert.assertEquals(15, count);
+    Assert.assertEquals(new HashSet<String>(Arrays.asList("part1.xml", "part2.xml", "part3.xml.gz")), inputs);
+    Assert.assertEquals(1.0f, reader.getProgress(), 0.0f);
+    reader.close();
+  }
+
+  @Test
+  public void combinedSplitReleasesDecompressorBeforeReadingFromCache() throws IOException, InterruptedException {
+    File dir = tmp.newFolder("parts");
+    String dump2 = this.getClass().getClassLoader().getResource("dump2.xml").getFile();
+    // gzip decompressors aren't pooled, so their leases aren't counted back
+    BZip2Codec codec = new BZip2Codec();
+    codec.setConf(new Configuration());
+    for (String part : new String[]{"part1.xml.bz2", "part2.xml.bz2", "part3.xml.bz2"}) {
+      IOUtils.copyBytes(new FileInputStream(dump2),
+          codec.createOutputStream(new FileOutputStream(new File(dir, part))), 4096, true);
+    }
+    Job job = Job.getInstance(new Configuration(true));
+    WikipediaPageRevisionInputFormat.setCacheDir(job.getConfiguration(),
+        new Path(tmp.newFolder("cache").getAbsolutePath()));
+    // all but the first part are cached
+    for (String part : new String[]{"part2.xml.bz2", "part3.xml.bz2"}) {
+      readRevisions(new File(dir, part).getAbsolutePath(), job.getConfiguration(), new Counters());
+    }
+
+    WikipediaCombinePageRevisionInputFormat.addInputPath(job, new Path(dir.getAbsolutePath()));
+    WikipediaCombinePageRevisionInputFormat format = new WikipediaCombinePageRevisionInputFormat();
+    InputSplit split = format.getSplits(job).get(0);
+    TaskAttemptContextImpl context = new TaskAttemptContextImpl(job.getConfiguration(),
+        new TaskAttemptID(new TaskID(new JobID("local", 1000), TaskType.MAP, 100), 1));
+    RecordReader<Text, WikipediaPageRevision> reader = format.createRecordReader(split, context);
+    // the count is for the whole JVM
+    int leased = CodecPool.getLeasedDecompressorsCount(codec);
+    reader.initialize(split, context);
+    int count = 0;
+    while (reader.nextKeyValue()) {
+      count++;
+      if (!reader.getCurrentValue().getContainingPage().getInputName().endsWith("part1.xml.bz2")) {
+        Assert.assertEquals("decompressors leased while reading from the cache", leased,
+            CodecPool.getLeasedDecompressorsCount(codec));
+      }
+    }
+    reader.close();
+    Assert.assertEquals(15, count);
+    Assert.assertEquals(leased, CodecPool.getLeasedDecompressorsCount(codec));
+  }
+
+  @Test
+  public void nextKeyValueSkipsPagesOutsideNamespaces() throws IOException, InterruptedException {
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setNamespaces(conf, "1", "2");
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 0, 4900, conf);
+    checkNoMoreRevisions(reader);
+  }
+
+  @Test
+  public void nextKeyValueSkipsPagesOutsidePageIdRange() throws IOException, InterruptedException {
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setPageIdRange(conf, 11, 100);
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 0, 4900, conf);
+    checkPage2AllRevisions(reader);
+    checkNoMoreRevisions(reader);
+  }
+
+  @Test
+  public void nextKeyValueSkipsPagesNotInAllowlist() throws IOException, InterruptedException {
+    File ids = tmp.newFile("ids.txt");
+    Files.write(ids.toPath(), "12\n99\n".getBytes(StandardCharsets.UTF_8));
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setPageIdAllowlist(conf, new Path(ids.getAbsolutePath()));
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 0, 4900, conf);
+    checkPage2AllRevisions(reader);
+    checkNoMoreRevisions(reader);
+
+    File titles = tmp.newFile("titles.txt");
+    Files.write(titles.toPath(), "Accessible_Computing\nAccessibleComputing\n".getBytes(StandardCharsets.UTF_8));
+    conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setTitleAllowlist(conf, new Path(titles.getAbsolutePath()));
+    WikipediaPageRevisionInputFormat.setAllowlistFalsePositiveRate(conf, 0.001);
+    reader = getReaderForFile(this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 0, 4900, conf);
+    checkPage1BothRevisions(reader);
+    checkNoMoreRevisions(reader);
+  }
+
+  @Test
+  public void allowlistIsReadFromWorkingDirectoryOnlyWhenInDistributedCache()
+      throws IOException, InterruptedException {
+    String dump = this.getClass().getClassLoader().getResource("dump2.xml").getFile();
+    // the distributed cache links files into the task's working directory under the name after the '#'; an
+    // absolute name stands in for that directory here, so nothing is written to the process working directory
+    File link = new File(tmp.newFolder("links"), "ids.txt");
+    Files.write(link.toPath(), "10\n".getBytes(StandardCharsets.UTF_8));
+
+    // another file is linked there, so the allowlist is read from its own file system
+    File ids = tmp.newFile("ids.txt");
+    Files.write(ids.toPath(), "12\n".getBytes(StandardCharsets.UTF_8));
+    File other = tmp.newFile("other-ids.txt");
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setPageIdAllowlist(conf, new Path(ids.getAbsolutePath()));
+    conf.set(MRJobConfig.CACHE_FILES, other.toURI() + "#" + link.getAbsolutePath());
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader =
+        getReaderForFile(dump, 0, 4900, conf);
+    checkPage2AllRevisions(reader);
+    checkNoMoreRevisions(reader);
+
+    ids = tmp.newFile("cached-ids.txt");
+    Files.write(ids.toPath(), "12\n".getBytes(StandardCharsets.UTF_8));
+    conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setPageIdAllowlist(conf, new Path(ids.getAbsolutePath()));
+    conf.set(MRJobConfig.CACHE_FILES, ids.toURI() + "#" + link.getAbsolutePath());
+    reader = getReaderForFile(dump, 0, 4900, conf);
+    checkPage1BothRevisions(reader);
+    checkNoMoreRevisions(reader);
+  }
+
+  @Test
+  public void nextKeyValueSkipsRevisionsOutsideTimestampRange() throws IOException, InterruptedException {
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setTimestampRange(conf, "2002-02-25T15:43:11Z", "2002-02-27T00:00:00Z");
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 0, 4900, conf);
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("10_862220", reader.getCurrentKey().toString());
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("12_19746", reader.getCurrentKey().toString());
+    checkNoMoreRevisions(reader);
+  }
+
+  @Test
+  public void nextKeyValueReadsLatestRevisionOfEachPage() throws IOException, InterruptedException {
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setLatestRevisionOnly(conf, true);
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 0, 4900, conf);
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("10_862220", reader.getCurrentKey().toString());
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("12_19749", reader.getCurrentKey().toString());
+    checkNoMoreRevisions(reader);
+
+    // a snapshot before the last revision of page 12
+    WikipediaPageRevisionInputFormat.setTimestampRange(conf, null, "2002-02-26T00:00:00Z");
+    reader = getReaderForFile(this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 0, 4900, conf);
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("10_862220", reader.getCurrentKey().toString());
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("12_19746", reader.getCurrentKey().toString());
+    Assert.assertEquals("2002-02-25T15:43:11Z", reader.getCurrentValue().getTimestamp());
+    Assert.assertNotNull(reader.getCurrentValue().getRawContent());
+    checkNoMoreRevisions(reader);
+  }
+
+  @Test
+  public void nextKeyValueReadsSamples() throws IOException, InterruptedException {
+    String dump2 = this.getClass().getClassLoader().getResource("dump2.xml").getFile();
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setFirstRevisions(conf, 1);
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        dump2, 0, 4900, conf);
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("10_233192", reader.getCurrentKey().toString());
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("12_18201", reader.getCurrentKey().toString());
+    checkNoMoreRevisions(reader);
+
+    conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setPageSample(conf, 0.0);
+    checkNoMoreRevisions(getReaderForFile(dump2, 0, 4900, conf));
+
+    // the same revisions are sampled every time
+    conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setRevisionSample(conf, 0.5);
+    List<String> sample = new ArrayList<String>();
+    reader = getReaderForFile(dump2, 0, 4900, conf);
+    while (reader.nextKeyValue()) {
+      sample.add(reader.getCurrentKey().toString());
+    }
+    reader = getReaderForFile(dump2, 0, 4900, conf);
+    for (String key : sample) {
+      Assert.assertTrue(reader.nextKeyValue());
+      Assert.assertEquals(key, reader.getCurrentKey().toString());
+    }
+    checkNoMoreRevisions(reader);
+  }
+
+  @Test
+  public void pagesHaveSiteInfoWhenSplitStartsAfterHeader() throws IOException, InterruptedException {
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 2500, 200);
+    Assert.assertTrue(reader.nextKeyValue());
+    WikipediaPage page = reader.getCurrentValue().getContainingPage();
+    Assert.assertNotNull(page.getSiteInfo());
+    Assert.assertEquals("enwiki", page.getSiteInfo().getDbName());
+    Assert.assertEquals("en", page.getSiteInfo().getLanguage());
+    Assert.assertEquals("Template", page.getSiteInfo().getNamespaceName(10));
+    Assert.assertEquals(Integer.valueOf(829), page.getSiteInfo().getNamespaceKey("module talk"));
+    Assert.assertEquals(0, page.getNamespaceId());
+    Assert.assertEquals("", page.getNamespaceName());
+    Assert.assertEquals("AccessibleComputing", page.getTitleWithoutNamespace());
+  }
+
+  @Test
+  public void revisionsShareInternedStrings() throws IOException, InterruptedException {
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setInternStrings(conf, 100);
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 0, 4900, conf);
+    Assert.assertTrue(reader.nextKeyValue());
+    WikipediaPageRevision first = reader.getCurrentValue();
+    Assert.assertTrue(reader.nextKeyValue());
+    WikipediaPageRevision second = reader.getCurrentValue();
+    Assert.assertSame(first.getModel(), second.getModel());
+    Assert.assertSame(first.getFormat(), second.getFormat());
+  }
+
+  @Test
+  public void revisionsAreSerializable() throws IOException, InterruptedException, ClassNotFoundException {
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile(), 0, 4900);
+    Assert.assertTrue(reader.nextKeyValue());
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(reader.getCurrentValue());
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    checkDump2Page1Revision1((WikipediaPageRevision) in.readObject());
+  }
+
+  @Test
+  public void nextKeyValueSkipsCorruptRevisionsInRobustMode() throws IOException, InterruptedException {
+    // cut the second revision of the first page off, together with the end of the page
+    String dump = new String(Files.readAllBytes(Paths.get(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile())), StandardCharsets.UTF_8);
+    String cutStart = "<id>862220</id>";
+    String cutEnd = "  <page>\n    <title>Anarchism";
+    File corrupt = tmp.newFile("corrupt.xml");
+    Files.write(corrupt.toPath(), (dump.substring(0, dump.indexOf(cutStart) + cutStart.length()) + "\n"
+        + dump.substring(dump.indexOf(cutEnd))).getBytes(StandardCharsets.UTF_8));
+
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setRobust(conf, true);
+    File quarantineDir = tmp.newFolder("quarantine");
+    WikipediaPageRevisionInputFormat.setQuarantineDir(conf, new Path(quarantineDir.getAbsolutePath()));
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        corrupt.getAbsolutePath(), 0, corrupt.length(), conf);
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("10_233192", reader.getCurrentKey().toString());
+    checkPage2AllRevisions(reader);
+    checkNoMoreRevisions(reader);
+    reader.close();
+
+    File[] quarantined = quarantineDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith("quarantine-");
+      }
+    });
+    Assert.assertEquals(1, quarantined.length);
+    String[] record = new String(Files.readAllBytes(quarantined[0].toPath()), StandardCharsets.UTF_8).split("\t");
+    Assert.assertEquals(corrupt.toURI().getPath(), new Path(record[0]).toUri().getPath());
+    long revisionStart = dump.indexOf("<revision>", dump.indexOf("<id>233192</id>"));
+    Assert.assertEquals(revisionStart, Long.parseLong(record[1]));
+    Assert.assertEquals(dump.indexOf(cutStart) + cutStart.length() + 3, Long.parseLong(record[2]));
+  }
+
+  @Test
+  public void revisionsWithOtherModelsAreSkipped() throws IOException, InterruptedException {
+    String dump = new String(Files.readAllBytes(Paths.get(
+        this.getClass().getClassLoader().getResource("dump2.xml").getFile())), StandardCharsets.UTF_8);
+    // make the first revision of the second page a Lua module
+    int revision = dump.indexOf("<id>18201</id>");
+    int model = dump.indexOf("<model>wikitext</model>", revision);
+    File modules = tmp.newFile("modules.xml");
+    Files.write(modules.toPath(), (dump.substring(0, model) + "<model>Scribunto</model>"
+        + dump.substring(model + "<model>wikitext</model>".length())).getBytes(StandardCharsets.UTF_8));
+
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setModels(conf, "Scribunto");
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = getReaderForFile(
+        modules.getAbsolutePath(), 0, modules.length(), conf);
+    Assert.assertTrue(reader.nextKeyValue());
+    Assert.assertEquals("12_18201", reader.getCurrentKey().toString());
+    Assert.assertEquals("Scribunto", reader.getCurrentValue().getModel());
+    Assert.assertFalse(reader.getCurrentValue().isWikitext());
+    Assert.assertFalse(reader.nextKeyValue());
+
+    WikipediaPageRevisionInputFormat.setModels(conf, "wikitext");
+    reader = getReaderForFile(modules.getAbsolutePath(), 0, modules.length(), conf);
+    int count = 0;
+    while (reader.nextKeyValue()) {
+      Assert.assertFalse("12_18201".equals(reader.getCurrentKey().toString()));
+      count++;
+    }
+    Assert.assertEquals(4, count);
+  }
+
+  @Test
+  public void splitsAreReadFromCacheWhenReadAgain() throws IOException, InterruptedException {
+    String dump = this.getClass().getClassLoader().getResource("dump2.xml").getFile();
+    File cacheDir = tmp.newFolder("cache");
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setCacheDir(conf, new Path(cacheDir.getAbsolutePath()));
+
+    Counters counters = new Counters();
+    List<String> parsed = readRevisions(dump, conf, counters);
+    Assert.assertEquals(5, parsed.size());
+    Assert.assertEquals(1, counters.findCounter(WikipediaPageRevisionInputFormat.ReaderCounter.CACHE_MISSES).getValue());
+    Assert.assertEquals(0, counters.findCounter(WikipediaPageRevisionInputFormat.ReaderCounter.CACHE_HITS).getValue());
+    String[] cached = cacheDir.list(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(".revisions");
+      }
+    });
+    Assert.assertEquals(1, cached.length);
+
+    Assert.assertEquals(parsed, readRevisions(dump, conf, counters));
+    Assert.assertEquals(1, counters.findCounter(WikipediaPageRevisionInputFormat.ReaderCounter.CACHE_HITS).getValue());
+
+    // revisions read with other settings aren't the same
+    WikipediaPageRevisionInputFormat.setIncludeText(conf, false);
+    Assert.assertEquals(5, readRevisions(dump, conf, counters).size());
+    Assert.assertEquals(2, counters.findCounter(WikipediaPageRevisionInputFormat.ReaderCounter.CACHE_MISSES).getValue());
+  }
+
+  @Test
+  public void cachedSplitsKeepEscapedTextAndSignatures() throws IOException, InterruptedException {
+    File dump = tmp.newFile("text.xml");
+    Files.write(dump.toPath(), TEXT_DUMP.getBytes(StandardCharsets.UTF_8));
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setCacheDir(conf, new Path(tmp.newFolder("cache").getAbsolutePath()));
+    WikipediaPageRevisionInputFormat.setSignatures(conf, 16, 2);
+
+    Counters counters = new Counters();
+    List<String> parsed = readRevisions(dump.getAbsolutePath(), conf, counters);
+    Assert.assertEquals(2, parsed.size());
+    Assert.assertTrue(parsed.get(0), parsed.get(0).contains(
+        "Gr\u00F6\u00DFe <ref>&nbsp;</ref> \"quoted\" \uD83D\uDE00 & more"));
+    Assert.assertFalse("signature is computed", parsed.get(0).endsWith("|null"));
+    Assert.assertEquals(parsed, readRevisions(dump.getAbsolutePath(), conf, counters));
+    Assert.assertEquals(1, counters.findCounter(WikipediaPageRevisionInputFormat.ReaderCounter.CACHE_HITS).getValue());
+  }
+
+  @Test
+  public void cacheEvictsLeastRecentlyUsedSplitsPastMaxSize() throws IOException, InterruptedException {
+    File text = tmp.newFile("text.xml");
+    Files.write(text.toPath(), TEXT_DUMP.getBytes(StandardCharsets.UTF_8));
+    String dump2 = this.getClass().getClassLoader().getResource("dump2.xml").getFile();
+    File cacheDir = tmp.newFolder("cache");
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setCacheDir(conf, new Path(cacheDir.getAbsolutePath()));
+    // room for one split; the one just written is always kept
+    WikipediaPageRevisionInputFormat.setCacheMaxSize(conf, 1);
+    FilenameFilter cacheFiles = new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(".revisions");
+      }
+    };
+
+    Counters counters = new Counters();
+    readRevisions(text.getAbsolutePath(), conf, counters);
+    String[] cached = cacheDir.list(cacheFiles);
+    Assert.assertEquals(1, cached.length);
+    // older than anything written next
+    Assert.assertTrue(new File(cacheDir, cached[0]).setLastModified(1000));
+
+    readRevisions(dump2, conf, counters);
+    Assert.assertEquals(1, cacheDir.list(cacheFiles).length);
+    Assert.assertFalse("least recently used split is evicted", new File(cacheDir, cached[0]).exists());
+
+    readRevisions(text.getAbsolutePath(), conf, counters);
+    Assert.assertEquals(3, counters.findCounter(WikipediaPageRevisionInputFormat.ReaderCounter.CACHE_MISSES).getValue());
+    Assert.assertEquals(0, counters.findCounter(WikipediaPageRevisionInputFormat.ReaderCounter.CACHE_HITS).getValue());
+  }
+
+  @Test
+  public void cachedSplitsAreNotReadAfterAllowlistChanges() throws IOException, InterruptedException {
+    String dump = this.getClass().getClassLoader().getResource("dump2.xml").getFile();
+    File ids = tmp.newFile("ids.txt");
+    Files.write(ids.toPath(), "12\n".getBytes(StandardCharsets.UTF_8));
+    Configuration conf = new Configuration(true);
+    WikipediaPageRevisionInputFormat.setCacheDir(conf, new Path(tmp.newFolder("cache").getAbsolutePath()));
+    WikipediaPageRevisionInputFormat.setPageIdAllowlist(conf, new Path(ids.getAbsolutePath()));
+
+    Counters counters = new Counters();
+    Assert.assertEquals(3, readRevisions(dump, conf, counters).size());
+    Assert.assertEquals(3, readRevisions(dump, conf, counters).size());
+    Assert.assertEquals(1, counters.findCounter(WikipediaPageRevisionInputFormat.ReaderCounter.CACHE_HITS).getValue());
+
+    // the same path, edited
+    Files.write(ids.toPath(), "10\n12\n".getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals(5, readRevisions(dump, conf, counters).size());
+    Assert.assertEquals(2, counters.findCounter(WikipediaPageRevisionInputFormat.ReaderCounter.CACHE_MISSES).getValue());
+  }
+
+  /**
+   * Reads a whole file, describing each revision by its key and the fields the cache keeps.
+   */
+  private List<String> readRevisions(String filepath, Configuration conf, final Counters counters)
+      throws IOException, InterruptedException {
+    TaskAttemptID taskAttemptId = new TaskAttemptID(new TaskID(new JobID("local", 1000), TaskType.MAP, 100), 1);
+    TaskAttemptContextImpl context = new TaskAttemptContextImpl(conf, taskAttemptId,
+        new StatusReporter() {
+          @Override
+          public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+          }
+
+          @Override
+          public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+          }
+
+          @Override
+          public void progress() {
+          }
+
+          @Override
+          public float getProgress() {
+            return 0;
+          }
+
+          @Override
+          public void setStatus(String status) {
+          }
+        });
+    WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader =
+        new WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader();
+    reader.initialize(new FileSplit(new Path(filepath), 0, new File(filepath).length(), null), context);
+    List<String> revisions = new ArrayList<>();
+    while (reader.nextKeyValue()) {
+      WikipediaPageRevision revision = reader.getCurrentValue();
+      WikipediaPage page = revision.getContainingPage();
+      revisions.add(reader.getCurrentKey() + "|" + page.getTitle() + "|" + page.getNamespaceName() + "|"
+          + page.getRedirectsTo() + "|" + revision.getTimestamp() + "|" + revision.getContributorUsername() + "|"
+          + revision.getSha1() + "|" + revision.isRedirect() + "|" + revision.isMinor() + "|"
+          + revision.getRawContent() + "|" + (revision.getSignature() == null ? null
+          : Arrays.toString(revision.getSignature().getMinHash()) + revision.getSignature().getSimHash()));
+    }
+    Assert.assertEquals(1.0f, reader.getProgress(), 0.0f);
+    reader.close();
+    return revisions;
+  }
+
+  /**
+   * Writes a dump of random text, bzip2-compressed in blocks of 100k, the smallest size, so that it spans many
+   * blocks.
+   *
+   * @return the keys of the revisions written
+   */
+  private static List<String> writeBzip2Dump(File file, int pages, int revisionsPerPage) throws IOException {
+    return writeBzip2Dump(file, pages, revisionsPerPage, null);
+  }
+
+  /**
+   * @param corruptKey the key of a revision to leave the end tag off, or {@code null}
+   * @return the keys of the revisions, except the corrupt one
+   */
+  private static List<String> writeBzip2Dump(File file, int pages, int revisionsPerPage, String corruptKey)
+      throws IOException {
+    Random random = new Random(26);
+    List<String> keys = new ArrayList<String>();
+    long written = 0;
+    OutputStream out = new FileOutputStream(file);
+    // the codec reads the "BZ" magic, which the stream leaves to its caller
+    out.write(new byte[]{'B', 'Z'});
+    try (Writer writer = new OutputStreamWriter(new CBZip2OutputStream(out, 1), StandardCharsets.UTF_8)) {
+      writer.write("<mediawiki xml:lang=\"en\">\n  <siteinfo>\n    <dbname>enwiki</dbname>\n"
+          + "    <namespaces>\n      <namespace key=\"0\" case=\"first-letter\" />\n    </namespaces>\n"
+          + "  </siteinfo>\n");
+      for (int page = 1; page <= pages; page++) {
+        writer.write("  <page>\n    <title>Page " + page + "</title>\n    <ns>0</ns>\n    <id>" + page
+            + "</id>\n");
+        for (int r = 0; r < revisionsPerPage; r++) {
+          int revision = page * 100 + r;
+          StringBuilder text = new StringBuilder();
+          while (text.length() < 2000) {
+            int wordLength = 1 + random.nextInt(9);
+            for (int i = 0; i < wordLength; i++) {
+              text.append((char) ('a' + random.nextInt(26)));
+            }
+            text.append(' ');
+          }
+          String key = page + "_" + revision;
+          String xml = "    <revision>\n      <id>" + revision + "</id>\n"
+              + "      <timestamp>2015-09-11T00:00:00Z</timestamp>\n"
+              + "      <text xml:space=\"preserve\">" + text + "</text>\n"
+              + (key.equals(corruptKey) ? "" : "    </revision>\n");
+          writer.write(xml);
+          written += xml.length();
+          if (!key.equals(corruptKey)) {
+            keys.add(key);
+          }
+        }
+        writer.write("  </page>\n");
+      }
+      writer.write("</mediawiki>\n");
+    }
+    Assert.assertTrue("dump spans many bzip2 blocks", written > 5 * 100000);
+    return keys;
+  }
+
+  /**
+   * @return the text of the bzip2 blocks that start at or after {@code pos} in the file
+   */
+  private static String decompressBlocksFrom(File bz2, long pos) throws IOException {
+    BZip2Codec codec = new BZip2Codec();
+    codec.setConf(new Configuration());
+    Path path = new Path(bz2.getAbsolutePath());
+    FileSystem fs = path.getFileSystem(new Configuration());
+    Decompressor decompressor = CodecPool.getDecompressor(codec);
+    try (InputStream in = codec.createInputStream(fs.open(path), decompressor, pos, bz2.length(),
+        SplittableCompressionCodec.READ_MODE.BYBLOCK)) {
+      ByteArrayOutputStream text = new ByteArrayOutputStream();
+      IOUtils.copyBytes(in, text, 4096, false);
+      return new String(text.toByteArray(), StandardCharsets.UTF_8);
+    } finally {
+      CodecPool.returnDecompressor(decompressor);
+    }
+  }
+
   private WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader getReaderForFile(String filepath, long start, long length) throws IOException, InterruptedException {
+    return getReaderForFile(filepath, start, length, new Configuration(true));
+  }
+
+  private WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader getReaderForFile(String filepath, long start, long length, Configuration conf) throws IOException, InterruptedException {
     WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader reader = new WikipediaPageRevisionInputFormat.WikipediaPageRevisionRecordReader();
-    Configuration conf = new Configuration(true);
 
     Path p = new Path(filepath);
 
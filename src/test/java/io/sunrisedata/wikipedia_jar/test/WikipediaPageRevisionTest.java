@@ -0,0 +1,144 @@
+package io.sunrisedata.wikipedia_jar.test;
+
+import io.sunrisedata.wikipedia.WikipediaPage;
+import io.sunrisedata.wikipedia.WikipediaPageRevision;
+import io.sunrisedata.wikipedia.WikipediaRenderer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+
+public class WikipediaPageRevisionTest {
+
+  @Test
+  public void readFromXmlDecodesEntitiesAndUtf8() throws Exception {
+    WikipediaPage page = new WikipediaPage();
+    page.readFromXml("<page>\n    <title>AT&amp;T \u2013 Gr\u00F6\u00DFe</title>\n    <ns>0</ns>\n    <id>7</id>\n"
+        + "    <redirect title=\"A &quot;quoted&quot; &gt; title\" />\n");
+    Assert.assertEquals("AT&T \u2013 Gr\u00F6\u00DFe", page.getTitle());
+    Assert.assertEquals("7", page.getPageId());
+    Assert.assertEquals("A \"quoted\" > title", page.getRedirectsTo());
+
+    WikipediaPageRevision revision = new WikipediaPageRevision(page);
+    revision.readFromXml("<revision>\n      <id>1</id>\n      <contributor>\n        <username>Zo\u00EB</username>\n"
+        + "        <id>3</id>\n      </contributor>\n      <minor />\n      <comment>&lt;b&gt; &amp;amp; &#233;&#x1F600;</comment>\n"
+        + "      <text xml:space=\"preserve\" bytes=\"30\">#REDIRECT [[Gr\u00F6\u00DFe]] &lt;ref&gt;&amp;nbsp;</text>\n"
+        + "    </revision>");
+    Assert.assertEquals("1", revision.getRevisionId());
+    Assert.assertEquals("Zo\u00EB", revision.getContributorUsername());
+    Assert.assertEquals("3", revision.getContributorId());
+    Assert.assertTrue(revision.isMinor());
+    Assert.assertEquals("<b> &amp; \u00E9\uD83D\uDE00", revision.getComment());
+    Assert.assertEquals(30, revision.getDeclaredContentLength());
+    Assert.assertTrue(revision.isRedirect());
+    Assert.assertFalse(revision.isStub());
+    Assert.assertEquals("#REDIRECT [[Gr\u00F6\u00DFe]] <ref>&nbsp;", revision.getRawContent());
+  }
+
+  @Test
+  public void readFromXmlHandlesEmptyText() throws Exception {
+    WikipediaPageRevision revision = new WikipediaPageRevision(new WikipediaPage());
+    revision.readFromXml("<revision><id>2</id><text id=\"2\" bytes=\"124\" /><sha1>abc</sha1></revision>");
+    Assert.assertEquals("", revision.getRawContent());
+    Assert.assertTrue(revision.isEmpty());
+    Assert.assertTrue(revision.isMetadata());
+    Assert.assertEquals("abc", revision.getSha1());
+  }
+
+  @Test
+  public void jsonFieldsAreReadWithoutDecodingText() throws Exception {
+    WikipediaPage page = new WikipediaPage();
+    page.readFromXml("<page><title>Q42</title><ns>0</ns><id>138</id>");
+    WikipediaPageRevision item = new WikipediaPageRevision(page);
+    item.readFromXml("<revision><id>9</id><model>wikibase-item</model><format>application/json</format>"
+        + "<text>{&quot;type&quot;:&quot;item&quot;,&quot;id&quot;:&quot;Q42&quot;,"
+        + "&quot;labels&quot;:{&quot;en&quot;:{&quot;language&quot;:&quot;en&quot;,"
+        + "&quot;value&quot;:&quot;Douglas &amp; \\&quot;DNA\\&quot; Adams&quot;},"
+        + "&quot;de&quot;:{&quot;language&quot;:&quot;de&quot;,&quot;value&quot;:&quot;Gr\u00F6\u00DFe&quot;}},"
+        + "&quot;claims&quot;:{&quot;P31&quot;:[{&quot;mainsnak&quot;:{&quot;snaktype&quot;:&quot;value&quot;,"
+        + "&quot;property&quot;:&quot;P31&quot;,&quot;datavalue&quot;:{&quot;value&quot;:{"
+        + "&quot;entity-type&quot;:&quot;item&quot;,&quot;numeric-id&quot;:5,&quot;id&quot;:&quot;Q5&quot;},"
+        + "&quot;type&quot;:&quot;wikibase-entityid&quot;}},&quot;rank&quot;:&quot;normal&quot;},"
+        + "{&quot;mainsnak&quot;:{&quot;snaktype&quot;:&quot;novalue&quot;,&quot;property&quot;:&quot;P31&quot;}}],"
+        + "&quot;P569&quot;:[{&quot;mainsnak&quot;:{&quot;datavalue&quot;:{&quot;value&quot;:{"
+        + "&quot;time&quot;:&quot;+1952-03-11T00:00:00Z&quot;,&quot;precision&quot;:11}}}}],"
+        + "&quot;P625&quot;:[{&quot;mainsnak&quot;:{&quot;datavalue&quot;:{&quot;value&quot;:{"
+        + "&quot;latitude&quot;:52.5,&quot;longitude&quot;:13.4}}}}]},"
+        + "&quot;sitelinks&quot;:{}}</text></revision>");
+    Assert.assertTrue(item.isJson());
+    Assert.assertFalse(item.isWikitext());
+    Assert.assertEquals("{en=Douglas & \"DNA\" Adams, de=Gr\u00F6\u00DFe}", item.getLabels().toString());
+    Assert.assertEquals("{de=Gr\u00F6\u00DFe}", item.getLabels("de").toString());
+    Assert.assertEquals("{P31=[Q5], P569=[+1952-03-11T00:00:00Z], P625=[52.5,13.4]}",
+        item.getClaims().toString());
+    Assert.assertEquals("{P569=[+1952-03-11T00:00:00Z]}", item.getClaims("P569").toString());
+    // the same once the text has been decoded
+    Assert.assertTrue(item.getRawContent().startsWith("{\"type\":\"item\""));
+    Assert.assertEquals("{P31=[Q5]}", item.getClaims("P31").toString());
+    Assert.assertEquals("{en=Douglas & \"DNA\" Adams}", item.getLabels("en").toString());
+  }
+
+  @Test
+  public void nonWikitextIsPassedThrough() throws Exception {
+    WikipediaPage page = new WikipediaPage();
+    page.readFromXml("<page><title>MediaWiki:Common.js</title><ns>8</ns><id>11</id>");
+    WikipediaPageRevision script = new WikipediaPageRevision(page);
+    script.readFromXml("<revision><id>12</id><model>javascript</model><format>text/javascript</format>"
+        + "<text>#REDIRECT [[x]] // {{stub}} &lt;b&gt; [[Category:Scripts]]</text></revision>");
+    Assert.assertFalse(script.isWikitext());
+    Assert.assertFalse(script.isJson());
+    Assert.assertFalse(script.isRedirect());
+    Assert.assertFalse(script.isStub());
+    Assert.assertTrue(script.getCategories().isEmpty());
+    Assert.assertTrue(script.getLabels().isEmpty());
+    Assert.assertEquals("MediaWiki:Common.js\n#REDIRECT [[x]] // {{stub}} <b> [[Category:Scripts]]",
+        script.getRenderedContent());
+    Assert.assertEquals("<h1>MediaWiki:Common.js</h1>\n<pre>#REDIRECT [[x]] // {{stub}} &lt;b&gt; "
+        + "[[Category:Scripts]]</pre>", script.getDisplayContent());
+  }
+
+  @Test
+  public void rendererExpandsCachedTemplates() throws Exception {
+    WikipediaPage template = new WikipediaPage();
+    template.readFromXml("<page><title>Template:Greeting</title><ns>10</ns><id>3</id>");
+    WikipediaPageRevision definition = new WikipediaPageRevision(template);
+    definition.readFromXml("<revision><id>4</id><text>Hello, {{{1}}}!</text></revision>");
+
+    WikipediaRenderer renderer = new WikipediaRenderer(10, 10);
+    Assert.assertTrue(renderer.addTemplate(definition));
+    Assert.assertEquals(1, renderer.getTemplateCount());
+
+    WikipediaPage page = new WikipediaPage();
+    page.readFromXml("<page><title>Page</title><ns>0</ns><id>5</id>");
+    WikipediaPageRevision revision = new WikipediaPageRevision(page);
+    revision.readFromXml("<revision><id>6</id><text>{{greeting|World}} {{Missing}}</text></revision>");
+    Assert.assertFalse(renderer.addTemplate(revision));
+
+    String text = revision.getRenderedContent(renderer);
+    Assert.assertTrue(text, text.startsWith("Page\n"));
+    Assert.assertTrue(text, text.contains("Hello, World!"));
+    Assert.assertTrue(revision.getDisplayContent(renderer).contains("Hello, World!"));
+    Assert.assertTrue(renderer.getTemplateHits() > 0);
+    Assert.assertTrue(renderer.getTemplateMisses() > 0);
+  }
+
+  @Test
+  public void timestampMillisRejectsDaysPastEndOfMonth() throws Exception {
+    Assert.assertEquals(Instant.parse("2016-02-29T12:00:00Z").toEpochMilli(),
+        timestampMillis("2016-02-29T12:00:00Z"));
+    Assert.assertEquals(Instant.parse("2000-02-29T00:00:00Z").toEpochMilli(),
+        timestampMillis("2000-02-29T00:00:00Z"));
+    Assert.assertEquals(Instant.parse("2015-12-31T23:59:59Z").toEpochMilli(),
+        timestampMillis("2015-12-31T23:59:59Z"));
+    Assert.assertEquals(Long.MIN_VALUE, timestampMillis("2015-02-29T00:00:00Z"));
+    Assert.assertEquals(Long.MIN_VALUE, timestampMillis("1900-02-29T00:00:00Z"));
+    Assert.assertEquals(Long.MIN_VALUE, timestampMillis("2015-02-31T00:00:00Z"));
+    Assert.assertEquals(Long.MIN_VALUE, timestampMillis("2015-04-31T00:00:00Z"));
+  }
+
+  private static long timestampMillis(String timestamp) throws Exception {
+    WikipediaPageRevision revision = new WikipediaPageRevision(new WikipediaPage());
+    revision.readFromXml("<revision><id>1</id><timestamp>" + timestamp + "</timestamp></revision>");
+    return revision.getTimestampMillis();
+  }
+}
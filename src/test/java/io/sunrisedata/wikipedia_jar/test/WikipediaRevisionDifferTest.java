@@ -0,0 +1,70 @@
+package io.sunrisedata.wikipedia_jar.test;
+
+import io.sunrisedata.wikipedia.WikipediaPage;
+import io.sunrisedata.wikipedia.WikipediaPageRevision;
+import io.sunrisedata.wikipedia.WikipediaRevisionDiff;
+import io.sunrisedata.wikipedia.WikipediaRevisionDiffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WikipediaRevisionDifferTest {
+
+  @Test
+  public void diffsRevisionAgainstParent() throws Exception {
+    WikipediaPage page = page("1");
+    WikipediaRevisionDiffer differ = new WikipediaRevisionDiffer(WikipediaRevisionDiffer.Granularity.TOKEN);
+
+    WikipediaRevisionDiff first = differ.diff(revision(page, "10", null, "a", "The quick fox."));
+    Assert.assertNull(first.getBaseRevisionId());
+    Assert.assertEquals("[The, quick, fox, .]", first.getAddedTokens().toString());
+    Assert.assertEquals(14, first.getByteDelta());
+
+    WikipediaRevisionDiff second = differ.diff(revision(page, "11", "10", "b", "The quick brown fox!"));
+    Assert.assertEquals("10", second.getBaseRevisionId());
+    Assert.assertEquals("[brown, !]", second.getAddedTokens().toString());
+    Assert.assertEquals("[.]", second.getRemovedTokens().toString());
+    Assert.assertEquals(6, second.getByteDelta());
+    Assert.assertFalse(second.isRevert());
+  }
+
+  @Test
+  public void detectsRevertsBySha1() throws Exception {
+    WikipediaPage page = page("1");
+    WikipediaRevisionDiffer differ = new WikipediaRevisionDiffer(WikipediaRevisionDiffer.Granularity.LINE);
+
+    differ.diff(revision(page, "10", null, "a", "one\ntwo"));
+    WikipediaRevisionDiff vandalism = differ.diff(revision(page, "11", "10", "b", "one\nspam\ntwo"));
+    Assert.assertEquals("[spam]", vandalism.getAddedTokens().toString());
+
+    WikipediaRevisionDiff revert = differ.diff(revision(page, "12", "11", "a", "one\ntwo"));
+    Assert.assertTrue(revert.isRevert());
+    Assert.assertEquals("10", revert.getRevertedToRevisionId());
+    Assert.assertEquals("[spam]", revert.getRemovedTokens().toString());
+  }
+
+  @Test
+  public void startsOverForEachPage() throws Exception {
+    WikipediaRevisionDiffer differ = new WikipediaRevisionDiffer(WikipediaRevisionDiffer.Granularity.TOKEN);
+
+    differ.diff(revision(page("1"), "10", null, "a", "alpha beta"));
+    WikipediaRevisionDiff other = differ.diff(revision(page("2"), "20", "10", "a", "alpha beta"));
+    Assert.assertNull(other.getBaseRevisionId());
+    Assert.assertFalse(other.isRevert());
+    Assert.assertEquals("[alpha, beta]", other.getAddedTokens().toString());
+  }
+
+  private static WikipediaPage page(String id) throws Exception {
+    WikipediaPage page = new WikipediaPage();
+    page.readFromXml("<page><title>Test</title><ns>0</ns><id>" + id + "</id></page>");
+    return page;
+  }
+
+  private static WikipediaPageRevision revision(WikipediaPage page, String id, String parentId, String sha1,
+                                                String text) throws Exception {
+    WikipediaPageRevision revision = new WikipediaPageRevision(page);
+    revision.readFromXml("<revision><id>" + id + "</id>"
+        + (parentId == null ? "" : "<parentid>" + parentId + "</parentid>")
+        + "<text bytes=\"" + text.length() + "\">" + text + "</text><sha1>" + sha1 + "</sha1></revision>");
+    return revision;
+  }
+}
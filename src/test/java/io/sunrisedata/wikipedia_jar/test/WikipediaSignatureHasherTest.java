@@ -0,0 +1,86 @@
+package io.sunrisedata.wikipedia_jar.test;
+
+import io.sunrisedata.wikipedia.WikipediaDumpReader;
+import io.sunrisedata.wikipedia.WikipediaPage;
+import io.sunrisedata.wikipedia.WikipediaPageRevision;
+import io.sunrisedata.wikipedia.WikipediaPageRevisionInputFormat;
+import io.sunrisedata.wikipedia.WikipediaSignature;
+import io.sunrisedata.wikipedia.WikipediaSignatureHasher;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class WikipediaSignatureHasherTest {
+
+  private static final String TEXT = "Anarchism is a political philosophy that advocates self-governed societies "
+      + "based on voluntary institutions. These are often described as stateless societies, although several "
+      + "authors have defined them more specifically as institutions based on non-hierarchical free associations.";
+
+  @Test
+  public void nearDuplicatesHaveSimilarSignatures() {
+    WikipediaSignatureHasher hasher = new WikipediaSignatureHasher();
+    WikipediaSignature original = hasher.hash(TEXT);
+    WikipediaSignature vandalized = hasher.hash(TEXT.replace("political", "POLITICAL") + " lol");
+    WikipediaSignature other = hasher.hash("The quick brown fox jumps over the lazy dog, again and again.");
+
+    Assert.assertEquals(original, hasher.hash(TEXT));
+    Assert.assertTrue(original.estimateSimilarity(vandalized) > 0.8);
+    Assert.assertTrue(original.estimateSimilarity(other) < 0.1);
+    Assert.assertTrue(original.simHashDistance(vandalized) < original.simHashDistance(other));
+
+    long[] originalBands = original.getBands(32);
+    long[] vandalizedBands = vandalized.getBands(32);
+    int shared = 0;
+    for (int b = 0; b < originalBands.length; b++) {
+      if (originalBands[b] == vandalizedBands[b]) {
+        shared++;
+      }
+    }
+    Assert.assertTrue("near-duplicates share a band", shared > 0);
+  }
+
+  @Test
+  public void readerComputesSignatures() throws IOException {
+    Configuration conf = new Configuration(false);
+    WikipediaPageRevisionInputFormat.setSignatures(conf, WikipediaSignatureHasher.DEFAULT_NUM_HASHES,
+        WikipediaSignatureHasher.DEFAULT_SHINGLE_SIZE);
+    WikipediaPageRevisionInputFormat.setIncludeText(conf, false);
+    File dump2 = new File(this.getClass().getClassLoader().getResource("dump2.xml").getFile());
+    try (WikipediaDumpReader reader = WikipediaDumpReader.openMapped(dump2, 0, Long.MAX_VALUE, conf)) {
+      WikipediaPageRevision revision = reader.next();
+      Assert.assertNull(revision.getRawContent());
+      Assert.assertNotNull(revision.getSignature());
+      Assert.assertEquals(WikipediaSignatureHasher.DEFAULT_NUM_HASHES, revision.getSignature().getMinHash().length);
+    }
+  }
+
+  @Test
+  public void escapedTextHasSameSignatureAsDecodedText() throws Exception {
+    ByteArrayOutputStream xml = new ByteArrayOutputStream();
+    xml.write(("<revision><id>1</id><timestamp>2002-02-25T15:43:11Z</timestamp><text xml:space=\"preserve\">"
+        + "Gr\u00F6\u00DFe &amp; &lt;b&gt;Stra&#223;e&lt;/b&gt; caf&#xE9; &nbsp;&amp;nbsp; R&D \u0416\u0443\u043A "
+        + "\uD835\uDC00\uD83D\uDE00 &#x1D400;x &#xD835;&#xDC00;y ").getBytes(StandardCharsets.UTF_8));
+    // a malformed byte, and U+1D400 as two encoded surrogates
+    xml.write(new byte[]{'a', (byte) 0xff, 'b', ' ', (byte) 0xed, (byte) 0xa0, (byte) 0xb5, (byte) 0xed,
+        (byte) 0xb0, (byte) 0x80, 'z', ' '});
+    xml.write("end of the text</text></revision>".getBytes(StandardCharsets.UTF_8));
+    WikipediaPage page = new WikipediaPage();
+    page.readFromXml("<page><title>Test</title><ns>0</ns><id>1</id></page>");
+    WikipediaPageRevision revision = new WikipediaPageRevision(page);
+    revision.readFromXml(ByteBuffer.wrap(xml.toByteArray()));
+
+    WikipediaSignatureHasher hasher = new WikipediaSignatureHasher(16, 2, 0L);
+    // before the text is decoded, it is hashed from the escaped bytes
+    WikipediaSignature fromBytes = hasher.hash(revision);
+    String text = revision.getRawContent();
+    Assert.assertTrue(text.startsWith("Gr\u00F6\u00DFe & <b>Stra\u00DFe</b> caf\u00E9 &nbsp;&nbsp; R&D"));
+    Assert.assertEquals(fromBytes, hasher.hash(text));
+    Assert.assertEquals(fromBytes, hasher.hash(revision));
+  }
+}
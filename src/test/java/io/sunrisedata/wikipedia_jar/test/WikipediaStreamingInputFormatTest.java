@@ -0,0 +1,64 @@
+package io.sunrisedata.wikipedia_jar.test;
+
+import io.sunrisedata.wikipedia.WikipediaStreamingInputFormat;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class WikipediaStreamingInputFormatTest {
+
+  private List<String> readLines(JobConf job) throws Exception {
+    File file = new File(this.getClass().getClassLoader().getResource("dump2.xml").getFile());
+    FileSplit split = new FileSplit(new Path(file.getAbsolutePath()), 0, file.length(), new String[0]);
+    RecordReader<Text, Text> reader = new WikipediaStreamingInputFormat().getRecordReader(split, job, Reporter.NULL);
+    List<String> lines = new ArrayList<String>();
+    Text key = reader.createKey();
+    Text value = reader.createValue();
+    while (reader.next(key, value)) {
+      lines.add(key + "\t" + value);
+    }
+    Assert.assertEquals(1.0f, reader.getProgress(), 0.0f);
+    reader.close();
+    return lines;
+  }
+
+  @Test
+  public void writesSelectedFieldsAsEscapedTsv() throws Exception {
+    JobConf job = new JobConf();
+    WikipediaStreamingInputFormat.setFields(job, WikipediaStreamingInputFormat.Field.PAGE_ID,
+        WikipediaStreamingInputFormat.Field.TITLE, WikipediaStreamingInputFormat.Field.TIMESTAMP,
+        WikipediaStreamingInputFormat.Field.REDIRECT, WikipediaStreamingInputFormat.Field.TEXT);
+    List<String> lines = readLines(job);
+    Assert.assertEquals(5, lines.size());
+    Assert.assertTrue(lines.get(0).startsWith("10_233192\t10\tAccessibleComputing\t2001-01-21T02:12:21Z\tfalse\t"));
+    for (String line : lines) {
+      Assert.assertEquals(line, 6, line.split("\t", -1).length);
+      Assert.assertEquals(-1, line.indexOf('\n'));
+    }
+    Assert.assertTrue(lines.get(2).startsWith("12_18201\t12\tAnarchism\t"));
+  }
+
+  @Test
+  public void writesJsonObjects() throws Exception {
+    JobConf job = new JobConf();
+    job.set(WikipediaStreamingInputFormat.FIELDS, "page_id, revision_id, minor, text");
+    WikipediaStreamingInputFormat.setFormat(job, WikipediaStreamingInputFormat.Format.JSON);
+    List<String> lines = readLines(job);
+    Assert.assertEquals(5, lines.size());
+    Assert.assertEquals("10_233192\t{\"page_id\":\"10\",\"revision_id\":\"233192\",\"minor\":false,\"text\":\"\"}",
+        lines.get(0));
+    for (String line : lines) {
+      Assert.assertTrue(line, line.endsWith("\"}"));
+      Assert.assertEquals(-1, line.indexOf('\n'));
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package io.sunrisedata.wikipedia_jar.test;
+
+import io.sunrisedata.wikipedia.TermFrequencies;
+import io.sunrisedata.wikipedia.WikipediaPage;
+import io.sunrisedata.wikipedia.WikipediaPageRevision;
+import io.sunrisedata.wikipedia.WikipediaTokenizer;
+import io.sunrisedata.wikipedia.WikipediaVocabulary;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class WikipediaTokenizerTest {
+
+  @Test
+  public void tokenizeEmitsTermIdsAndPositions() {
+    final WikipediaVocabulary vocabulary = new WikipediaVocabulary();
+    WikipediaTokenizer tokenizer = new WikipediaTokenizer(vocabulary, WikipediaTokenizer.Source.WIKITEXT);
+    final List<String> terms = new ArrayList<String>();
+    int count = tokenizer.tokenize("The [[Gr\u00F6\u00DFe]] of the 2 FOXES.", new WikipediaTokenizer.TermSink() {
+      @Override
+      public void term(int termId, int position) {
+        terms.add(position + ":" + vocabulary.getTerm(termId));
+      }
+    });
+    Assert.assertEquals(6, count);
+    Assert.assertEquals("[0:the, 1:gr\u00F6\u00DFe, 2:of, 3:the, 4:2, 5:foxes]", terms.toString());
+    Assert.assertEquals(5, vocabulary.size());
+    Assert.assertEquals(vocabulary.getId("the"), vocabulary.getId("the".toCharArray(), 0, 3));
+  }
+
+  @Test
+  public void countTermsUsesSharedVocabulary() throws Exception {
+    WikipediaVocabulary vocabulary = new WikipediaVocabulary();
+    WikipediaTokenizer tokenizer = new WikipediaTokenizer(vocabulary, WikipediaTokenizer.Source.WIKITEXT);
+    TermFrequencies tf = new TermFrequencies();
+    Assert.assertEquals(4, tokenizer.countTerms(revision("a b a c"), tf));
+    Assert.assertEquals(3, tf.size());
+    Assert.assertEquals(2, tf.get(vocabulary.getId("a")));
+    Assert.assertEquals(4, tf.getLength());
+
+    // ship the vocabulary, frozen, to another tokenizer
+    vocabulary.freeze();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    vocabulary.write(new DataOutputStream(bytes));
+    WikipediaVocabulary shipped = new WikipediaVocabulary();
+    shipped.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertTrue(shipped.isFrozen());
+
+    tokenizer = new WikipediaTokenizer(shipped, WikipediaTokenizer.Source.WIKITEXT);
+    tokenizer.countTerms(revision("c d c"), tf);
+    Assert.assertEquals(1, tf.size());
+    Assert.assertEquals(shipped.getId("c"), tf.getTermId(0));
+    Assert.assertEquals(vocabulary.getId("c"), tf.getTermId(0));
+    Assert.assertEquals(2, tf.getFrequency(0));
+    Assert.assertEquals(WikipediaVocabulary.UNKNOWN, shipped.getId("d"));
+  }
+
+  private static WikipediaPageRevision revision(String text) throws Exception {
+    WikipediaPageRevision revision = new WikipediaPageRevision(new WikipediaPage());
+    revision.readFromXml("<revision><id>1</id><text>" + text + "</text></revision>");
+    return revision;
+  }
+}
@@ -0,0 +1,184 @@
+package io.sunrisedata.wikipedia.spark;
+
+import io.sunrisedata.wikipedia.WikipediaPage;
+import io.sunrisedata.wikipedia.WikipediaPageRevision;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+
+import java.sql.Timestamp;
+
+/**
+ * The columns of {@link WikipediaRelation}, one row per revision, named after the getters of
+ * {@link WikipediaPage} and {@link WikipediaPageRevision}. Ids are numbers rather than strings, so they can be
+ * compared and pushed into the reader as ranges; a value that is missing or doesn't parse is {@code null}.
+ */
+enum WikipediaColumn {
+  PAGE_ID("pageId", DataTypes.LongType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return toLong(revision.getContainingPage().getPageId());
+    }
+  },
+  TITLE("title", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getContainingPage().getTitle();
+    }
+  },
+  NAMESPACE("namespace", DataTypes.IntegerType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      int namespace = revision.getContainingPage().getNamespaceId();
+      return namespace == Integer.MIN_VALUE ? null : namespace;
+    }
+  },
+  REDIRECTS_TO("redirectsTo", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getContainingPage().getRedirectsTo();
+    }
+  },
+  RESTRICTIONS("restrictions", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getContainingPage().getRestrictions();
+    }
+  },
+  INPUT_NAME("inputName", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getContainingPage().getInputName();
+    }
+  },
+  REVISION_ID("revisionId", DataTypes.LongType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return toLong(revision.getRevisionId());
+    }
+  },
+  PARENT_REVISION_ID("parentRevisionId", DataTypes.LongType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return toLong(revision.getParentRevisionId());
+    }
+  },
+  TIMESTAMP("timestamp", DataTypes.TimestampType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      long millis = revision.getTimestampMillis();
+      return millis == Long.MIN_VALUE ? null : new Timestamp(millis);
+    }
+  },
+  CONTRIBUTOR_USERNAME("contributorUsername", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getContributorUsername();
+    }
+  },
+  CONTRIBUTOR_ID("contributorId", DataTypes.LongType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return toLong(revision.getContributorId());
+    }
+  },
+  CONTRIBUTOR_IP("contributorIp", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getContributorIp();
+    }
+  },
+  MINOR("minor", DataTypes.BooleanType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.isMinor();
+    }
+  },
+  STUB("stub", DataTypes.BooleanType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.isStub();
+    }
+  },
+  COMMENT("comment", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getComment();
+    }
+  },
+  MODEL("model", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getModel();
+    }
+  },
+  FORMAT("format", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getFormat();
+    }
+  },
+  SHA1("sha1", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getSha1();
+    }
+  },
+  /**
+   * The wiki markup, {@link WikipediaPageRevision#getRawContent()}. Only read from the dump if it is selected.
+   */
+  TEXT("text", DataTypes.StringType) {
+    @Override
+    Object get(WikipediaPageRevision revision) {
+      return revision.getRawContent();
+    }
+  };
+
+  static final StructType SCHEMA;
+
+  static {
+    StructField[] fields = new StructField[values().length];
+    for (WikipediaColumn column : values()) {
+      fields[column.ordinal()] = DataTypes.createStructField(column.name, column.type, true);
+    }
+    SCHEMA = DataTypes.createStructType(fields);
+  }
+
+  final String name;
+  final DataType type;
+
+  WikipediaColumn(String name, DataType type) {
+    this.name = name;
+    this.type = type;
+  }
+
+  /**
+   * @return the value of the column for the revision, as the type Spark expects in a {@code Row}
+   */
+  abstract Object get(WikipediaPageRevision revision);
+
+  /**
+   * @return the column with the given name in the schema
+   * @throws IllegalArgumentException if there is none
+   */
+  static WikipediaColumn forName(String name) {
+    for (WikipediaColumn column : values()) {
+      if (column.name.equals(name)) {
+        return column;
+      }
+    }
+    throw new IllegalArgumentException("No column " + name);
+  }
+
+  private static Long toLong(String s) {
+    if (s == null) {
+      return null;
+    }
+    try {
+      return Long.parseLong(s.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package io.sunrisedata.wikipedia.spark;
+
+import io.sunrisedata.wikipedia.WikipediaPageRevisionInputFormat;
+import org.apache.spark.sql.SQLContext;
+import org.apache.spark.sql.sources.BaseRelation;
+import org.apache.spark.sql.sources.DataSourceRegister;
+import org.apache.spark.sql.sources.RelationProvider;
+import scala.collection.JavaConverters;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spark data source for dumps, with one row per revision; see {@link WikipediaRelation}:
+ *
+ * <pre>
+ * spark.read().format("wikipedia")
+ *     .option(WikipediaPageRevisionInputFormat.LATEST_REVISION_ONLY, "true")
+ *     .load("enwiki-20150901-pages-meta-history*.xml.bz2")
+ *     .where("namespace = 0 AND timestamp &gt;= '2015-01-01'")
+ *     .select("pageId", "title", "timestamp");
+ * </pre>
+ *
+ * Options named like the properties of {@link WikipediaPageRevisionInputFormat}, which all start with
+ * "wikipedia.", are passed on to the reader.
+ */
+public class WikipediaDataSource implements RelationProvider, DataSourceRegister {
+  private static final String SETTINGS_PREFIX = "wikipedia.";
+
+  @Override
+  public String shortName() {
+    return "wikipedia";
+  }
+
+  @Override
+  public BaseRelation createRelation(SQLContext sqlContext, scala.collection.immutable.Map<String, String> parameters) {
+    Map<String, String> options = JavaConverters.mapAsJavaMapConverter(parameters).asJava();
+    String path = options.get("path");
+    if (path == null) {
+      throw new IllegalArgumentException("No path to the dumps was given");
+    }
+    Map<String, String> settings = new HashMap<String, String>();
+    for (Map.Entry<String, String> option : options.entrySet()) {
+      if (option.getKey().startsWith(SETTINGS_PREFIX)) {
+        settings.put(option.getKey(), option.getValue());
+      }
+    }
+    return new WikipediaRelation(sqlContext, path, settings);
+  }
+}
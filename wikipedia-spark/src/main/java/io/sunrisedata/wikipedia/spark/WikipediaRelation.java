@@ -0,0 +1,275 @@
+package io.sunrisedata.wikipedia.spark;
+
+import io.sunrisedata.wikipedia.WikipediaPageRevision;
+import io.sunrisedata.wikipedia.WikipediaPageRevisionInputFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SQLContext;
+import org.apache.spark.sql.sources.And;
+import org.apache.spark.sql.sources.BaseRelation;
+import org.apache.spark.sql.sources.EqualTo;
+import org.apache.spark.sql.sources.Filter;
+import org.apache.spark.sql.sources.GreaterThan;
+import org.apache.spark.sql.sources.GreaterThanOrEqual;
+import org.apache.spark.sql.sources.In;
+import org.apache.spark.sql.sources.LessThan;
+import org.apache.spark.sql.sources.LessThanOrEqual;
+import org.apache.spark.sql.sources.PrunedFilteredScan;
+import org.apache.spark.sql.types.StructType;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The revisions of dumps as a table with the columns of {@link WikipediaColumn}, read with
+ * {@link WikipediaPageRevisionInputFormat}.
+ *
+ * Filters on the namespace, page id and timestamp are set as the reader's namespaces, page id range and timestamp
+ * range, so pages and revisions that can't match are skipped before they are parsed, and the text is only read if
+ * it is selected. The reader's filters may let through more than Spark's (e.g. the page ids between those of an
+ * {@code IN} list), so Spark still applies all of the filters to the rows read.
+ */
+public class WikipediaRelation extends BaseRelation implements PrunedFilteredScan {
+  /**
+   * The latest time written in the format of the dumps, 9999-12-31T23:59:59Z; later ones don't compare as strings.
+   */
+  private static final long MAX_DUMP_SECONDS = 253402300799L;
+
+  private final SQLContext sqlContext;
+  private final String path;
+  private final Map<String, String> settings;
+
+  /**
+   * @param path the dumps, as given to {@code newAPIHadoopFile}: a file, directory or glob, or several separated by
+   *             commas
+   * @param settings properties of {@link WikipediaPageRevisionInputFormat} to set, e.g.
+   *                 {@link WikipediaPageRevisionInputFormat#LATEST_REVISION_ONLY}
+   */
+  public WikipediaRelation(SQLContext sqlContext, String path, Map<String, String> settings) {
+    this.sqlContext = sqlContext;
+    this.path = path;
+    this.settings = settings;
+  }
+
+  @Override
+  public SQLContext sqlContext() {
+    return sqlContext;
+  }
+
+  @Override
+  public StructType schema() {
+    return WikipediaColumn.SCHEMA;
+  }
+
+  @Override
+  public RDD<Row> buildScan(String[] requiredColumns, Filter[] filters) {
+    JavaSparkContext sc = JavaSparkContext.fromSparkContext(sqlContext.sparkContext());
+    Configuration conf = new Configuration(sc.hadoopConfiguration());
+    for (Map.Entry<String, String> setting : settings.entrySet()) {
+      conf.set(setting.getKey(), setting.getValue());
+    }
+    Pushdown pushdown = new Pushdown();
+    for (Filter filter : filters) {
+      pushdown.add(filter);
+    }
+    if (!pushdown.configure(conf)) {
+      return sc.<Row>emptyRDD().rdd();
+    }
+
+    WikipediaColumn[] columns = new WikipediaColumn[requiredColumns.length];
+    boolean text = false;
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = WikipediaColumn.forName(requiredColumns[i]);
+      text |= columns[i] == WikipediaColumn.TEXT;
+    }
+    if (!text) {
+      WikipediaPageRevisionInputFormat.setIncludeText(conf, false);
+    }
+    return sc.newAPIHadoopFile(path, WikipediaPageRevisionInputFormat.class, Text.class,
+        WikipediaPageRevision.class, conf).values().map(new ToRow(columns)).rdd();
+  }
+
+  /**
+   * The reader's settings for the filters on a scan.
+   */
+  private static class Pushdown {
+    private Set<String> namespaces;
+    private long minPageId = Long.MIN_VALUE;
+    private long maxPageId = Long.MAX_VALUE;
+    private long fromSeconds = Long.MIN_VALUE;
+    private long toSeconds = Long.MAX_VALUE;
+    private boolean empty;
+
+    /**
+     * Narrows the settings by a filter that all rows have to pass. Filters the reader can't apply are ignored.
+     */
+    void add(Filter filter) {
+      if (filter instanceof And) {
+        add(((And) filter).left());
+        add(((And) filter).right());
+      } else if (filter instanceof EqualTo) {
+        EqualTo f = (EqualTo) filter;
+        addRange(f.attribute(), f.value(), true, f.value(), true);
+        addNamespaces(f.attribute(), new Object[]{f.value()});
+      } else if (filter instanceof In) {
+        In f = (In) filter;
+        addNamespaces(f.attribute(), f.values());
+        Object min = null;
+        Object max = null;
+        for (Object value : f.values()) {
+          if (!(value instanceof Number)) {
+            return;
+          }
+          if (min == null || ((Number) value).longValue() < ((Number) min).longValue()) {
+            min = value;
+          }
+          if (max == null || ((Number) value).longValue() > ((Number) max).longValue()) {
+            max = value;
+          }
+        }
+        if (min != null && f.attribute().equals(WikipediaColumn.PAGE_ID.name)) {
+          addRange(f.attribute(), min, true, max, true);
+        }
+      } else if (filter instanceof GreaterThan) {
+        addRange(((GreaterThan) filter).attribute(), ((GreaterThan) filter).value(), false, null, false);
+      } else if (filter instanceof GreaterThanOrEqual) {
+        addRange(((GreaterThanOrEqual) filter).attribute(), ((GreaterThanOrEqual) filter).value(), true, null,
+            false);
+      } else if (filter instanceof LessThan) {
+        addRange(((LessThan) filter).attribute(), null, false, ((LessThan) filter).value(), false);
+      } else if (filter instanceof LessThanOrEqual) {
+        addRange(((LessThanOrEqual) filter).attribute(), null, false, ((LessThanOrEqual) filter).value(), true);
+      }
+    }
+
+    private void addNamespaces(String attribute, Object[] values) {
+      if (!attribute.equals(WikipediaColumn.NAMESPACE.name)) {
+        return;
+      }
+      Set<String> keys = new HashSet<String>();
+      for (Object value : values) {
+        if (!(value instanceof Number)) {
+          return;
+        }
+        keys.add(String.valueOf(((Number) value).intValue()));
+      }
+      if (namespaces == null) {
+        namespaces = keys;
+      } else {
+        namespaces.retainAll(keys);
+      }
+      empty |= namespaces.isEmpty();
+    }
+
+    /**
+     * @param min the lower bound, or {@code null}
+     * @param max the upper bound, or {@code null}
+     */
+    private void addRange(String attribute, Object min, boolean minInclusive, Object max, boolean maxInclusive) {
+      if (attribute.equals(WikipediaColumn.PAGE_ID.name)) {
+        if (min instanceof Number) {
+          long id = ((Number) min).longValue();
+          if (!minInclusive && id == Long.MAX_VALUE) {
+            empty = true;
+            return;
+          }
+          minPageId = Math.max(minPageId, minInclusive ? id : id + 1);
+        }
+        if (max instanceof Number) {
+          long id = ((Number) max).longValue();
+          if (!maxInclusive && id == Long.MIN_VALUE) {
+            empty = true;
+            return;
+          }
+          maxPageId = Math.min(maxPageId, maxInclusive ? id : id - 1);
+        }
+        empty |= minPageId > maxPageId;
+      } else if (attribute.equals(WikipediaColumn.TIMESTAMP.name)) {
+        // the dumps have whole seconds, so the bounds are rounded outwards to seconds
+        Instant from = toInstant(min);
+        if (from != null) {
+          fromSeconds = Math.max(fromSeconds, from.getEpochSecond());
+        }
+        Instant to = toInstant(max);
+        if (to != null) {
+          long seconds = to.getEpochSecond();
+          toSeconds = Math.min(toSeconds, maxInclusive || to.getNano() > 0 ? seconds + 1 : seconds);
+        }
+        empty |= fromSeconds >= toSeconds;
+      }
+    }
+
+    private static Instant toInstant(Object value) {
+      if (value instanceof Timestamp) {
+        return ((Timestamp) value).toInstant();
+      }
+      if (value instanceof Instant) {
+        return (Instant) value;
+      }
+      return null;
+    }
+
+    /**
+     * Sets the reader's filters.
+     *
+     * @return {@code false} if no row can pass the filters
+     */
+    boolean configure(Configuration conf) {
+      if (empty) {
+        return false;
+      }
+      if (namespaces != null) {
+        WikipediaPageRevisionInputFormat.setNamespaces(conf, namespaces.toArray(new String[namespaces.size()]));
+      }
+      if (minPageId != Long.MIN_VALUE || maxPageId != Long.MAX_VALUE) {
+        WikipediaPageRevisionInputFormat.setPageIdRange(conf, minPageId, maxPageId);
+      }
+      String from = formatTimestamp(fromSeconds);
+      String to = formatTimestamp(toSeconds);
+      if (from != null || to != null) {
+        WikipediaPageRevisionInputFormat.setTimestampRange(conf, from, to);
+      }
+      return true;
+    }
+
+    /**
+     * @return the time in the format of the dumps, or {@code null} if it can't be written that way, and the
+     *         bound isn't set
+     */
+    private static String formatTimestamp(long seconds) {
+      if (seconds < 0 || seconds > MAX_DUMP_SECONDS) {
+        return null;
+      }
+      return DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochSecond(seconds));
+    }
+  }
+
+  /**
+   * Turns revisions into rows of the selected columns.
+   */
+  private static class ToRow implements Function<WikipediaPageRevision, Row> {
+    private final WikipediaColumn[] columns;
+
+    ToRow(WikipediaColumn[] columns) {
+      this.columns = columns;
+    }
+
+    @Override
+    public Row call(WikipediaPageRevision revision) {
+      Object[] values = new Object[columns.length];
+      for (int i = 0; i < columns.length; i++) {
+        values[i] = columns[i].get(revision);
+      }
+      return RowFactory.create(values);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package io.sunrisedata.wikipedia_jar.test;
+
+import io.sunrisedata.wikipedia.WikipediaPageRevisionInputFormat;
+import io.sunrisedata.wikipedia.spark.WikipediaRelation;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.sources.EqualTo;
+import org.apache.spark.sql.sources.Filter;
+import org.apache.spark.sql.sources.GreaterThan;
+import org.apache.spark.sql.sources.GreaterThanOrEqual;
+import org.apache.spark.sql.sources.In;
+import org.apache.spark.sql.sources.LessThan;
+import org.apache.spark.sql.sources.LessThanOrEqual;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class WikipediaDataSourceTest {
+  private static SparkSession spark;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @BeforeClass
+  public static void startSpark() {
+    spark = SparkSession.builder()
+        .master("local[1]")
+        .appName("WikipediaDataSourceTest")
+        .config("spark.ui.enabled", "false")
+        .config("spark.sql.session.timeZone", "UTC")
+        .getOrCreate();
+  }
+
+  @AfterClass
+  public static void stopSpark() {
+    spark.stop();
+  }
+
+  @Test
+  public void revisionsAreRowsWithTheColumnsOfTheGetters() {
+    Dataset<Row> revisions = spark.read().format("wikipedia").load(getDump2());
+    Assert.assertEquals(Arrays.asList("pageId", "title", "namespace", "redirectsTo", "restrictions", "inputName",
+        "revisionId", "parentRevisionId", "timestamp", "contributorUsername", "contributorId", "contributorIp",
+        "minor", "stub", "comment", "model", "format", "sha1", "text"), Arrays.asList(revisions.columns()));
+
+    List<Row> rows = revisions.orderBy("revisionId").collectAsList();
+    Assert.assertEquals(5, rows.size());
+    Row row = rows.get(0);
+    Assert.assertEquals(Long.valueOf(12L), row.getAs("pageId"));
+    Assert.assertEquals("Anarchism", row.getAs("title"));
+    Assert.assertEquals(Integer.valueOf(0), row.getAs("namespace"));
+    Assert.assertEquals(Long.valueOf(18201L), row.getAs("revisionId"));
+    Assert.assertEquals(Timestamp.from(Instant.parse("2002-02-25T15:00:22Z")), row.getAs("timestamp"));
+    Assert.assertTrue(((String) row.getAs("inputName")).endsWith("dump2.xml"));
+    Assert.assertEquals(Arrays.asList(18201L, 19746L, 19749L, 233192L, 862220L), getLongs(rows, "revisionId"));
+  }
+
+  @Test
+  public void filtersArePushedIntoTheReader() throws IOException {
+    String dump = getDumpWithTalkPage();
+    WikipediaRelation relation = new WikipediaRelation(spark.sqlContext(), dump,
+        Collections.<String, String>emptyMap());
+    String[] columns = {"revisionId"};
+
+    // what the reader returns, before Spark filters the rows
+    Assert.assertEquals(Arrays.asList(18201L, 19746L, 19749L),
+        scan(relation, columns, new EqualTo("namespace", 1)));
+    Assert.assertEquals(Arrays.asList(233192L, 862220L),
+        scan(relation, columns, new In("namespace", new Object[]{0, 2})));
+    Assert.assertEquals(Collections.<Long>emptyList(),
+        scan(relation, columns, new EqualTo("namespace", 0), new EqualTo("namespace", 1)));
+    Assert.assertEquals(Arrays.asList(233192L, 862220L), scan(relation, columns, new LessThan("pageId", 12L)));
+    Assert.assertEquals(Arrays.asList(18201L, 19746L, 19749L),
+        scan(relation, columns, new GreaterThan("pageId", 10L), new LessThanOrEqual("pageId", 12L)));
+    Assert.assertEquals(Arrays.asList(19746L, 862220L), scan(relation, columns,
+        new GreaterThanOrEqual("timestamp", Timestamp.from(Instant.parse("2002-02-25T15:43:11Z"))),
+        new LessThan("timestamp", Timestamp.from(Instant.parse("2002-02-27T00:00:00Z")))));
+    // the reader only sees whole seconds, and Spark drops what is left
+    Assert.assertEquals(Arrays.asList(19746L, 862220L), scan(relation, columns,
+        new EqualTo("timestamp", Timestamp.from(Instant.parse("2002-02-25T15:43:11.500Z")))));
+  }
+
+  @Test
+  public void filteredQueriesReturnTheSameRowsAsFilteringAfterwards() throws IOException {
+    Dataset<Row> revisions = spark.read().format("wikipedia").load(getDumpWithTalkPage());
+    String condition = "namespace = 1 AND pageId IN (11, 12) AND timestamp > '2002-02-25 15:00:22'";
+    Dataset<Row> filtered = revisions.where(condition).select("revisionId");
+    String plan = filtered.queryExecution().executedPlan().toString();
+    Assert.assertTrue(plan, plan.contains("EqualTo(namespace,1)"));
+    Assert.assertTrue(plan, plan.contains("GreaterThan(timestamp,"));
+
+    List<Long> expected = getLongs(revisions.cache().where(condition).select("revisionId").collectAsList(),
+        "revisionId");
+    Assert.assertEquals(Arrays.asList(19746L, 19749L), expected);
+    Assert.assertEquals(expected, getLongs(filtered.collectAsList(), "revisionId"));
+    revisions.unpersist();
+  }
+
+  @Test
+  public void textIsOnlyReadWhenSelected() throws IOException {
+    String dump = new String(Files.readAllBytes(Paths.get(getDump2())), StandardCharsets.UTF_8);
+    File withText = tmp.newFile("text.xml");
+    Files.write(withText.toPath(), dump.replace("<text id=\"233192\" bytes=\"124\" />",
+        "<text xml:space=\"preserve\">#REDIRECT [[Computer accessibility]] &amp; more</text>")
+        .getBytes(StandardCharsets.UTF_8));
+    Dataset<Row> revisions = spark.read().format("wikipedia").load(withText.getAbsolutePath());
+    Row row = revisions.where("revisionId = 233192").select("pageId", "text").first();
+    Assert.assertEquals("#REDIRECT [[Computer accessibility]] & more", row.getAs("text"));
+    Assert.assertEquals(5, revisions.select("pageId", "stub").count());
+  }
+
+  @Test
+  public void optionsAreSettingsOfTheReader() {
+    Dataset<Row> revisions = spark.read().format("wikipedia")
+        .option(WikipediaPageRevisionInputFormat.LATEST_REVISION_ONLY, "true")
+        .load(getDump2());
+    Assert.assertEquals(Arrays.asList(19749L, 862220L),
+        getLongs(revisions.orderBy("revisionId").select("revisionId").collectAsList(), "revisionId"));
+  }
+
+  private static List<Long> scan(WikipediaRelation relation, String[] columns, Filter... filters) {
+    List<Long> ids = getLongs(relation.buildScan(columns, filters).toJavaRDD().collect(), columns[0]);
+    Collections.sort(ids);
+    return ids;
+  }
+
+  private static List<Long> getLongs(List<Row> rows, String column) {
+    List<Long> values = new ArrayList<Long>();
+    for (Row row : rows) {
+      values.add(row.schema() != null ? (Long) row.getAs(column) : row.getLong(0));
+    }
+    return values;
+  }
+
+  private String getDump2() {
+    return this.getClass().getClassLoader().getResource("dump2.xml").getFile();
+  }
+
+  /**
+   * @return a copy of dump2.xml where the second page, Anarchism, is in the talk namespace
+   */
+  private String getDumpWithTalkPage() throws IOException {
+    String dump = new String(Files.readAllBytes(Paths.get(getDump2())), StandardCharsets.UTF_8);
+    int page = dump.indexOf("<title>Anarchism</title>");
+    File talk = tmp.newFile("talk.xml");
+    Files.write(talk.toPath(), (dump.substring(0, page) + dump.substring(page).replaceFirst("<ns>0</ns>",
+        "<ns>1</ns>")).getBytes(StandardCharsets.UTF_8));
+    return talk.getAbsolutePath();
+  }
+}